@@ -1,22 +1,55 @@
 import model.cpu.CPU;
+import model.memory.mapper.MBC3;
 
 import java.io.BufferedWriter;
 import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 
 public class main {
 
     static int i = 1;
     static StringBuilder stringBuilder = new StringBuilder();
+    static volatile boolean running = true; // set to false by the shutdown hook to end the run loop
+
     public static void main(String[] args) {
-        String testFile = "roms/gb-test-roms-master/instr_timing/instr_timing.gb";
+        String testFile = (args.length > 0) ? args[0] : "roms/gb-test-roms-master/instr_timing/instr_timing.gb";
         CPU cpu = new CPU(readFile(testFile));
-        while (true) {
-            i++;
-            //writeToFile(cpu);
-            cpu.doInstructionCycle();
+        if (cpu.getMemory().getMapper() instanceof MBC3 mbc3 && mbc3.getRealTimeClock() != null) {
+            mbc3.getRealTimeClock().setRealTime(true); // before loading, so the time the game wasn't running passes
         }
+        cpu.getMemory().openSaveFile(getSavePath(testFile));
+
+        // the save file is closed on the emulation thread once the loop ends, the hook only waits for that
+        Thread emulationThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            running = false;
+            try {
+                emulationThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        try {
+            while (running) {
+                i++;
+                //writeToFile(cpu);
+                cpu.doInstructionCycle();
+            }
+        } finally {
+            cpu.getMemory().closeSaveFile();
+        }
+    }
+
+    /**
+     * @return the path of the .sav file next to the ROM at romFile: its name with the extension replaced
+     */
+    public static Path getSavePath(String romFile) {
+        Path rom = Path.of(romFile);
+        String name = rom.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        return rom.resolveSibling(((extension == -1) ? name : name.substring(0, extension)) + ".sav");
     }
 
     public static byte[] readFile(String filename) {
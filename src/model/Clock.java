@@ -0,0 +1,41 @@
+package model;
+
+/**
+ * The master timebase of the emulator: the number of M-cycles that have passed since the machine was created.
+ * It only ever increases, and is a long so it never wraps around in practice (over 100 000 years of emulated time).
+ * Everything that depends on time, like the timer registers, should be derived from it,
+ * so differences between two points in time are always exact.
+ */
+public class Clock {
+    public static final long M_CYCLES_PER_SECOND = 1 << 20; // 4194304 Hz T-cycle clock, 4 T-cycles per M-cycle
+
+    private long mCycles;
+
+    /**
+     * @return the number of M-cycles that have passed
+     */
+    public long getMCycles() {
+        return mCycles;
+    }
+
+    /**
+     * @return the number of T-cycles that have passed, 4 per M-cycle
+     */
+    public long getTCycles() {
+        return mCycles * 4;
+    }
+
+    /**
+     * Lets one M-cycle pass.
+     */
+    public void tick() {
+        mCycles++;
+    }
+
+    /**
+     * Lets mCycles M-cycles pass at once.
+     */
+    public void advance(long mCycles) {
+        this.mCycles += mCycles;
+    }
+}
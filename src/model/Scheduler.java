@@ -0,0 +1,132 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the M-cycle on the Clock at which each kind of event is next due, in a min-heap.
+ * Peripherals schedule their next event instead of being updated every M-cycle,
+ * so checking whether anything has to happen is a single comparison against getNextEventCycle.
+ * Every kind of event is scheduled at most once, scheduling it again moves it.
+ */
+public class Scheduler {
+    public static final long NEVER = Long.MAX_VALUE;
+
+    public enum Event {
+        TIMER, // TIMA incrementing or overflowing, TMA being reloaded, or a write to a timer register taking effect
+        SAVE_FLUSH // written cartridge RAM being flushed to the save file
+    }
+
+    private static final Event[] EVENTS = Event.values();
+
+    private final long[] cycles = new long[EVENTS.length]; // due cycle of each event, by ordinal
+    private final int[] heap = new int[EVENTS.length]; // event ordinals, heap[0] is due first
+    private final int[] positions = new int[EVENTS.length]; // index of each event in heap, -1 if not scheduled
+    private int size;
+
+    public Scheduler() {
+        Arrays.fill(cycles, NEVER);
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * Schedules event to happen at cycle, replacing its previous cycle if it was already scheduled.
+     * @param cycle absolute M-cycle, as counted by the Clock
+     */
+    public void schedule(Event event, long cycle) {
+        int e = event.ordinal();
+        if (positions[e] == -1) {
+            heap[size] = e;
+            positions[e] = size;
+            size++;
+        }
+        long oldCycle = cycles[e];
+        cycles[e] = cycle;
+        if (cycle < oldCycle) {
+            siftUp(positions[e]);
+        } else {
+            siftDown(positions[e]);
+        }
+    }
+
+    /**
+     * Removes event from the schedule. Does nothing if it isn't scheduled.
+     */
+    public void cancel(Event event) {
+        int e = event.ordinal();
+        int position = positions[e];
+        if (position == -1) {
+            return;
+        }
+        size--;
+        cycles[e] = NEVER;
+        positions[e] = -1;
+        if (position != size) {
+            heap[position] = heap[size];
+            positions[heap[position]] = position;
+            siftDown(position);
+            siftUp(position);
+        }
+    }
+
+    /**
+     * @return the cycle event is scheduled at, or NEVER if it isn't scheduled
+     */
+    public long getEventCycle(Event event) {
+        return cycles[event.ordinal()];
+    }
+
+    /**
+     * @return the cycle the first event is due at, or NEVER if nothing is scheduled
+     */
+    public long getNextEventCycle() {
+        return (size == 0) ? NEVER : cycles[heap[0]];
+    }
+
+    /**
+     * Removes and returns the first event if it is due at or before cycle.
+     * @return the event, or null if none is due
+     */
+    public Event popDueEvent(long cycle) {
+        if (size == 0 || cycles[heap[0]] > cycle) {
+            return null;
+        }
+        Event event = EVENTS[heap[0]];
+        cancel(event);
+        return event;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (cycles[heap[parent]] <= cycles[heap[position]]) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            for (int child = 2 * position + 1; child <= 2 * position + 2 && child < size; child++) {
+                if (cycles[heap[child]] < cycles[heap[smallest]]) {
+                    smallest = child;
+                }
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int e = heap[i];
+        heap[i] = heap[j];
+        heap[j] = e;
+        positions[heap[i]] = i;
+        positions[heap[j]] = j;
+    }
+}
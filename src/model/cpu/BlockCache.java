@@ -0,0 +1,224 @@
+package model.cpu;
+
+import model.cpu.execution.InstructionExecution;
+import model.memory.Memory;
+import model.memory.MemoryWriteListener;
+import util.GBUtil;
+
+import java.util.Arrays;
+
+/**
+ * Cache of decoded basic blocks, so the CPU doesn't have to fetch and look up every opcode again
+ * each time it runs the same code.
+ * Blocks in ROM are keyed by address and the ROM bank mapped there, since the mapper can switch
+ * both 0x0000-0x3FFF and 0x4000-0x7FFF. Blocks in console RAM and HRAM are keyed by address,
+ * and are dropped as soon as a byte inside them is written. Code anywhere else (VRAM, cartridge RAM, ...)
+ * is never cached.
+ */
+class BlockCache implements MemoryWriteListener {
+    static final int MAX_BLOCK_INSTRUCTIONS = 32;
+    private static final int MAX_BLOCK_BYTES = MAX_BLOCK_INSTRUCTIONS * 3;
+    private static final int MAX_ROM_BANKS = 512;
+    private static final int RAM_START = 0xC000; // ramBlocks covers 0xC000-0xFFFF, only console RAM and HRAM are used
+
+    /**
+     * A run of instructions that ends with a branch, HALT, STOP, EI, DI, the end of a memory region,
+     * or after MAX_BLOCK_INSTRUCTIONS instructions.
+     */
+    static final class Block {
+        final int start; // address of the first instruction
+        final int end; // address after the last byte of the last instruction
+        final int bank; // ROM bank the block was decoded from, -1 if it isn't in ROM
+        final short[] addresses;
+        final byte[] opcodes;
+        final InstructionExecution[] executions;
+        boolean valid = true; // false once a write to the block has dropped it
+        int executionCount; // times the block was interpreted, counted only while the recompiler is enabled
+        volatile CompiledBlock compiled; // null until BlockCompiler compiles the block, set from its thread
+        Superinstructions.Superinstruction[] superinstructions; // null unless sequences in the block were fused
+        int idleLoopMCycles; // M-cycles per iteration if the block is a polling loop, see IdleLoopDetector. 0 if not.
+        int idleLoopPointers; // bit n set = the polling loop reads memory through r16 n
+
+        Block(int start, int end, int bank, short[] addresses, byte[] opcodes, InstructionExecution[] executions) {
+            this.start = start;
+            this.end = end;
+            this.bank = bank;
+            this.addresses = addresses;
+            this.opcodes = opcodes;
+            this.executions = executions;
+        }
+
+        int getLength() {
+            return opcodes.length;
+        }
+    }
+
+    private final Memory memory;
+    // [bank][address & 0x3FFF], allocated per bank. Separate for each region, so a bank can be mapped to either.
+    private final Block[][] lowRomBlocks = new Block[MAX_ROM_BANKS][];
+    private final Block[][] highRomBlocks = new Block[MAX_ROM_BANKS][];
+    private final Block[] ramBlocks = new Block[0x10000 - RAM_START];
+    private final short[] ramCodeCount = new short[0x10000 - RAM_START]; // how many blocks cover each RAM byte
+    private boolean superinstructions;
+
+    BlockCache(Memory memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * @return the block starting at pc, decoding it first if it isn't cached yet.
+     *         null if code at pc can't be cached, or starts with an illegal opcode.
+     */
+    Block getBlock(short pc) {
+        int address = GBUtil.zeroExtend(pc);
+        if (address <= 0x7FFF) {
+            int bank = memory.getRomBankAt(pc);
+            Block[][] romBlocks = (address <= 0x3FFF) ? lowRomBlocks : highRomBlocks;
+            Block[] bankBlocks = romBlocks[bank];
+            if (bankBlocks == null) {
+                bankBlocks = new Block[0x4000];
+                romBlocks[bank] = bankBlocks;
+            }
+            Block block = bankBlocks[address & 0x3FFF];
+            if (block == null) {
+                block = decodeBlock(address, bank, (address <= 0x3FFF) ? 0x3FFF : 0x7FFF);
+                bankBlocks[address & 0x3FFF] = block;
+            }
+            return block;
+        } else if (isCachedRam(address)) {
+            Block block = ramBlocks[address - RAM_START];
+            if (block == null) {
+                block = decodeBlock(address, -1, (address <= 0xDFFF) ? 0xDFFF : 0xFFFE);
+                if (block != null) {
+                    ramBlocks[address - RAM_START] = block;
+                    for (int i = block.start; i < block.end; i++) {
+                        ramCodeCount[i - RAM_START]++;
+                    }
+                }
+            }
+            return block;
+        }
+        return null;
+    }
+
+    boolean isSuperinstructions() {
+        return superinstructions;
+    }
+
+    /**
+     * Drops every cached block, so blocks are decoded again with or without superinstructions.
+     * @param superinstructions if true, sequences in Superinstructions are fused when a block is decoded
+     */
+    void setSuperinstructions(boolean superinstructions) {
+        this.superinstructions = superinstructions;
+        invalidateRom();
+        invalidateAll(ramBlocks);
+        Arrays.fill(ramBlocks, null);
+        Arrays.fill(ramCodeCount, (short) 0);
+    }
+
+    /**
+     * @return true if block can still be executed: no write has dropped it,
+     *         and the ROM bank it was decoded from is still mapped.
+     */
+    boolean isCurrent(Block block) {
+        return block.valid && (block.bank == -1 || block.bank == memory.getRomBankAt((short) block.start));
+    }
+
+    /**
+     * Drops every cached block containing address.
+     */
+    @Override
+    public void onWrite(short address) {
+        int a = GBUtil.zeroExtend(address);
+        if (a <= 0x7FFF) {
+            // only setByteRom can write ROM, so just start over
+            invalidateRom();
+            return;
+        }
+        if (0xE000 <= a && a <= 0xFDFF) {
+            a -= 0x2000; // echo RAM
+        }
+        if (!isCachedRam(a) || ramCodeCount[a - RAM_START] == 0) {
+            return;
+        }
+        for (int start = Math.max(RAM_START, a - MAX_BLOCK_BYTES + 1); start <= a; start++) {
+            Block block = ramBlocks[start - RAM_START];
+            if (block != null && block.end > a) {
+                block.valid = false;
+                ramBlocks[start - RAM_START] = null;
+                for (int i = block.start; i < block.end; i++) {
+                    ramCodeCount[i - RAM_START]--;
+                }
+            }
+        }
+    }
+
+    private void invalidateRom() {
+        for (int bank = 0; bank < MAX_ROM_BANKS; bank++) {
+            invalidateAll(lowRomBlocks[bank]);
+            lowRomBlocks[bank] = null;
+            invalidateAll(highRomBlocks[bank]);
+            highRomBlocks[bank] = null;
+        }
+    }
+
+    private static void invalidateAll(Block[] blocks) {
+        if (blocks == null) {
+            return;
+        }
+        for (Block block : blocks) {
+            if (block != null) {
+                block.valid = false;
+            }
+        }
+    }
+
+    private static boolean isCachedRam(int address) {
+        return (0xC000 <= address && address <= 0xDFFF) || (0xFF80 <= address && address <= 0xFFFE);
+    }
+
+    /**
+     * Decodes the block starting at start, without ticking memory.
+     * @param bank the ROM bank to store in the block
+     * @param regionEnd the last address of the memory region; no instruction may go past it.
+     * @return the block, or null if the first instruction is illegal or goes past regionEnd
+     */
+    private Block decodeBlock(int start, int bank, int regionEnd) {
+        short[] addresses = new short[MAX_BLOCK_INSTRUCTIONS];
+        byte[] opcodes = new byte[MAX_BLOCK_INSTRUCTIONS];
+        InstructionExecution[] executions = new InstructionExecution[MAX_BLOCK_INSTRUCTIONS];
+        int count = 0;
+        int address = start;
+        while (count < MAX_BLOCK_INSTRUCTIONS) {
+            byte opcode = memory.getByteNoTick((short) address);
+            OpcodeInfo info = OpcodeTable.getOpcodeInfo(opcode);
+            if (info == null) {
+                break;
+            }
+            int length = (opcode == (byte) 0xCB) ? 2 : info.getLength();
+            if (address + length - 1 > regionEnd) {
+                break;
+            }
+            addresses[count] = (short) address;
+            opcodes[count] = opcode;
+            executions[count] = CPU.getInstructionExecution(opcode);
+            count++;
+            address += length;
+            if (info.isEndsBlock()) {
+                break;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+
+        Block block = new Block(start, address, bank, Arrays.copyOf(addresses, count), Arrays.copyOf(opcodes, count),
+                Arrays.copyOf(executions, count));
+        if (superinstructions) {
+            block.superinstructions = Superinstructions.fuse(block);
+        }
+        IdleLoopDetector.detect(block, memory);
+        return block;
+    }
+}
@@ -0,0 +1,380 @@
+package model.cpu;
+
+import exception.CPUException;
+import model.cpu.execution.InstructionExecution;
+import model.memory.Memory;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Translates hot blocks in ROM into hidden JVM classes, so HotSpot can compile each block
+ * into straight-line native code instead of going through the handler table every instruction.
+ * javac runs on a background thread, and a block keeps being interpreted until its class is installed.
+ * The thread is started with the first hot block, and stopped by shutdown.
+ * Needs a JDK; if no Java compiler is available, blocks stay interpreted.
+ * Blocks in RAM are never compiled, since that is where self-modifying code lives.
+ */
+class BlockCompiler {
+    static final int DEFAULT_HOT_THRESHOLD = 2000; // block executions before a block is compiled
+    private static final String[] R8_REGISTERS = {"Rb", "Rc", "Rd", "Re", "Rh", "Rl", null, "Ra"}; // null = (HL)
+
+    private final Memory memory;
+    private final int hotThreshold;
+    private final JavaCompiler javaCompiler = ToolProvider.getSystemJavaCompiler();
+    private final AtomicInteger compiledBlockCount = new AtomicInteger();
+    private ExecutorService compilerThread; // null until the first compileInBackground
+    private volatile RuntimeException compileFailure; // the first exception a background compilation threw
+
+    BlockCompiler(Memory memory, int hotThreshold) {
+        this.memory = memory;
+        this.hotThreshold = hotThreshold;
+    }
+
+    int getHotThreshold() {
+        return hotThreshold;
+    }
+
+    /**
+     * @return the number of blocks javac compiled successfully
+     */
+    int getCompiledBlockCount() {
+        return compiledBlockCount.get();
+    }
+
+    /**
+     * Translates block on the background thread, and sets block.compiled once its class is loaded.
+     * The source is generated right away, since it reads immediates from memory, which only the emulation
+     * thread may touch. The block must have been decoded with the current ROM bank.
+     */
+    void compileInBackground(BlockCache.Block block) {
+        throwCompileFailure();
+        if (!canCompile(block)) {
+            return;
+        }
+        String className = getClassName(block);
+        String source = generateSource(className, block);
+        if (compilerThread == null) {
+            compilerThread = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "block-compiler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        compilerThread.execute(() -> {
+            try {
+                byte[] classBytes = compileSources(Map.of(className, source)).get(className);
+                if (classBytes != null) {
+                    block.compiled = define(classBytes, block, false);
+                }
+            } catch (RuntimeException e) {
+                if (compileFailure == null) {
+                    compileFailure = e; // thrown on the emulation thread by the next compileInBackground or await
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until every block passed to compileInBackground so far is compiled and installed.
+     * @throws CPUException if a background compilation failed
+     */
+    void awaitCompilations() {
+        if (compilerThread != null) {
+            try {
+                compilerThread.submit(() -> { }).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new CPUException("waiting for the block compiler failed: " + e.getMessage());
+            }
+        }
+        throwCompileFailure();
+    }
+
+    /**
+     * Stops the background thread. Blocks that are still waiting to be compiled stay interpreted.
+     */
+    void shutdown() {
+        if (compilerThread != null) {
+            compilerThread.shutdownNow();
+        }
+    }
+
+    private void throwCompileFailure() {
+        if (compileFailure != null) {
+            throw new CPUException("compiling a block in the background failed: " + compileFailure.getMessage());
+        }
+    }
+
+    /**
+     * @return true if a Java compiler is available and block is in ROM
+     */
+    boolean canCompile(BlockCache.Block block) {
+        return javaCompiler != null && block.start <= 0x7FFF;
+    }
+
+    /**
+     * @return the name of the class generated for block, unique per ROM bank and address
+     */
+    static String getClassName(BlockCache.Block block) {
+        return "CompiledBlock_" + Math.max(block.bank, 0) + "_" + String.format("%04X", block.start);
+    }
+
+    /**
+     * Loads a class generated for block, and binds it to the block's handlers.
+     * @param classBytes the class file, compiled now or read back from a cache
+     * @param cached true if classBytes were read back from a cache
+     * @return the compiled block, or null if a cached class is malformed or doesn't link, e.g. a stale one
+     * @throws CPUException if a class compiled now doesn't load, since that is a bug in generateSource
+     */
+    CompiledBlock define(byte[] classBytes, BlockCache.Block block, boolean cached) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+            return (CompiledBlock) lookup.lookupClass().getConstructor(InstructionExecution[].class)
+                    .newInstance((Object) block.executions);
+        } catch (LinkageError | IllegalAccessException | NoSuchMethodException | InstantiationException e) {
+            if (cached) {
+                return null;
+            }
+            throw new CPUException("compiled block " + getClassName(block) + " doesn't load: " + e);
+        } catch (InvocationTargetException e) {
+            throw new CPUException("compiled block constructor failed: " + e.getCause());
+        }
+    }
+
+    /**
+     * Generates a class that runs every instruction of the block like CPU.executeBlock does.
+     * Written out directly, with immediates read from ROM now and the opcode fetch and immediate reads
+     * reduced to their M-cycles:
+     * NOP, LD r8, r8 / u8 (including through (HL)), ALU A, r8 / u8, INC r8, DEC r8, JR and JP, conditional or not.
+     * Every other instruction (16 bit loads and arithmetic, stack operations, CALL, RET, RST, CB instructions,
+     * the accumulator/flag operations, HALT, STOP, EI, DI, ...) calls its handler through its own final field,
+     * so each call site only ever sees one handler class and HotSpot can inline it.
+     */
+    String generateSource(String className, BlockCache.Block block) {
+        StringBuilder fields = new StringBuilder();
+        StringBuilder constructor = new StringBuilder();
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < block.getLength(); i++) {
+            int address = block.addresses[i] & 0xFFFF;
+            byte opcode = block.opcodes[i];
+            OpcodeInfo info = OpcodeTable.getOpcodeInfo(opcode);
+            body.append("        // ").append(String.format("%04X", address)).append(": ")
+                    .append(info.getMnemonic()).append('\n');
+            body.append("        memory.doMCycle();\n");
+
+            String inlined = generateInlined(opcode, info, address);
+            if (inlined != null) {
+                body.append(inlined);
+            } else {
+                fields.append("    private final InstructionExecution e").append(i).append(";\n");
+                constructor.append("        e").append(i).append(" = executions[").append(i).append("];\n");
+                body.append("        e").append(i).append(".execute((byte) ").append(opcode).append(", cpu);\n");
+            }
+            body.append("        cpu.finishInstruction();\n");
+            if (i + 1 < block.getLength()) {
+                body.append("        if (cpu.getProgramCounter() != (short) ").append(block.addresses[i + 1])
+                        .append(" || !cache.isCurrent(block)) {\n            return;\n        }\n");
+            }
+        }
+
+        return "package model.cpu;\n\n" +
+                "import model.cpu.execution.ALUExecution;\n" +
+                "import model.cpu.execution.InstructionExecution;\n" +
+                "import model.memory.Memory;\n\n" +
+                "public final class " + className + " implements CompiledBlock {\n" +
+                fields +
+                "\n    public " + className + "(InstructionExecution[] executions) {\n" +
+                constructor +
+                "    }\n\n" +
+                "    public void execute(CPU cpu, BlockCache cache, BlockCache.Block block) {\n" +
+                "        Memory memory = cpu.getMemory();\n" +
+                body +
+                "    }\n" +
+                "}\n";
+    }
+
+    /**
+     * @return the statements that execute the instruction at address after its opcode fetch,
+     *         with the same memory accesses and M-cycles as its handler. null if it isn't written out.
+     */
+    private String generateInlined(byte opcode, OpcodeInfo info, int address) {
+        int op = opcode & 0xFF;
+        byte u8 = memory.getByteNoTick((short) (address + 1));
+        byte msb = memory.getByteNoTick((short) (address + 2));
+        if (op == 0x00) {
+            return ""; // NOP
+        } else if ((op & 0xC0) == 0x40 && op != 0x76) { // LD r8, r8, except HALT
+            return "        " + writeR8(info.getR8Destination(), readR8(info.getR8())) + "\n";
+        } else if ((op & 0xC7) == 0x06) { // LD r8, u8
+            return "        memory.doMCycle();\n" +
+                    "        " + writeR8(info.getR8(), "(byte) " + u8) + "\n" +
+                    "        cpu.setProgramCounter((short) " + (address + 1) + ");\n";
+        } else if ((op & 0xC0) == 0x80) { // ALU A, r8
+            return generateALU(info.getOperation(), readR8(info.getR8()));
+        } else if ((op & 0xC7) == 0xC6) { // ALU A, u8
+            return "        memory.doMCycle();\n" +
+                    generateALU(info.getOperation(), "(byte) " + u8) +
+                    "        cpu.setProgramCounter((short) " + (address + 1) + ");\n";
+        } else if ((op & 0xC6) == 0x04) { // INC r8, DEC r8
+            boolean inc = (op & 1) == 0;
+            return "        {\n" +
+                    "            byte value = " + readR8(info.getR8()) + ";\n" +
+                    "            byte result = (byte) (value " + (inc ? "+" : "-") + " 1);\n" +
+                    "            cpu.setZeroFlag((result == 0) ? 1 : 0);\n" +
+                    "            cpu.setSubtractionFlag(" + (inc ? 0 : 1) + ");\n" +
+                    "            cpu.setHalfCarryFlag(((value & 0xF) == " + (inc ? "0xF" : "0") + ") ? 1 : 0);\n" +
+                    "            " + writeR8(info.getR8(), "result") + "\n" +
+                    "        }\n";
+        } else if (op == 0x18 || (op & 0xE7) == 0x20) { // JR i8, JR cc, i8
+            int target = (address + 2 + u8) & 0xFFFF;
+            String taken = "        memory.doMCycle();\n" +
+                    "        cpu.setProgramCounter((short) " + (target - 1) + ");\n" +
+                    "        memory.doMCycle();\n";
+            return (op == 0x18) ? taken : generateConditional(info.getCondition(), taken,
+                    "        memory.doMCycle();\n" +
+                    "        cpu.setProgramCounter((short) " + (address + 1) + ");\n");
+        } else if (op == 0xC3 || (op & 0xE7) == 0xC2) { // JP u16, JP cc, u16
+            int target = ((msb & 0xFF) << 8) | (u8 & 0xFF);
+            String taken = "        memory.doMCycle();\n" +
+                    "        memory.doMCycle();\n" +
+                    "        cpu.setProgramCounter((short) " + (target - 1) + ");\n" +
+                    "        memory.doMCycle();\n";
+            return (op == 0xC3) ? taken : generateConditional(info.getCondition(), taken,
+                    "        memory.doMCycle();\n" +
+                    "        memory.doMCycle();\n" +
+                    "        cpu.setProgramCounter((short) " + (address + 2) + ");\n");
+        }
+        return null;
+    }
+
+    /**
+     * @return statements that do ALU operation on A and operand, computing the flags like ALUExecution does,
+     *         or deferring them in lazy flags mode
+     */
+    private static String generateALU(int operation, String operand) {
+        String carry = (operation == 1 || operation == 3) ? "cpu.getCarryFlag()" : "0";
+        String result = switch (operation) {
+            case 0, 1 -> "(byte) (a + b + carry)";
+            case 2, 3 -> "(byte) (a - b - carry)";
+            case 4 -> "(byte) (a & b)";
+            case 5 -> "(byte) (a ^ b)";
+            case 6 -> "(byte) (a | b)";
+            default -> null; // CP doesn't store its result
+        };
+        return "        {\n" +
+                "            byte a = cpu.getRa();\n" +
+                "            byte b = " + operand + ";\n" +
+                "            int carry = " + carry + ";\n" +
+                ((result == null) ? "" : "            cpu.setRa(" + result + ");\n") +
+                "            if (cpu.isLazyFlags()) {\n" +
+                "                cpu.deferALUFlags(" + operation + ", a, b, carry);\n" +
+                "            } else {\n" +
+                "                cpu.setRf(ALUExecution.computeALUFlags(" + operation + ", a, b, carry));\n" +
+                "            }\n" +
+                "        }\n";
+    }
+
+    private static String generateConditional(int condition, String taken, String notTaken) {
+        String test = switch (condition) {
+            case 0 -> "cpu.getZeroFlag() == 0";
+            case 1 -> "cpu.getZeroFlag() == 1";
+            case 2 -> "cpu.getCarryFlag() == 0";
+            default -> "cpu.getCarryFlag() == 1";
+        };
+        return "        if (" + test + ") {\n" + taken.indent(4) + "        } else {\n" + notTaken.indent(4) + "        }\n";
+    }
+
+    /**
+     * @return an expression reading r8, (HL) reads memory and takes an M-cycle
+     */
+    private static String readR8(int r8) {
+        return (r8 == 6) ? "memory.getByte(cpu.getRegisterHL())" : "cpu.get" + R8_REGISTERS[r8] + "()";
+    }
+
+    /**
+     * @return a statement writing value to r8, (HL) writes memory and takes an M-cycle
+     */
+    private static String writeR8(int r8, String value) {
+        return (r8 == 6) ? "memory.setByte(" + value + ", cpu.getRegisterHL());" :
+                "cpu.set" + R8_REGISTERS[r8] + "(" + value + ");";
+    }
+
+    /**
+     * @return the class path, plus wherever the emulator's own classes were loaded from
+     *         (which isn't on the class path when e.g. a test runner loads them).
+     */
+    private static String getClassPath() {
+        String classPath = System.getProperty("java.class.path");
+        try {
+            String emulatorClasses = Paths.get(CPU.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                    .toString();
+            return emulatorClasses + File.pathSeparator + classPath;
+        } catch (Exception e) {
+            return classPath;
+        }
+    }
+
+    /**
+     * Compiles all sources in one javac run.
+     * @param sources class name -> source
+     * @return class name -> class file
+     */
+    Map<String, byte[]> compileSources(Map<String, String> sources) {
+        List<JavaFileObject> sourceFiles = new ArrayList<>();
+        for (Map.Entry<String, String> entry : sources.entrySet()) {
+            sourceFiles.add(new SimpleJavaFileObject(URI.create("string:///model/cpu/" + entry.getKey() + ".java"),
+                    JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return entry.getValue();
+                }
+            });
+        }
+        Map<String, ByteArrayOutputStream> classFiles = new HashMap<>();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        boolean success;
+        try (JavaFileManager fileManager = new ForwardingJavaFileManager<>(
+                javaCompiler.getStandardFileManager(null, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind,
+                                                       FileObject sibling) {
+                String className = name.substring(name.lastIndexOf('.') + 1);
+                return new SimpleJavaFileObject(URI.create("bytes:///model/cpu/" + className + ".class"), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return classFiles.computeIfAbsent(className, k -> new ByteArrayOutputStream());
+                    }
+                };
+            }
+        }) {
+            List<String> options = List.of("-classpath", getClassPath(), "-g:none", "-proc:none");
+            success = javaCompiler.getTask(null, fileManager, diagnostics, options, null, sourceFiles).call();
+        } catch (IOException e) {
+            throw new CPUException("could not close javac's file manager: " + e.getMessage());
+        }
+        if (!success) {
+            // the sources are generated, so this is a bug in generateSource rather than something to skip
+            throw new CPUException("generated block sources don't compile: " + diagnostics.getDiagnostics());
+        }
+
+        Map<String, byte[]> classBytes = new HashMap<>();
+        classFiles.forEach((className, bytes) -> classBytes.put(className, bytes.toByteArray()));
+        compiledBlockCount.addAndGet(classBytes.size());
+        return classBytes;
+    }
+}
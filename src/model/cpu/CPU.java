@@ -1,17 +1,19 @@
 package model.cpu;
 
 import model.cpu.execution.*;
+import model.Clock;
 import model.memory.Memory;
 import util.Constants;
 import util.GBUtil;
 import exception.CPUException;
 
-import java.nio.ByteBuffer;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.AbstractMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.function.BiConsumer;
-import java.util.regex.Pattern;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class CPU {
 
@@ -27,98 +29,117 @@ public class CPU {
     private int IMECounter; // counter for setting IME. -1 = not ticking.
 
     private boolean isHalted;
+    static final long MAX_HALT_M_CYCLES = 17556; // one frame, the time a halted doInstructionCycle lets pass if no interrupt is scheduled
 
-    private final Map<Pattern, BiConsumer<Byte, CPU>> REGEX_TO_EXECUTION_MAP = Map.ofEntries(
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^10[01]{6}$"),
-                    ALUExecution::executeALU_A_r8),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11[01]{3}110$"),
-                    ALUExecution::executeALU_A_u8),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00[01]{2}1001$"),
-                    ALUExecution::executeADD_HL_r16),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11101000$"),
-                    ALUExecution::executeADD_SP_i8),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11111000$"),
-                    ALUExecution::executeLD_HL_SP_plus_i8),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00[01]{3}100$"),
-                    ALUExecution::executeINC_r8),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00[01]{3}101$"),
-                    ALUExecution::executeDEC_r8),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00[01]{2}0011$"),
-                    ALUExecution::executeINC_r16),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00[01]{2}1011$"),
-                    ALUExecution::executeDEC_r16),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00[01]{3}111$"),
-                    BitOpExecution::executeACCUMULATOR_FLAG_OPS),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11001011$"),
-                    BitOpExecution::executeCB_PREFIX),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00011000$"),
-                    ControlFlowExecution::executeJR_UNCONDITIONAL),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^001[01]{2}000$"),
-                    ControlFlowExecution::executeJR_CONDITIONAL),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11000011$"),
-                    ControlFlowExecution::executeJP_UNCONDITIONAL),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^110[01]{2}010$"),
-                    ControlFlowExecution::executeJP_CONDITIONAL),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11001101$"),
-                    ControlFlowExecution::executeCALL_UNCONDITIONAL),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^110[01]{2}100$"),
-                    ControlFlowExecution::executeCALL_CONDITIONAL),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11[01]{3}111$"),
-                    ControlFlowExecution::executeRST),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11[01]{2}1001$"),
-                    ControlFlowExecution::executeRET_HL_OPS),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^110[01]{2}000$"),
-                    ControlFlowExecution::executeRET_CONDITIONAL),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00001000$"),
-                    LoadExecution::executeLD_Memory_u16_SP),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00[01]{2}0001$"),
-                    LoadExecution::executeLD_r16_u16),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00[01]{2}0010$"),
-                    LoadExecution::executeLD_Memory_r16_A),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00[01]{2}1010$"),
-                    LoadExecution::executeLD_A_Memory_r16),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00[01]{3}110$"),
-                    LoadExecution::executeLD_r8_u8),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^01[01]{6}$"),
-                    LoadExecution::executeLD_r8_r8),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11100000$"),
-                    LoadExecution::executeLD_Memory_FF00_plus_u8_A),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11110000$"),
-                    LoadExecution::executeLD_A_Memory_FF00_plus_u8),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11100010$"),
-                    LoadExecution::executeLD_Memory_FF00_plus_C_A),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11110010$"),
-                    LoadExecution::executeLD_A_Memory_FF00_plus_C),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11101010$"),
-                    LoadExecution::executeLD_Memory_u16_A),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11111010$"),
-                    LoadExecution::executeLD_A_Memory_u16),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11[01]{2}0101$"),
-                    LoadExecution::executePUSH_r16),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11[01]{2}0001$"),
-                    LoadExecution::executePOP_r16),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00000000$"),
-                    MiscExecution::executeNOP),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11110011$"),
-                    MiscExecution::executeDI),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11111011$"),
-                    MiscExecution::executeEI),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^01110110$"),
-                    MiscExecution::executeHALT),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00010000$"),
-                    MiscExecution::executeSTOP)
-    );
-
-    private final Map<Pattern, BiConsumer<Byte, CPU>> REGEX_TO_CB_EXECUTION_MAP = Map.ofEntries(
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^00[01]{6}$"),
-                    BitOpExecution::executeSHIFT_ROTATE),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^01[01]{6}$"),
-                    BitOpExecution::executeBIT_bit_r8),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^10[01]{6}$"),
-                    BitOpExecution::executeRES_bit_r8),
-            new AbstractMap.SimpleEntry<Pattern, BiConsumer<Byte, CPU>>(Pattern.compile("^11[01]{6}$"),
-                    BitOpExecution::executeSET_bit_r8)
-    );
+    // lazy flags mode: 8 bit ALU operations record their operands instead of computing flags,
+    // and the flags are only computed once something reads or partially modifies F.
+    private boolean lazyFlags;
+    private int pendingALUOperation; // ALU operation whose flags haven't been computed yet. -1 = none.
+    private byte pendingALUOperand1;
+    private byte pendingALUOperand2;
+    private int pendingALUCarry;
+
+    private boolean aluLookupTables; // if true, 8 bit add/subtract and DAA read results from ALULookupTables
+
+    private BlockCache blockCache; // null = block cache disabled, execute one instruction per cycle
+    private BlockCompiler blockCompiler; // null = never compile hot blocks
+    private OpcodePairProfiler opcodePairProfiler; // null = don't count opcode pairs
+    private boolean idleLoopSkipping; // if true, skip iterations of polling loops found by IdleLoopDetector
+    private long idleMCyclesSkipped;
+
+    // one handler per opcode, indexed by the zero extended instruction byte. null = unknown instruction.
+    private static final InstructionExecution[] EXECUTION_TABLE = buildExecutionTable();
+
+    /**
+     * Builds the opcode -> handler table by matching every possible opcode against the
+     * instruction encodings once per JVM. In an encoding, x matches either bit value.
+     * Later entries take priority over earlier ones, so HALT is listed after LD r8, r8
+     * (its encoding overlaps with LD (HL), (HL)).
+     * Each entry binds the operands that OpcodeTable decoded for the opcode into its handler.
+     */
+    private static InstructionExecution[] buildExecutionTable() {
+        List<Map.Entry<String, Function<OpcodeInfo, InstructionExecution>>> encodingToExecution = List.of(
+                encoding("10xxxxxx", info -> (b, cpu) ->
+                        ALUExecution.executeALU_A_r8(info.getOperation(), info.getR8(), cpu)),
+                encoding("11xxx110", info -> (b, cpu) ->
+                        ALUExecution.executeALU_A_u8(info.getOperation(), cpu)),
+                encoding("00xx1001", info -> (b, cpu) ->
+                        ALUExecution.executeADD_HL_r16(info.getR16(), cpu)),
+                encoding("11101000", info -> ALUExecution::executeADD_SP_i8),
+                encoding("11111000", info -> ALUExecution::executeLD_HL_SP_plus_i8),
+                encoding("00xxx100", info -> (b, cpu) ->
+                        ALUExecution.executeINC_r8(info.getR8(), cpu)),
+                encoding("00xxx101", info -> (b, cpu) ->
+                        ALUExecution.executeDEC_r8(info.getR8(), cpu)),
+                encoding("00xx0011", info -> (b, cpu) ->
+                        ALUExecution.executeINC_r16(info.getR16(), cpu)),
+                encoding("00xx1011", info -> (b, cpu) ->
+                        ALUExecution.executeDEC_r16(info.getR16(), cpu)),
+                encoding("00xxx111", info -> (b, cpu) ->
+                        BitOpExecution.executeACCUMULATOR_FLAG_OPS(info.getOperation(), cpu)),
+                encoding("11001011", info -> BitOpExecution::executeCB_PREFIX),
+                encoding("00011000", info -> ControlFlowExecution::executeJR_UNCONDITIONAL),
+                encoding("001xx000", info -> (b, cpu) ->
+                        ControlFlowExecution.executeJR_CONDITIONAL(info.getCondition(), cpu)),
+                encoding("11000011", info -> ControlFlowExecution::executeJP_UNCONDITIONAL),
+                encoding("110xx010", info -> (b, cpu) ->
+                        ControlFlowExecution.executeJP_CONDITIONAL(info.getCondition(), cpu)),
+                encoding("11001101", info -> ControlFlowExecution::executeCALL_UNCONDITIONAL),
+                encoding("110xx100", info -> (b, cpu) ->
+                        ControlFlowExecution.executeCALL_CONDITIONAL(info.getCondition(), cpu)),
+                encoding("11xxx111", info -> (b, cpu) ->
+                        ControlFlowExecution.executeRST(info.getOperation(), cpu)),
+                encoding("11xx1001", info -> (b, cpu) ->
+                        ControlFlowExecution.executeRET_HL_OPS(info.getOperation(), cpu)),
+                encoding("110xx000", info -> (b, cpu) ->
+                        ControlFlowExecution.executeRET_CONDITIONAL(info.getCondition(), cpu)),
+                encoding("00001000", info -> LoadExecution::executeLD_Memory_u16_SP),
+                encoding("00xx0001", info -> (b, cpu) ->
+                        LoadExecution.executeLD_r16_u16(info.getR16(), cpu)),
+                encoding("00xx0010", info -> (b, cpu) ->
+                        LoadExecution.executeLD_Memory_r16_A(info.getR16(), cpu)),
+                encoding("00xx1010", info -> (b, cpu) ->
+                        LoadExecution.executeLD_A_Memory_r16(info.getR16(), cpu)),
+                encoding("00xxx110", info -> (b, cpu) ->
+                        LoadExecution.executeLD_r8_u8(info.getR8(), cpu)),
+                encoding("01xxxxxx", info -> (b, cpu) ->
+                        LoadExecution.executeLD_r8_r8(info.getR8Destination(), info.getR8(), cpu)),
+                encoding("11100000", info -> LoadExecution::executeLD_Memory_FF00_plus_u8_A),
+                encoding("11110000", info -> LoadExecution::executeLD_A_Memory_FF00_plus_u8),
+                encoding("11100010", info -> LoadExecution::executeLD_Memory_FF00_plus_C_A),
+                encoding("11110010", info -> LoadExecution::executeLD_A_Memory_FF00_plus_C),
+                encoding("11101010", info -> LoadExecution::executeLD_Memory_u16_A),
+                encoding("11111010", info -> LoadExecution::executeLD_A_Memory_u16),
+                encoding("11xx0101", info -> (b, cpu) ->
+                        LoadExecution.executePUSH_r16(info.getR16(), cpu)),
+                encoding("11xx0001", info -> (b, cpu) ->
+                        LoadExecution.executePOP_r16(info.getR16(), cpu)),
+                encoding("00000000", info -> MiscExecution::executeNOP),
+                encoding("11110011", info -> MiscExecution::executeDI),
+                encoding("11111011", info -> MiscExecution::executeEI),
+                encoding("01110110", info -> MiscExecution::executeHALT),
+                encoding("00010000", info -> MiscExecution::executeSTOP)
+        );
+
+        InstructionExecution[] table = new InstructionExecution[256];
+        for (Map.Entry<String, Function<OpcodeInfo, InstructionExecution>> entry : encodingToExecution) {
+            String encoding = entry.getKey();
+            int mask = Integer.parseInt(encoding.replaceAll("[01]", "1").replace('x', '0'), 2);
+            int value = Integer.parseInt(encoding.replace('x', '0'), 2);
+            for (int opcode = 0; opcode < table.length; opcode++) {
+                OpcodeInfo info = OpcodeTable.getOpcodeInfo((byte) opcode);
+                if ((opcode & mask) == value && info != null) {
+                    table[opcode] = entry.getValue().apply(info);
+                }
+            }
+        }
+        return table;
+    }
+
+    private static Map.Entry<String, Function<OpcodeInfo, InstructionExecution>> encoding(
+            String encoding, Function<OpcodeInfo, InstructionExecution> execution) {
+        return new AbstractMap.SimpleEntry<>(encoding, execution);
+    }
 
     public CPU () {
         cpuSetup();
@@ -149,47 +170,350 @@ public class CPU {
 
         setIME(0);
         isHalted = false;
+
+        lazyFlags = false;
+        pendingALUOperation = -1;
+        aluLookupTables = false;
     }
 
+    /**
+     * Executes one instruction, or a whole cached block of instructions if the block cache is enabled.
+     */
     public void doInstructionCycle() {
-        checkHalt();
+        doInstructionCycle(Long.MAX_VALUE);
+    }
+
+    /**
+     * Executes instructions until at least mCycles M-cycles have passed.
+     * @return the exact number of M-cycles that passed. Can be a little more than mCycles,
+     *         since the last instruction (or block) is always finished.
+     */
+    public long runFor(long mCycles) {
+        long start = memory.getMCycles();
+        long end = start + mCycles;
+        long now = start;
+        while (now < end) {
+            doInstructionCycle(end - now);
+            now = memory.getMCycles();
+        }
+        memory.synchronize();
+        return now - start;
+    }
+
+    /**
+     * Executes instructions until condition is true, checking it after every instruction (or block),
+     * or until at least maxMCycles M-cycles have passed.
+     * @return the exact number of M-cycles that passed
+     */
+    public long runUntil(Predicate<CPU> condition, long maxMCycles) {
+        long start = memory.getMCycles();
+        long end = start + maxMCycles;
+        long now = start;
+        while (now < end && !condition.test(this)) {
+            doInstructionCycle(end - now);
+            now = memory.getMCycles();
+        }
+        memory.synchronize();
+        return now - start;
+    }
+
+    /**
+     * @param maxSkippedMCycles the most M-cycles that may pass without executing instructions,
+     *                          while halted or skipping a polling loop
+     */
+    private void doInstructionCycle(long maxSkippedMCycles) {
+        if (checkHalt(maxSkippedMCycles)) {
+            return;
+        }
+        if (blockCache != null) {
+            BlockCache.Block block = blockCache.getBlock(pc);
+            if (block != null) {
+                if (block.compiled != null) {
+                    block.compiled.execute(this, blockCache, block);
+                } else {
+                    if (blockCompiler != null && ++block.executionCount == blockCompiler.getHotThreshold()) {
+                        blockCompiler.compileInBackground(block);
+                    }
+                    executeBlock(block);
+                }
+                if (idleLoopSkipping && block.idleLoopMCycles > 0 && pc == (short) block.start) {
+                    skipIdleLoop(block, maxSkippedMCycles);
+                }
+                return;
+            }
+        }
         byte instruction = memory.getByte(pc);
+        if (opcodePairProfiler != null) {
+            opcodePairProfiler.record(instruction);
+        }
         decodeExecuteInstruction(instruction);
+        finishInstruction();
+    }
+
+    /**
+     * The steps after an instruction is executed: increment PC, tick the IME counter, and check for interrupts.
+     */
+    void finishInstruction() {
         pc++;
         tickIMECounter();
         checkInterrupts();
     }
 
+    /**
+     * Executes a cached block. Each instruction takes the same steps as in doInstructionCycle,
+     * except the opcode fetch only ticks memory since the opcode is already known.
+     * Stops early once PC leaves the block (e.g. an interrupt was serviced),
+     * a write drops the block, or the ROM bank it was decoded from is switched out.
+     */
+    private void executeBlock(BlockCache.Block block) {
+        for (int i = 0; i < block.getLength(); i++) {
+            if (i > 0 && (pc != block.addresses[i] || !blockCache.isCurrent(block))) {
+                return;
+            }
+            if (block.superinstructions != null && block.superinstructions[i] != null) {
+                Superinstructions.Superinstruction superinstruction = block.superinstructions[i];
+                superinstruction.execution.execute(this, block, i);
+                i += superinstruction.length - 1;
+                continue;
+            }
+            if (opcodePairProfiler != null) {
+                opcodePairProfiler.record(block.opcodes[i]);
+            }
+            memory.doMCycle();
+            block.executions[i].execute(block.opcodes[i], this);
+            finishInstruction();
+        }
+    }
+
+    /**
+     * Called after block, a polling loop, ran a whole iteration and jumped back to its start.
+     * Every further iteration would end in the same state until the next timer or other scheduled event,
+     * so let the M-cycles of as many iterations as fit before it pass at once,
+     * at most MAX_HALT_M_CYCLES and maxSkippedMCycles.
+     */
+    private void skipIdleLoop(BlockCache.Block block, long maxSkippedMCycles) {
+        if (IMECounter != -1 || !blockCache.isCurrent(block) || !IdleLoopDetector.isPollingTimeIndependent(block, this)) {
+            return;
+        }
+        long mCycles = Math.min(Math.min(memory.getMCyclesUntilEvent() - 1, MAX_HALT_M_CYCLES),
+                maxSkippedMCycles);
+        long skipped = mCycles - mCycles % block.idleLoopMCycles;
+        memory.skipMCycles(skipped);
+        idleMCyclesSkipped += skipped;
+    }
+
     // todo this should honestly be private too xd
     public void decodeExecuteInstruction(byte instruction) {
-        String binaryString = GBUtil.convertByteToBinaryString(instruction);
-        for (Map.Entry<Pattern, BiConsumer<Byte, CPU>> mapEntry : REGEX_TO_EXECUTION_MAP.entrySet()) {
-            if (mapEntry.getKey().matcher(binaryString).find()) {
-               mapEntry.getValue().accept(instruction, this);
-               return;
-            }
+        InstructionExecution execution = EXECUTION_TABLE[GBUtil.zeroExtend(instruction)];
+        if (execution == null) {
+            throw new CPUException("Unknown instruction: " + GBUtil.convertByteToBinaryString(instruction));
         }
-        throw new CPUException("Unknown instruction: " + binaryString);
+        execution.execute(instruction, this);
     }
 
     // todo should be private later if not too much work, public right now for testing purposes
     // this might not even be the right location for this method (BitOpExecution instead?)
     public void decodeExecuteCBInstruction(byte instruction) {
-        String binaryString = GBUtil.convertByteToBinaryString(instruction);
-        for (Map.Entry<Pattern, BiConsumer<Byte, CPU>> mapEntry : REGEX_TO_CB_EXECUTION_MAP.entrySet()) {
-            if (mapEntry.getKey().matcher(binaryString).find()) {
-                mapEntry.getValue().accept(instruction, this);
-                return;
-            }
+        BitOpExecution.executeCBInstruction(instruction, this);
+    }
+
+    public boolean isBlockCache() {
+        return blockCache != null;
+    }
+
+    /**
+     * @param enabled if true, doInstructionCycle executes whole basic blocks that were decoded once and cached.
+     */
+    public void setBlockCache(boolean enabled) {
+        blockCache = enabled ? new BlockCache(memory) : null;
+        memory.setCodeWriteListener(blockCache);
+        if (!enabled) {
+            stopRecompiler();
+            idleLoopSkipping = false;
+        }
+    }
+
+    public boolean isSuperinstructions() {
+        return blockCache != null && blockCache.isSuperinstructions();
+    }
+
+    /**
+     * @param enabled if true, enables the block cache, and executes common instruction sequences
+     *                in blocks with one fused handler each. See Superinstructions.
+     */
+    public void setSuperinstructions(boolean enabled) {
+        if (enabled && blockCache == null) {
+            setBlockCache(true);
+        }
+        if (blockCache != null) {
+            blockCache.setSuperinstructions(enabled);
+        }
+    }
+
+    public boolean isIdleLoopSkipping() {
+        return idleLoopSkipping;
+    }
+
+    /**
+     * @param enabled if true, enables the block cache, and fast forwards time through polling loops
+     *                that can't see a change until the next timer event. See IdleLoopDetector.
+     */
+    public void setIdleLoopSkipping(boolean enabled) {
+        if (enabled && blockCache == null) {
+            setBlockCache(true);
+        }
+        idleLoopSkipping = enabled;
+    }
+
+    /**
+     * @return the total number of M-cycles that passed without executing instructions, because
+     *         the CPU was in a polling loop. Sample it over time for the M-cycles skipped per second.
+     */
+    public long getIdleMCyclesSkipped() {
+        return idleMCyclesSkipped;
+    }
+
+    /**
+     * @return the profiler counting opcode pairs, or null if profiling is disabled
+     */
+    public OpcodePairProfiler getOpcodePairProfiler() {
+        return opcodePairProfiler;
+    }
+
+    /**
+     * @param enabled if true, counts every pair of consecutive opcodes executed by the interpreter
+     *                and the block cache. Compiled blocks and superinstructions aren't counted.
+     */
+    public void setOpcodePairProfiler(boolean enabled) {
+        opcodePairProfiler = enabled ? new OpcodePairProfiler() : null;
+    }
+
+    public boolean isRecompiler() {
+        return blockCompiler != null;
+    }
+
+    /**
+     * @param enabled if true, enables the block cache, and translates blocks in ROM that run often
+     *                into JVM classes. Needs a JDK, otherwise every block keeps being interpreted.
+     */
+    public void setRecompiler(boolean enabled) {
+        setRecompiler(enabled ? BlockCompiler.DEFAULT_HOT_THRESHOLD : 0);
+    }
+
+    /**
+     * @param hotThreshold how many times a block runs before it is compiled, 0 to disable the recompiler.
+     */
+    void setRecompiler(int hotThreshold) {
+        stopRecompiler();
+        if (hotThreshold == 0) {
+            return;
+        }
+        if (blockCache == null) {
+            setBlockCache(true);
+        }
+        blockCompiler = new BlockCompiler(memory, hotThreshold);
+    }
+
+    private void stopRecompiler() {
+        if (blockCompiler != null) {
+            blockCompiler.shutdown();
+            blockCompiler = null;
+        }
+    }
+
+    /**
+     * Translates all the code that can be reached in ROM ahead of time, and enables the recompiler.
+     * Translations are saved in cacheDirectory, keyed by the ROM's hash, so later runs of the same ROM
+     * load them instead of compiling again. Code that isn't found this way is still compiled once it gets hot.
+     * @return the number of blocks translated. 0 if no Java compiler is available and nothing was cached.
+     */
+    public int translateRom(Path cacheDirectory) throws IOException {
+        if (blockCompiler == null) {
+            setRecompiler(true);
+        }
+        return new RomTranslator(memory, blockCache, blockCompiler).translate(cacheDirectory);
+    }
+
+    /**
+     * Waits until every hot block found so far is compiled and installed. Does nothing without the recompiler.
+     */
+    void awaitCompilations() {
+        if (blockCompiler != null) {
+            blockCompiler.awaitCompilations();
+        }
+    }
+
+    /**
+     * @return the number of blocks compiled by the recompiler
+     */
+    int getCompiledBlockCount() {
+        return (blockCompiler == null) ? 0 : blockCompiler.getCompiledBlockCount();
+    }
+
+    /**
+     * @return the handler for instruction, or null if it is an illegal opcode
+     */
+    static InstructionExecution getInstructionExecution(byte instruction) {
+        return EXECUTION_TABLE[GBUtil.zeroExtend(instruction)];
+    }
+
+    public boolean isLazyFlags() {
+        return lazyFlags;
+    }
+
+    /**
+     * @param lazyFlags if true, 8 bit ALU operations defer computing Z, N, H and C until they are needed.
+     */
+    public void setLazyFlags(boolean lazyFlags) {
+        computePendingFlags();
+        this.lazyFlags = lazyFlags;
+    }
+
+    public boolean isALULookupTables() {
+        return aluLookupTables;
+    }
+
+    /**
+     * @param aluLookupTables if true, ADD, ADC, SUB, SBC, CP and DAA look up their result and flags
+     *                        in precomputed tables instead of computing them.
+     */
+    public void setALULookupTables(boolean aluLookupTables) {
+        this.aluLookupTables = aluLookupTables;
+    }
+
+    /**
+     * Records an 8 bit ALU operation whose flags should be computed later, overwriting any
+     * flags that are still pending. Only used in lazy flags mode.
+     * @param operation the ALU operation, see ALUExecution.computeALUFlags
+     * @param operand1 the value of register A before the operation
+     * @param operand2 the other operand
+     * @param carry the carry flag used by the operation, 0 for operations that don't use it
+     */
+    public void deferALUFlags(int operation, byte operand1, byte operand2, int carry) {
+        pendingALUOperation = operation;
+        pendingALUOperand1 = operand1;
+        pendingALUOperand2 = operand2;
+        pendingALUCarry = carry;
+    }
+
+    /**
+     * If an ALU operation's flags are pending, compute them into register F.
+     */
+    private void computePendingFlags() {
+        if (pendingALUOperation != -1) {
+            rf = ALUExecution.computeALUFlags(pendingALUOperation, pendingALUOperand1, pendingALUOperand2,
+                    pendingALUCarry);
+            pendingALUOperation = -1;
         }
-        throw new CPUException("Unknown instruction: " + binaryString);
     }
 
     public int getZeroFlag() {
+        computePendingFlags();
         return GBUtil.getBit(rf, 7);
     }
 
     public void setZeroFlag(int z) {
+        computePendingFlags();
         if (z == 1) {
             rf = (byte) (rf | 0b10000000);
         } else if (z == 0) {
@@ -200,10 +524,12 @@ public class CPU {
     }
 
     public int getSubtractionFlag() {
+        computePendingFlags();
         return GBUtil.getBit(rf, 6);
     }
 
     public void setSubtractionFlag(int n) {
+        computePendingFlags();
         if (n == 1) {
             rf = (byte) (rf | 0b01000000);
         } else if (n == 0) {
@@ -214,10 +540,12 @@ public class CPU {
     }
 
     public int getHalfCarryFlag() {
+        computePendingFlags();
         return GBUtil.getBit(rf, 5);
     }
 
     public void setHalfCarryFlag(int h) {
+        computePendingFlags();
         if (h == 1) {
             rf = (byte) (rf | 0b00100000);
         } else if (h == 0) {
@@ -228,10 +556,12 @@ public class CPU {
     }
 
     public int getCarryFlag() {
+        computePendingFlags();
         return GBUtil.getBit(rf, 4);
     }
 
     public void setCarryFlag(int c) {
+        computePendingFlags();
         if (c == 1) {
             rf = (byte) (rf | 0b00010000);
         } else if (c == 0) {
@@ -244,59 +574,41 @@ public class CPU {
     // the lower 4 bits of register F should always be 0.
     // This method is the only way to access these lower 4 bits.
     public short getRegisterAF() {
-        ByteBuffer bb = ByteBuffer.allocate(2);
-        bb.put(ra);
-        bb.put(rf);
-        return (short) (bb.getShort(0) & 0xFFF0);
+        computePendingFlags();
+        return (short) ((ra << 8) | (rf & 0xF0));
     }
 
     public void setRegisterAF(short value) {
-        ByteBuffer bb = ByteBuffer.allocate(2);
-        bb.putShort(value);
-        ra = bb.get(0);
-        rf = bb.get(1);
+        ra = (byte) (value >> 8);
+        rf = (byte) (value & 0xF0);
+        pendingALUOperation = -1;
     }
 
     public short getRegisterBC() {
-        ByteBuffer bb = ByteBuffer.allocate(2);
-        bb.put(rb);
-        bb.put(rc);
-        return bb.getShort(0);
+        return (short) ((rb << 8) | (rc & 0xFF));
     }
 
     public void setRegisterBC(short value) {
-        ByteBuffer bb = ByteBuffer.allocate(2);
-        bb.putShort(value);
-        rb = bb.get(0);
-        rc = bb.get(1);
+        rb = (byte) (value >> 8);
+        rc = (byte) value;
     }
 
     public short getRegisterDE() {
-        ByteBuffer bb = ByteBuffer.allocate(2);
-        bb.put(rd);
-        bb.put(re);
-        return bb.getShort(0);
+        return (short) ((rd << 8) | (re & 0xFF));
     }
 
     public void setRegisterDE(short value) {
-        ByteBuffer bb = ByteBuffer.allocate(2);
-        bb.putShort(value);
-        rd = bb.get(0);
-        re = bb.get(1);
+        rd = (byte) (value >> 8);
+        re = (byte) value;
     }
 
     public short getRegisterHL() {
-        ByteBuffer bb = ByteBuffer.allocate(2);
-        bb.put(rh);
-        bb.put(rl);
-        return bb.getShort(0);
+        return (short) ((rh << 8) | (rl & 0xFF));
     }
 
     public void setRegisterHL(short value) {
-        ByteBuffer bb = ByteBuffer.allocate(2);
-        bb.putShort(value);
-        rh = bb.get(0);
-        rl = bb.get(1);
+        rh = (byte) (value >> 8);
+        rl = (byte) value;
     }
 
     public int getIME() {
@@ -326,6 +638,13 @@ public class CPU {
         }
     }
 
+    /**
+     * @return true if an interrupt could be serviced after an instruction: IME is set, or EI is about to set it
+     */
+    boolean canServiceInterrupts() {
+        return IME == 1 || IMECounter != -1;
+    }
+
     /**
      * Ticks IMECounter. If IMECounter = 0, set IME flag. If IMECounter = -1,
      * do not tick.
@@ -339,25 +658,33 @@ public class CPU {
         }
     }
 
+    public boolean getIsHalted() {
+        return isHalted;
+    }
+
     public void setIsHalted(boolean isHalted) {
         this.isHalted = isHalted;
     }
 
     /**
-     * If isHalted, then pause CPU execution until interrupt
+     * If isHalted, lets time pass until an interrupt is pending, skipping straight to the next scheduled event
+     * instead of ticking every M-cycle. If no interrupt is scheduled, only MAX_HALT_M_CYCLES pass,
+     * so a CPU halted with nothing that could wake it up still returns control to the caller.
+     * @param maxMCycles the most M-cycles that may pass
+     * @return true if the CPU is still halted, and no instruction should be executed
      */
-    private void checkHalt() {
+    private boolean checkHalt(long maxMCycles) {
         // todo add the halt bug if you want to
-        while (isHalted) {
-            // todo "time" should still be passing in some way, probably not m-cycles though
-            // presumably other components like the ppu would be progressing time, even though the cpu is paused
-
-            Queue<Integer> pendingInterrupts = memory.getPendingInterrupts();
-            if (!pendingInterrupts.isEmpty()) {
-              isHalted = false;
-              checkInterrupts();
-            }
+        if (!isHalted) {
+            return false;
+        }
+        memory.fastForward(memory.isInterruptScheduled() ? maxMCycles : Math.min(maxMCycles, MAX_HALT_M_CYCLES));
+        if (!memory.hasPendingInterrupt()) {
+            return true;
         }
+        isHalted = false;
+        checkInterrupts();
+        return false;
     }
 
     /**
@@ -365,16 +692,13 @@ public class CPU {
      * then service the interrupt.
      */
     private void checkInterrupts() {
+        memory.synchronizeIfEventDue(); // with deferred sync, IF can only have changed if an event was due
         if (IME != 1) {
             return;
         }
-        Queue<Integer> pendingInterrupts = memory.getPendingInterrupts();
-        while (!pendingInterrupts.isEmpty()) {
-            int interrupt = pendingInterrupts.poll();
-            if (GBUtil.getBit(memory.getIERegister(), interrupt) == 1) {
-                serviceInterrupt(interrupt);
-                break;
-            }
+        int interrupt = memory.getInterruptController().getHighestPriorityPending();
+        if (interrupt != -1) {
+            serviceInterrupt(interrupt);
         }
     }
 
@@ -411,6 +735,13 @@ public class CPU {
         return memory;
     }
 
+    /**
+     * @return the clock counting every M-cycle that has passed since this CPU was created
+     */
+    public Clock getClock() {
+        return memory.getClock();
+    }
+
     public short getStackPointer() {
         return sp;
     }
@@ -469,11 +800,13 @@ public class CPU {
 
     // todo this method is probably not needed
     public byte getRf() {
+        computePendingFlags();
         return (byte) (rf & 0xF0);
     }
 
     public void setRf(byte rf) {
         this.rf = rf;
+        pendingALUOperation = -1;
     }
 
     public byte getRh() {
@@ -0,0 +1,9 @@
+package model.cpu;
+
+/**
+ * A block that BlockCompiler translated into a JVM class. Executing it has the same effect
+ * as CPU.executeBlock on the block it was translated from.
+ */
+interface CompiledBlock {
+    void execute(CPU cpu, BlockCache cache, BlockCache.Block block);
+}
@@ -0,0 +1,137 @@
+package model.cpu;
+
+import model.memory.Memory;
+import util.Constants;
+import util.GBUtil;
+
+/**
+ * Finds blocks that are polling loops, e.g. LDH A, (u8); CP u8; JR NZ back to the start of the block.
+ * A polling loop never writes memory, and every register it writes is computed from memory and registers
+ * it doesn't write. So once one iteration has run, every following iteration ends in exactly the same state
+ * until the memory it polls changes, which can only happen at a timer event or through an interrupt handler.
+ * The CPU can then skip whole iterations by only letting their M-cycles pass.
+ */
+final class IdleLoopDetector {
+    private static final int F = 8; // register bit for F, the others use their r8 number
+    private static final int HL_POINTER = 6; // r8 number of (HL)
+
+    private IdleLoopDetector() {
+    }
+
+    /**
+     * Sets idleLoopMCycles and idleLoopPointers of block if it is a polling loop.
+     */
+    static void detect(BlockCache.Block block, Memory memory) {
+        int mCycles = 0;
+        int pointers = 0; // bit n set = reads memory through r16 n (BC, DE, HL)
+        int written = 0; // registers written so far in the iteration
+        int inputs = 0; // registers read before being written in the iteration
+        int last = block.getLength() - 1;
+        for (int i = 0; i <= last; i++) {
+            int address = GBUtil.zeroExtend(block.addresses[i]);
+            int opcode = GBUtil.zeroExtend(block.opcodes[i]);
+            int reads;
+            int writes;
+            OpcodeInfo info = OpcodeTable.getOpcodeInfo((byte) opcode);
+            int r8 = info.getR8();
+            if (i == last) {
+                if (!isBranchToStart(opcode, address, block.start, memory)) {
+                    return;
+                }
+                reads = (info.getCondition() != OpcodeInfo.NONE) ? bit(F) : 0;
+                writes = 0;
+                mCycles += info.getBranchCycles();
+            } else if (opcode == 0x00) { // NOP
+                reads = 0;
+                writes = 0;
+            } else if (opcode == 0xF0 || opcode == 0xFA) { // LD A, (FF00+u8) and LD A, (u16)
+                int polled = (opcode == 0xF0) ?
+                        0xFF00 | GBUtil.zeroExtend(memory.getByteNoTick((short) (address + 1))) :
+                        GBUtil.zeroExtend(GBUtil.getShortFromBytes(memory.getByteNoTick((short) (address + 1)),
+                                memory.getByteNoTick((short) (address + 2))));
+                if (isTimerRegister(polled)) {
+                    return;
+                }
+                reads = 0;
+                writes = bit(7);
+            } else if (opcode == 0x0A || opcode == 0x1A) { // LD A, (BC) and LD A, (DE)
+                pointers |= 1 << info.getR16();
+                reads = (opcode == 0x0A) ? bit(0) | bit(1) : bit(2) | bit(3);
+                writes = bit(7);
+            } else if (0x40 <= opcode && opcode <= 0x7F && opcode != 0x76) { // LD r8, r8
+                if (info.getR8Destination() == HL_POINTER) {
+                    return; // writes memory
+                }
+                reads = bit(r8);
+                writes = bit(info.getR8Destination());
+            } else if (0xA0 <= opcode && opcode <= 0xBF) { // AND, XOR, OR, CP r8
+                reads = bit(r8) | bit(7);
+                writes = (info.getOperation() == 7) ? bit(F) : bit(7) | bit(F);
+            } else if (opcode == 0xE6 || opcode == 0xEE || opcode == 0xF6 || opcode == 0xFE) { // ... u8
+                reads = bit(7);
+                writes = (opcode == 0xFE) ? bit(F) : bit(7) | bit(F);
+            } else if (opcode == 0xCB) {
+                info = OpcodeTable.getCBOpcodeInfo(memory.getByteNoTick((short) (address + 1)));
+                if (!info.getMnemonic().startsWith("BIT")) {
+                    return;
+                }
+                // BIT keeps the carry flag, which is the same every iteration since nothing else writes it
+                reads = bit(info.getR8());
+                writes = bit(F);
+            } else {
+                return;
+            }
+            if ((reads & bit(HL_POINTER)) != 0) { // (HL)
+                pointers |= 1 << 2;
+                reads = (reads & ~bit(HL_POINTER)) | bit(4) | bit(5);
+            }
+
+            inputs |= reads & ~written;
+            if ((writes & inputs) != 0) {
+                return; // the next iteration would start from a different value
+            }
+            written |= writes;
+            if (i < last) {
+                mCycles += info.getCycles();
+            }
+        }
+        block.idleLoopMCycles = mCycles;
+        block.idleLoopPointers = pointers;
+    }
+
+    /**
+     * @return true if the r16 registers that block reads memory through don't point at a timer register
+     */
+    static boolean isPollingTimeIndependent(BlockCache.Block block, CPU cpu) {
+        return ((block.idleLoopPointers & 0b001) == 0 || !isTimerRegister(GBUtil.zeroExtend(cpu.getRegisterBC()))) &&
+                ((block.idleLoopPointers & 0b010) == 0 || !isTimerRegister(GBUtil.zeroExtend(cpu.getRegisterDE()))) &&
+                ((block.idleLoopPointers & 0b100) == 0 || !isTimerRegister(GBUtil.zeroExtend(cpu.getRegisterHL())));
+    }
+
+    /**
+     * @return true if the value at address changes just by time passing, without a timer event
+     */
+    private static boolean isTimerRegister(int address) {
+        return address == GBUtil.zeroExtend(Constants.DIV_ADDRESS) || address == GBUtil.zeroExtend(Constants.TIMA_ADDRESS);
+    }
+
+    /**
+     * @return true if the instruction at address is JR, JR cc, JP u16 or JP cc, u16 and jumps to start
+     */
+    private static boolean isBranchToStart(int opcode, int address, int start, Memory memory) {
+        if (opcode == 0x18 || (opcode & 0xE7) == 0x20) {
+            byte offset = memory.getByteNoTick((short) (address + 1));
+            return ((address + 2 + offset) & 0xFFFF) == start;
+        }
+        if (opcode == 0xC3 || (opcode & 0xE7) == 0xC2) {
+            short target = GBUtil.getShortFromBytes(memory.getByteNoTick((short) (address + 1)),
+                    memory.getByteNoTick((short) (address + 2)));
+            return GBUtil.zeroExtend(target) == start;
+        }
+        return false;
+    }
+
+    private static int bit(int register) {
+        return 1 << register;
+    }
+}
@@ -0,0 +1,139 @@
+package model.cpu;
+
+/**
+ * Describes one opcode: its mnemonic, length, timing, and operand fields.
+ * Operand fields are already decoded from the opcode bits, and are -1 if the opcode doesn't have them.
+ * Instances are only created by OpcodeTable.
+ */
+public final class OpcodeInfo {
+    public static final int NONE = -1;
+
+    private final String mnemonic; // immediates are written as u8, i8 or u16
+    private final int length; // in bytes, including the 0xCB prefix for CB instructions
+    private final int cycles; // M-cycles, if a conditional branch is not taken
+    private final int branchCycles; // M-cycles, if a conditional branch is taken. same as cycles otherwise
+    private final int operation;
+    private final int r8;
+    private final int r8Destination;
+    private final int r16;
+    private final int condition;
+    private final int bitPosition;
+    private final boolean branch;
+    private final boolean endsBlock;
+
+    OpcodeInfo(String mnemonic, int length, int cycles, int branchCycles, int operation,
+               int r8, int r8Destination, int r16, int condition, int bitPosition) {
+        this.mnemonic = mnemonic;
+        this.length = length;
+        this.cycles = cycles;
+        this.branchCycles = branchCycles;
+        this.operation = operation;
+        this.r8 = r8;
+        this.r8Destination = r8Destination;
+        this.r16 = r16;
+        this.condition = condition;
+        this.bitPosition = bitPosition;
+        this.branch = false;
+        this.endsBlock = false;
+    }
+
+    /**
+     * Copies operands, with the control flow flags OpcodeTable works out from the opcode.
+     */
+    OpcodeInfo(OpcodeInfo operands, boolean branch, boolean endsBlock) {
+        this.mnemonic = operands.mnemonic;
+        this.length = operands.length;
+        this.cycles = operands.cycles;
+        this.branchCycles = operands.branchCycles;
+        this.operation = operands.operation;
+        this.r8 = operands.r8;
+        this.r8Destination = operands.r8Destination;
+        this.r16 = operands.r16;
+        this.condition = operands.condition;
+        this.bitPosition = operands.bitPosition;
+        this.branch = branch;
+        this.endsBlock = endsBlock;
+    }
+
+    public String getMnemonic() {
+        return mnemonic;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getCycles() {
+        return cycles;
+    }
+
+    public int getBranchCycles() {
+        return branchCycles;
+    }
+
+    /**
+     * @return the operation selected by the opcode: the ALU operation of ALU A, r8 and ALU A, u8,
+     *         the shift/rotate operation of CB instructions, the accumulator/flag operation,
+     *         the RET/HL operation, or the index of the RST vector.
+     */
+    public int getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the r8 operand (B, C, D, E, H, L, (HL), A). For LD r8, r8 this is the source.
+     */
+    public int getR8() {
+        return r8;
+    }
+
+    /**
+     * @return the destination r8 operand of LD r8, r8
+     */
+    public int getR8Destination() {
+        return r8Destination;
+    }
+
+    /**
+     * @return the r16 operand. Which registers it means depends on the instruction,
+     *         e.g. BC, DE, HL, SP for INC r16 but BC, DE, HL, AF for PUSH r16.
+     */
+    public int getR16() {
+        return r16;
+    }
+
+    /**
+     * @return the condition of a conditional JR, JP, CALL or RET. In order: NZ, Z, NC, C
+     */
+    public int getCondition() {
+        return condition;
+    }
+
+    /**
+     * @return the bit position of BIT, RES and SET
+     */
+    public int getBitPosition() {
+        return bitPosition;
+    }
+
+    /**
+     * @return true if the instruction can jump somewhere other than the next instruction:
+     *         JP, JR, CALL, RET, RETI and RST, conditional or not.
+     */
+    public boolean isBranch() {
+        return branch;
+    }
+
+    /**
+     * @return true if a basic block has to end after the instruction: branches, and HALT, STOP, EI and DI,
+     *         which change how the following instructions run.
+     */
+    public boolean isEndsBlock() {
+        return endsBlock;
+    }
+
+    @Override
+    public String toString() {
+        return mnemonic;
+    }
+}
@@ -0,0 +1,60 @@
+package model.cpu;
+
+import util.GBUtil;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Counts how often each opcode is directly followed by each other opcode.
+ * Meant for checking, on real ROMs, which sequences are worth adding to Superinstructions.
+ * CB prefixed instructions are counted as the opcode 0xCB.
+ */
+public class OpcodePairProfiler {
+    private final long[] counts = new long[256 * 256]; // [first opcode << 8 | second opcode]
+    private int previous = -1; // the last opcode recorded, -1 if none
+
+    /**
+     * Records that opcode was executed after the previously recorded opcode.
+     */
+    void record(byte opcode) {
+        int current = GBUtil.zeroExtend(opcode);
+        if (previous != -1) {
+            counts[(previous << 8) | current]++;
+        }
+        previous = current;
+    }
+
+    /**
+     * @return how many times second was executed directly after first
+     */
+    public long getCount(byte first, byte second) {
+        return counts[(GBUtil.zeroExtend(first) << 8) | GBUtil.zeroExtend(second)];
+    }
+
+    /**
+     * @return up to n pairs that were executed at least once, most frequent first,
+     *         formatted like "LD A, (HL+); LD (DE), A: 1024"
+     */
+    public List<String> getMostFrequentPairs(int n) {
+        List<Integer> pairs = new ArrayList<>();
+        for (int pair = 0; pair < counts.length; pair++) {
+            if (counts[pair] > 0) {
+                pairs.add(pair);
+            }
+        }
+        pairs.sort(Comparator.comparingLong((Integer pair) -> counts[pair]).reversed());
+
+        List<String> mostFrequent = new ArrayList<>();
+        for (int pair : pairs.subList(0, Math.min(n, pairs.size()))) {
+            mostFrequent.add(getMnemonic(pair >> 8) + "; " + getMnemonic(pair & 0xFF) + ": " + counts[pair]);
+        }
+        return mostFrequent;
+    }
+
+    private static String getMnemonic(int opcode) {
+        OpcodeInfo info = OpcodeTable.getOpcodeInfo((byte) opcode);
+        return (info == null) ? String.format("ILLEGAL $%02X", opcode) : info.getMnemonic();
+    }
+}
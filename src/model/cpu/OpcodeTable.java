@@ -0,0 +1,222 @@
+package model.cpu;
+
+import util.GBUtil;
+
+/**
+ * Describes all 256 opcodes and all 256 CB prefixed opcodes. Built once, and read by the
+ * dispatcher, the disassembler and tracing so that nothing else has to decode opcode bits.
+ * Cycle counts are in M-cycles.
+ */
+public class OpcodeTable {
+    private static final String[] R8_NAMES = {"B", "C", "D", "E", "H", "L", "(HL)", "A"};
+    private static final String[] R16_SP_NAMES = {"BC", "DE", "HL", "SP"};
+    private static final String[] R16_AF_NAMES = {"BC", "DE", "HL", "AF"};
+    private static final String[] R16_INC_DEC_NAMES = {"(BC)", "(DE)", "(HL+)", "(HL-)"};
+    private static final String[] CONDITION_NAMES = {"NZ", "Z", "NC", "C"};
+    private static final String[] ALU_NAMES = {"ADD", "ADC", "SUB", "SBC", "AND", "XOR", "OR", "CP"};
+    private static final String[] SHIFT_ROTATE_NAMES = {"RLC", "RRC", "RL", "RR", "SLA", "SRA", "SWAP", "SRL"};
+    private static final String[] ACCUMULATOR_FLAG_NAMES = {"RLCA", "RRCA", "RLA", "RRA", "DAA", "CPL", "SCF", "CCF"};
+    private static final String[] RET_HL_NAMES = {"RET", "RETI", "JP HL", "LD SP, HL"};
+
+    private static final OpcodeInfo[] OPCODES = new OpcodeInfo[256];
+    private static final OpcodeInfo[] CB_OPCODES = new OpcodeInfo[256];
+
+    static {
+        for (int opcode = 0; opcode < 256; opcode++) {
+            OPCODES[opcode] = decodeOpcode(opcode);
+            CB_OPCODES[opcode] = decodeCBOpcode(opcode);
+        }
+    }
+
+    /**
+     * @return true if opcode is JP, JR, CALL, RET, RETI or RST, conditional or not
+     */
+    private static boolean isBranch(int opcode) {
+        return switch (opcode) {
+            case 0x18, 0x20, 0x28, 0x30, 0x38, // JR
+                 0xC3, 0xC2, 0xCA, 0xD2, 0xDA, 0xE9, // JP
+                 0xCD, 0xC4, 0xCC, 0xD4, 0xDC, // CALL
+                 0xC9, 0xD9, 0xC0, 0xC8, 0xD0, 0xD8 -> true; // RET, RETI
+            default -> (opcode & 0b11000111) == 0b11000111; // RST
+        };
+    }
+
+    /**
+     * @return the description of the opcode, or null if it is an illegal opcode
+     */
+    public static OpcodeInfo getOpcodeInfo(byte opcode) {
+        return OPCODES[GBUtil.zeroExtend(opcode)];
+    }
+
+    /**
+     * @param opcode the byte after the 0xCB prefix
+     * @return the description of the CB prefixed opcode
+     */
+    public static OpcodeInfo getCBOpcodeInfo(byte opcode) {
+        return CB_OPCODES[GBUtil.zeroExtend(opcode)];
+    }
+
+    private static OpcodeInfo simple(String mnemonic, int length, int cycles) {
+        return new OpcodeInfo(mnemonic, length, cycles, cycles, OpcodeInfo.NONE, OpcodeInfo.NONE,
+                OpcodeInfo.NONE, OpcodeInfo.NONE, OpcodeInfo.NONE, OpcodeInfo.NONE);
+    }
+
+    private static OpcodeInfo withR8(String mnemonic, int length, int cycles, int r8) {
+        return new OpcodeInfo(mnemonic, length, cycles, cycles, OpcodeInfo.NONE, r8,
+                OpcodeInfo.NONE, OpcodeInfo.NONE, OpcodeInfo.NONE, OpcodeInfo.NONE);
+    }
+
+    private static OpcodeInfo withR16(String mnemonic, int length, int cycles, int r16) {
+        return new OpcodeInfo(mnemonic, length, cycles, cycles, OpcodeInfo.NONE, OpcodeInfo.NONE,
+                OpcodeInfo.NONE, r16, OpcodeInfo.NONE, OpcodeInfo.NONE);
+    }
+
+    private static OpcodeInfo withCondition(String mnemonic, int length, int cycles, int branchCycles,
+                                            int condition) {
+        return new OpcodeInfo(mnemonic, length, cycles, branchCycles, OpcodeInfo.NONE, OpcodeInfo.NONE,
+                OpcodeInfo.NONE, OpcodeInfo.NONE, condition, OpcodeInfo.NONE);
+    }
+
+    private static OpcodeInfo withOperation(String mnemonic, int length, int cycles, int operation, int r8) {
+        return new OpcodeInfo(mnemonic, length, cycles, cycles, operation, r8,
+                OpcodeInfo.NONE, OpcodeInfo.NONE, OpcodeInfo.NONE, OpcodeInfo.NONE);
+    }
+
+    /**
+     * @return the opcode's description, or null if it is an illegal opcode.
+     */
+    private static OpcodeInfo decodeOpcode(int opcode) {
+        OpcodeInfo operands = decodeOperands(opcode);
+        if (operands == null) {
+            return null;
+        }
+        boolean branch = isBranch(opcode);
+        boolean endsBlock = branch || opcode == 0x76 || opcode == 0x10 || opcode == 0xF3 || opcode == 0xFB; // HALT, STOP, DI, EI
+        return new OpcodeInfo(operands, branch, endsBlock);
+    }
+
+    /**
+     * @return the opcode's mnemonic, timing and operand fields, or null if it is an illegal opcode.
+     */
+    private static OpcodeInfo decodeOperands(int opcode) {
+        int bits543 = (opcode >> 3) & 0b111; // r8, ALU operation, RST vector, ...
+        int bits210 = opcode & 0b111; // r8
+        int bits54 = (opcode >> 4) & 0b11; // r16
+        int bits43 = (opcode >> 3) & 0b11; // condition
+        int hlCycles = (bits543 == 6) ? 2 : 0; // extra M-cycles to read and write (HL)
+
+        switch (opcode >> 6) {
+            case 0 -> {
+                switch (opcode & 0b1111) {
+                    case 0b0001:
+                        return withR16("LD " + R16_SP_NAMES[bits54] + ", u16", 3, 3, bits54);
+                    case 0b0010:
+                        return withR16("LD " + R16_INC_DEC_NAMES[bits54] + ", A", 1, 2, bits54);
+                    case 0b0011:
+                        return withR16("INC " + R16_SP_NAMES[bits54], 1, 2, bits54);
+                    case 0b1001:
+                        return withR16("ADD HL, " + R16_SP_NAMES[bits54], 1, 2, bits54);
+                    case 0b1010:
+                        return withR16("LD A, " + R16_INC_DEC_NAMES[bits54], 1, 2, bits54);
+                    case 0b1011:
+                        return withR16("DEC " + R16_SP_NAMES[bits54], 1, 2, bits54);
+                }
+                switch (bits210) {
+                    case 0b100:
+                        return withR8("INC " + R8_NAMES[bits543], 1, 1 + hlCycles, bits543);
+                    case 0b101:
+                        return withR8("DEC " + R8_NAMES[bits543], 1, 1 + hlCycles, bits543);
+                    case 0b110:
+                        return withR8("LD " + R8_NAMES[bits543] + ", u8", 2, 2 + hlCycles / 2, bits543);
+                    case 0b111:
+                        return withOperation(ACCUMULATOR_FLAG_NAMES[bits543], 1, 1, bits543, OpcodeInfo.NONE);
+                }
+                return switch (bits543) {
+                    case 0 -> simple("NOP", 1, 1);
+                    case 1 -> simple("LD (u16), SP", 3, 5);
+                    case 2 -> simple("STOP", 2, 1);
+                    case 3 -> simple("JR i8", 2, 3);
+                    default -> withCondition("JR " + CONDITION_NAMES[bits43] + ", i8", 2, 2, 3, bits43);
+                };
+            }
+            case 1 -> {
+                if (opcode == 0b01110110) {
+                    return simple("HALT", 1, 1);
+                }
+                int cycles = (bits543 == 6 || bits210 == 6) ? 2 : 1;
+                return new OpcodeInfo("LD " + R8_NAMES[bits543] + ", " + R8_NAMES[bits210], 1, cycles, cycles,
+                        OpcodeInfo.NONE, bits210, bits543, OpcodeInfo.NONE, OpcodeInfo.NONE, OpcodeInfo.NONE);
+            }
+            case 2 -> {
+                return withOperation(ALU_NAMES[bits543] + " A, " + R8_NAMES[bits210], 1,
+                        (bits210 == 6) ? 2 : 1, bits543, bits210);
+            }
+            default -> {
+                switch (bits210) {
+                    case 0b110:
+                        return withOperation(ALU_NAMES[bits543] + " A, u8", 2, 2, bits543, OpcodeInfo.NONE);
+                    case 0b111:
+                        return withOperation("RST " + String.format("%02Xh", bits543 * 8), 1, 4,
+                                bits543, OpcodeInfo.NONE);
+                }
+                switch (opcode & 0b1111) {
+                    case 0b0001:
+                        return withR16("POP " + R16_AF_NAMES[bits54], 1, 3, bits54);
+                    case 0b0101:
+                        return withR16("PUSH " + R16_AF_NAMES[bits54], 1, 4, bits54);
+                    case 0b1001:
+                        return withOperation(RET_HL_NAMES[bits54], 1, (bits54 == 2) ? 1 : (bits54 == 3) ? 2 : 4,
+                                bits54, OpcodeInfo.NONE);
+                }
+                if ((opcode & 0b00100000) == 0) {
+                    switch (bits210) {
+                        case 0b000:
+                            return withCondition("RET " + CONDITION_NAMES[bits43], 1, 2, 5, bits43);
+                        case 0b010:
+                            return withCondition("JP " + CONDITION_NAMES[bits43] + ", u16", 3, 3, 4, bits43);
+                        case 0b100:
+                            return withCondition("CALL " + CONDITION_NAMES[bits43] + ", u16", 3, 3, 6, bits43);
+                    }
+                }
+                return switch (opcode) {
+                    case 0xC3 -> simple("JP u16", 3, 4);
+                    case 0xCB -> simple("PREFIX CB", 1, 1);
+                    case 0xCD -> simple("CALL u16", 3, 6);
+                    case 0xE0 -> simple("LD (FF00+u8), A", 2, 3);
+                    case 0xE2 -> simple("LD (FF00+C), A", 1, 2);
+                    case 0xE8 -> simple("ADD SP, i8", 2, 4);
+                    case 0xEA -> simple("LD (u16), A", 3, 4);
+                    case 0xF0 -> simple("LD A, (FF00+u8)", 2, 3);
+                    case 0xF2 -> simple("LD A, (FF00+C)", 1, 2);
+                    case 0xF3 -> simple("DI", 1, 1);
+                    case 0xF8 -> simple("LD HL, SP+i8", 2, 3);
+                    case 0xFA -> simple("LD A, (u16)", 3, 4);
+                    case 0xFB -> simple("EI", 1, 1);
+                    default -> null; // illegal opcode
+                };
+            }
+        }
+    }
+
+    /**
+     * @param opcode the byte after the 0xCB prefix
+     * @return the opcode's description. Length and cycles include the prefix.
+     */
+    private static OpcodeInfo decodeCBOpcode(int opcode) {
+        int operation = opcode >> 6;
+        int bits543 = (opcode >> 3) & 0b111;
+        int r8 = opcode & 0b111;
+        if (operation == 0) {
+            return withOperation(SHIFT_ROTATE_NAMES[bits543] + " " + R8_NAMES[r8], 2, (r8 == 6) ? 4 : 2,
+                    bits543, r8);
+        }
+        String name = switch (operation) {
+            case 1 -> "BIT";
+            case 2 -> "RES";
+            default -> "SET";
+        };
+        int cycles = (r8 != 6) ? 2 : (operation == 1) ? 3 : 4;
+        return new OpcodeInfo(name + " " + bits543 + ", " + R8_NAMES[r8], 2, cycles, cycles, operation, r8,
+                OpcodeInfo.NONE, OpcodeInfo.NONE, OpcodeInfo.NONE, bits543);
+    }
+}
@@ -0,0 +1,202 @@
+package model.cpu;
+
+import exception.CPUException;
+import model.memory.Memory;
+import model.memory.mapper.Mapper;
+import model.memory.mapper.NoMapper;
+import util.Constants;
+import util.GBUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Translates all the code reachable in ROM ahead of time, instead of waiting for blocks to get hot.
+ * Control flow is followed from the entry point 0x100, the RST vectors and the interrupt handlers.
+ * Class files are saved in a cache directory named after the ROM's hash and the generator's hash, so the next run
+ * of the same ROM with the same BlockCompiler only has to load them. Each class file is saved with its SHA-256,
+ * and one that doesn't match it is compiled again.
+ * Only code whose bank can't change is followed: all of ROM without a mapper, otherwise 0x0000-0x3FFF if the mapper
+ * can't switch it. Elsewhere which bank a jump lands in isn't known until run time, and those blocks are left
+ * to the interpreter and the recompiler.
+ */
+class RomTranslator {
+    // change this whenever generated code changes without BlockCompiler's class file changing, so old caches aren't used
+    private static final String CACHE_VERSION = "2";
+    private static final String DIGEST_EXTENSION = ".sha256";
+    private static final short[] ENTRY_POINTS = {
+            (short) 0x100,
+            (short) 0x00, (short) 0x08, (short) 0x10, (short) 0x18,
+            (short) 0x20, (short) 0x28, (short) 0x30, (short) 0x38,
+            Constants.VBLANK_HANDLER_ADDRESS, Constants.LCD_HANDLER_ADDRESS, Constants.TIMER_HANDLER_ADDRESS,
+            Constants.SERIAL_HANDLER_ADDRESS, Constants.JOYPAD_HANDLER_ADDRESS
+    };
+
+    private final Memory memory;
+    private final BlockCache blockCache;
+    private final BlockCompiler blockCompiler;
+
+    RomTranslator(Memory memory, BlockCache blockCache, BlockCompiler blockCompiler) {
+        this.memory = memory;
+        this.blockCache = blockCache;
+        this.blockCompiler = blockCompiler;
+    }
+
+    /**
+     * Finds every reachable block, compiles the ones missing from the cache, and installs all of them.
+     * @param cacheDirectory directory that holds one subdirectory of class files per ROM
+     * @return the number of blocks installed
+     */
+    int translate(Path cacheDirectory) throws IOException {
+        Path romDirectory = cacheDirectory.resolve(memory.getRomHash() + "-" + getGeneratorHash());
+        Files.createDirectories(romDirectory);
+
+        List<BlockCache.Block> blocks = findReachableBlocks();
+        Map<String, byte[]> classFiles = new HashMap<>();
+        Set<String> cached = new HashSet<>();
+        Map<String, String> sources = new HashMap<>();
+        for (BlockCache.Block block : blocks) {
+            String className = BlockCompiler.getClassName(block);
+            byte[] classBytes = readCachedClass(romDirectory, className);
+            if (classBytes != null) {
+                classFiles.put(className, classBytes);
+                cached.add(className);
+            } else if (blockCompiler.canCompile(block)) {
+                sources.put(className, blockCompiler.generateSource(className, block));
+            }
+        }
+        if (!sources.isEmpty()) {
+            Map<String, byte[]> compiled = blockCompiler.compileSources(sources);
+            for (Map.Entry<String, byte[]> entry : compiled.entrySet()) {
+                Files.write(romDirectory.resolve(entry.getKey() + ".class"), entry.getValue());
+                Files.writeString(romDirectory.resolve(entry.getKey() + DIGEST_EXTENSION), sha256(entry.getValue()));
+            }
+            classFiles.putAll(compiled);
+        }
+
+        int installed = 0;
+        for (BlockCache.Block block : blocks) {
+            String className = BlockCompiler.getClassName(block);
+            byte[] classBytes = classFiles.get(className);
+            if (classBytes != null) {
+                block.compiled = blockCompiler.define(classBytes, block, cached.contains(className));
+                if (block.compiled != null) {
+                    installed++;
+                }
+            }
+        }
+        return installed;
+    }
+
+    /**
+     * @return the cached class file of className, or null if it is missing or doesn't match its saved SHA-256
+     */
+    private static byte[] readCachedClass(Path romDirectory, String className) throws IOException {
+        Path classFile = romDirectory.resolve(className + ".class");
+        Path digestFile = romDirectory.resolve(className + DIGEST_EXTENSION);
+        if (!Files.exists(classFile) || !Files.exists(digestFile)) {
+            return null;
+        }
+        byte[] classBytes = Files.readAllBytes(classFile);
+        return sha256(classBytes).equals(Files.readString(digestFile).trim()) ? classBytes : null;
+    }
+
+    /**
+     * @return a hash of CACHE_VERSION and BlockCompiler's class file, so a changed generator gets its own cache
+     */
+    static String getGeneratorHash() throws IOException {
+        byte[] generator;
+        try (InputStream classFile = BlockCompiler.class.getResourceAsStream("BlockCompiler.class")) {
+            generator = (classFile == null) ? new byte[0] : classFile.readAllBytes();
+        }
+        return sha256(CACHE_VERSION.getBytes(StandardCharsets.US_ASCII), generator).substring(0, 16);
+    }
+
+    private static String sha256(byte[]... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (byte[] part : parts) {
+                digest.update(part);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new CPUException("SHA-256 is not available: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return every block that is reachable from the entry points, following jumps, calls,
+     *         and the instructions after calls and conditional branches.
+     */
+    List<BlockCache.Block> findReachableBlocks() {
+        List<BlockCache.Block> blocks = new ArrayList<>();
+        Set<Integer> visited = new HashSet<>();
+        Deque<Integer> toVisit = new ArrayDeque<>();
+        for (short entryPoint : ENTRY_POINTS) {
+            toVisit.add(GBUtil.zeroExtend(entryPoint));
+        }
+
+        while (!toVisit.isEmpty()) {
+            int address = toVisit.poll();
+            if (!isUnambiguousRom(address) || !visited.add(address)) {
+                continue;
+            }
+            BlockCache.Block block = blockCache.getBlock((short) address);
+            if (block == null) {
+                continue;
+            }
+            blocks.add(block);
+            toVisit.addAll(getSuccessors(block));
+        }
+        return blocks;
+    }
+
+    /**
+     * @return true if address is in ROM, and which bank it is in doesn't depend on the mapper's registers
+     */
+    private boolean isUnambiguousRom(int address) {
+        Mapper mapper = memory.getMapper();
+        if (mapper instanceof NoMapper) {
+            return address <= 0x7FFF;
+        }
+        return address <= 0x3FFF && !mapper.canRemapLowRom();
+    }
+
+    /**
+     * @return the addresses execution can continue at after block, where they can be known ahead of time
+     */
+    private List<Integer> getSuccessors(BlockCache.Block block) {
+        int last = block.getLength() - 1;
+        int address = GBUtil.zeroExtend(block.addresses[last]);
+        OpcodeInfo info = OpcodeTable.getOpcodeInfo(block.opcodes[last]);
+        int next = block.end;
+        if (!info.isBranch()) {
+            return List.of(next);
+        }
+
+        byte lsb = memory.getByteNoTick((short) (address + 1));
+        byte msb = memory.getByteNoTick((short) (address + 2));
+        List<Integer> successors = new ArrayList<>();
+        int opcode = GBUtil.zeroExtend(block.opcodes[last]);
+        if (opcode == 0x18 || (opcode & 0xE7) == 0x20) { // JR i8, JR cc, i8
+            successors.add((next + lsb) & 0xFFFF);
+        } else if (opcode == 0xC3 || (opcode & 0xE7) == 0xC2) { // JP u16, JP cc, u16
+            successors.add(GBUtil.zeroExtend(GBUtil.getShortFromBytes(lsb, msb)));
+        } else if (opcode == 0xCD || (opcode & 0xE7) == 0xC4) { // CALL u16, CALL cc, u16
+            successors.add(GBUtil.zeroExtend(GBUtil.getShortFromBytes(lsb, msb)));
+        } else if ((opcode & 0xC7) == 0xC7) { // RST
+            successors.add(opcode & 0x38);
+        }
+        boolean isCall = opcode == 0xCD || (opcode & 0xE7) == 0xC4 || (opcode & 0xC7) == 0xC7;
+        if (isCall || info.getCondition() != OpcodeInfo.NONE) {
+            successors.add(next); // returned to, or branch not taken
+        }
+        return successors;
+    }
+}
@@ -0,0 +1,148 @@
+package model.cpu;
+
+import model.cpu.execution.ALUExecution;
+import model.cpu.execution.ControlFlowExecution;
+import model.cpu.execution.LoadExecution;
+
+/**
+ * Fused handlers for the instruction sequences of common tight loops: LD A, (HL+) followed by LD (DE), A
+ * in copy loops, DEC r8 followed by JR NZ in delay loops, and LDH A, (u8) then CP u8 then JR cc in loops
+ * polling an IO register. They were chosen from those loop idioms, not from profiling data;
+ * OpcodePairProfiler can be used to check them against real ROMs.
+ * A superinstruction runs its whole sequence with one dispatch, calling the same execution methods
+ * as the single instructions directly, and ticking memory for each fetch, so cycles and flags are exactly
+ * the same as executing the instructions one at a time.
+ * While no interrupt can be serviced (IME clear and no EI pending) the instructions inside the sequence only
+ * advance PC, and interrupts are checked once at its end. Otherwise every instruction is finished and
+ * checked for interrupts like CPU.executeBlock does, since one can land between any two of them.
+ */
+final class Superinstructions {
+
+    @FunctionalInterface
+    interface FusedExecution {
+        /**
+         * Executes the sequence starting at instruction index of block.
+         * Stops early if PC leaves the block, e.g. because an interrupt was serviced.
+         */
+        void execute(CPU cpu, BlockCache.Block block, int index);
+    }
+
+    static final class Superinstruction {
+        final int length; // number of instructions fused
+        final FusedExecution execution;
+
+        Superinstruction(int length, FusedExecution execution) {
+            this.length = length;
+            this.execution = execution;
+        }
+    }
+
+    private Superinstructions() {
+    }
+
+    /**
+     * @return the superinstructions of block, indexed by the instruction each one starts at.
+     *         null if no sequence in block can be fused.
+     */
+    static Superinstruction[] fuse(BlockCache.Block block) {
+        Superinstruction[] superinstructions = null;
+        for (int i = 0; i < block.getLength(); i++) {
+            Superinstruction superinstruction = match(block.opcodes, i);
+            if (superinstruction != null) {
+                if (superinstructions == null) {
+                    superinstructions = new Superinstruction[block.getLength()];
+                }
+                superinstructions[i] = superinstruction;
+                i += superinstruction.length - 1;
+            }
+        }
+        return superinstructions;
+    }
+
+    /**
+     * @return the superinstruction for the sequence starting at opcodes[index], or null if there isn't one
+     */
+    private static Superinstruction match(byte[] opcodes, int index) {
+        int remaining = opcodes.length - index;
+        if (remaining < 2) {
+            return null;
+        }
+        byte first = opcodes[index];
+        byte second = opcodes[index + 1];
+        if (first == (byte) 0x2A && second == (byte) 0x12) {
+            return new Superinstruction(2, Superinstructions::executeCopyLoop);
+        }
+        OpcodeInfo firstInfo = OpcodeTable.getOpcodeInfo(first);
+        if ((first & 0xC7) == 0x05 && firstInfo.getR8() != 6 && second == (byte) 0x20) {
+            int r8 = firstInfo.getR8();
+            return new Superinstruction(2, (cpu, block, i) -> executeDelayLoop(r8, cpu, block, i));
+        }
+        if (remaining >= 3 && first == (byte) 0xF0 && second == (byte) 0xFE && (opcodes[index + 2] & 0xE7) == 0x20) {
+            int condition = OpcodeTable.getOpcodeInfo(opcodes[index + 2]).getCondition();
+            return new Superinstruction(3, (cpu, block, i) -> executePollLoop(condition, cpu, block, i));
+        }
+        return null;
+    }
+
+    /**
+     * Finishes the current instruction, and fetches the next one if PC is still at instruction index of block.
+     * Without interrupts to service, only PC is advanced: no instruction before the last in a sequence branches,
+     * so PC is always at the next instruction.
+     * @return false if execution left the block, and the superinstruction has to stop
+     */
+    private static boolean nextInstruction(CPU cpu, BlockCache.Block block, int index) {
+        if (cpu.canServiceInterrupts()) {
+            cpu.finishInstruction();
+            if (cpu.getProgramCounter() != block.addresses[index]) {
+                return false;
+            }
+        } else {
+            cpu.setProgramCounter((short) (cpu.getProgramCounter() + 1));
+        }
+        cpu.getMemory().doMCycle();
+        return true;
+    }
+
+    /**
+     * LD A, (HL+); LD (DE), A
+     */
+    private static void executeCopyLoop(CPU cpu, BlockCache.Block block, int index) {
+        cpu.getMemory().doMCycle();
+        LoadExecution.executeLD_A_Memory_r16(2, cpu);
+        if (!nextInstruction(cpu, block, index + 1)) {
+            return;
+        }
+        LoadExecution.executeLD_Memory_r16_A(1, cpu);
+        cpu.finishInstruction();
+    }
+
+    /**
+     * DEC r8; JR NZ, i8
+     */
+    private static void executeDelayLoop(int r8, CPU cpu, BlockCache.Block block, int index) {
+        cpu.getMemory().doMCycle();
+        ALUExecution.executeDEC_r8(r8, cpu);
+        if (!nextInstruction(cpu, block, index + 1)) {
+            return;
+        }
+        ControlFlowExecution.executeJR_CONDITIONAL(0, cpu);
+        cpu.finishInstruction();
+    }
+
+    /**
+     * LDH A, (u8); CP u8; JR cc, i8
+     */
+    private static void executePollLoop(int condition, CPU cpu, BlockCache.Block block, int index) {
+        cpu.getMemory().doMCycle();
+        LoadExecution.executeLD_A_Memory_FF00_plus_u8((byte) 0xF0, cpu);
+        if (!nextInstruction(cpu, block, index + 1)) {
+            return;
+        }
+        ALUExecution.executeALU_A_u8(7, cpu);
+        if (!nextInstruction(cpu, block, index + 2)) {
+            return;
+        }
+        ControlFlowExecution.executeJR_CONDITIONAL(condition, cpu);
+        cpu.finishInstruction();
+    }
+}
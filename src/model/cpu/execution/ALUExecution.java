@@ -3,133 +3,204 @@ package model.cpu.execution;
 import model.cpu.CPU;
 import util.GBUtil;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.function.BiConsumer;
-import java.util.function.Function;
-
-import static util.GBUtil.INSTRUCTION_TO_GET_R16_SP_MAP;
-import static util.GBUtil.INSTRUCTION_TO_SET_R16_SP_MAP;
-
 /**
  * class containing methods that execute ALU operations
  */
 public class ALUExecution {
 
-    private static final List<BiConsumer<Byte, CPU>> INSTRUCTION_TO_ALU_A_R8_MAP = Arrays.asList(
-            (Byte b, CPU cpu) -> {
+    /**
+     * Executes the 8 bit ALU operation on register A and b, and stores the result in A.
+     * @param operation bits 5,4,3 of the instruction. In order: ADD, ADC, SUB, SBC, AND, XOR, OR, CP
+     */
+    private static void executeALUOperation(int operation, byte b, CPU cpu) {
+        if (cpu.isLazyFlags()) {
+            executeALUOperationLazyFlags(operation, b, cpu);
+            return;
+        }
+        if (cpu.isALULookupTables() && (operation <= 3 || operation == 7)) {
+            executeALUOperationLookupTables(operation, b, cpu);
+            return;
+        }
+        switch (operation) {
+            case 0 -> { // ADD
                 byte regA = cpu.getRa();
                 cpu.setZeroFlag(((byte) (regA + b) == 0) ? 1 : 0);
                 cpu.setSubtractionFlag(0);
                 updateCarryFlagAdditionR8(cpu.getRa(), b, (byte) 0, cpu);
                 updateHalfCarryFlagAdditionR8(cpu.getRa(), b, (byte) 0, cpu);
                 cpu.setRa((byte) (cpu.getRa() + b));
-            },
-            (Byte b, CPU cpu) -> {
+            }
+            case 1 -> { // ADC
                 byte regA = cpu.getRa();
                 cpu.setZeroFlag(((byte) (regA + b + cpu.getCarryFlag()) == 0) ? 1 : 0);
                 cpu.setSubtractionFlag(0);
                 updateHalfCarryFlagAdditionR8(regA, b, (byte) cpu.getCarryFlag(), cpu);
                 cpu.setRa((byte) (regA + b + cpu.getCarryFlag()));
                 updateCarryFlagAdditionR8(regA, b, (byte) cpu.getCarryFlag(), cpu);
-            },
-            (Byte b, CPU cpu) -> {
+            }
+            case 2 -> { // SUB
                 byte regA = cpu.getRa();
                 cpu.setZeroFlag(((byte) (regA - b) == 0) ? 1 : 0);
                 cpu.setSubtractionFlag(1);
                 updateCarryFlagSubtractionR8(regA, b, (byte) 0, cpu);
                 updateHalfCarryFlagSubtractionR8(regA, b, (byte) 0, cpu);
                 cpu.setRa((byte) (regA - b));
-            },
-            (Byte b, CPU cpu) -> {
+            }
+            case 3 -> { // SBC
                 byte regA = cpu.getRa();
                 cpu.setZeroFlag(((byte) (regA - b - cpu.getCarryFlag()) == 0) ? 1 : 0);
                 cpu.setSubtractionFlag(1);
                 updateHalfCarryFlagSubtractionR8(regA, b, (byte) cpu.getCarryFlag(), cpu);
                 cpu.setRa((byte) (regA - b - cpu.getCarryFlag()));
                 updateCarryFlagSubtractionR8(regA, b, (byte) cpu.getCarryFlag(), cpu);
-            },
-            (Byte b, CPU cpu) -> {
+            }
+            case 4 -> { // AND
                 byte regA = cpu.getRa();
                 cpu.setZeroFlag(((byte) (regA & b) == 0) ? 1 : 0);
                 cpu.setSubtractionFlag(0);
                 cpu.setCarryFlag(0);
                 cpu.setHalfCarryFlag(1);
                 cpu.setRa((byte) (regA & b));
-            },
-            (Byte b, CPU cpu) -> {
+            }
+            case 5 -> { // XOR
                 byte regA = cpu.getRa();
                 cpu.setZeroFlag(((byte) (regA ^ b) == 0) ? 1 : 0);
                 cpu.setSubtractionFlag(0);
                 cpu.setCarryFlag(0);
                 cpu.setHalfCarryFlag(0);
                 cpu.setRa((byte) (regA ^ b));
-            },
-            (Byte b, CPU cpu) -> {
+            }
+            case 6 -> { // OR
                 byte regA = cpu.getRa();
                 cpu.setZeroFlag(((byte) (regA | b) == 0) ? 1 : 0);
                 cpu.setSubtractionFlag(0);
                 cpu.setCarryFlag(0);
                 cpu.setHalfCarryFlag(0);
                 cpu.setRa((byte) (regA | b));
-            },
-            (Byte b, CPU cpu) -> {
+            }
+            default -> { // CP
                 byte regA = cpu.getRa();
                 cpu.setZeroFlag(((byte) (regA - b) == 0) ? 1 : 0);
                 cpu.setSubtractionFlag(1);
                 updateCarryFlagSubtractionR8(regA, b, (byte) 0, cpu);
                 updateHalfCarryFlagSubtractionR8(regA, b, (byte) 0, cpu);
             }
-    );
+        }
+    }
 
     /**
-     * corresponds to ALU A,r8 instruction.
+     * Executes the 8 bit ALU operation like executeALUOperation, but only records the operands
+     * for the flags to be computed later by computeALUFlags.
      */
-    public static void executeALU_A_r8(byte instruction, CPU cpu) {
-        Function<CPU, Byte> getR8 = GBUtil.INSTRUCTION_TO_GET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 2),
-                GBUtil.getBit(instruction, 1),
-                GBUtil.getBit(instruction, 0)));
+    private static void executeALUOperationLazyFlags(int operation, byte b, CPU cpu) {
+        byte regA = cpu.getRa();
+        int carry = (operation == 1 || operation == 3) ? cpu.getCarryFlag() : 0;
+        byte result = switch (operation) {
+            case 0, 1 -> (byte) (regA + b + carry);
+            case 2, 3 -> (byte) (regA - b - carry);
+            case 4 -> (byte) (regA & b);
+            case 5 -> (byte) (regA ^ b);
+            case 6 -> (byte) (regA | b);
+            default -> regA; // CP doesn't store its result
+        };
+        cpu.setRa(result);
+        cpu.deferALUFlags(operation, regA, b, carry);
+    }
 
-        byte r8 = getR8.apply(cpu);
+    /**
+     * Executes ADD, ADC, SUB, SBC or CP like executeALUOperation, but reads the result
+     * and flags from ALULookupTables.
+     */
+    private static void executeALUOperationLookupTables(int operation, byte b, CPU cpu) {
+        byte regA = cpu.getRa();
+        int carry = (operation == 1 || operation == 3) ? cpu.getCarryFlag() : 0;
+        int resultAndFlags = (operation <= 1) ?
+                ALULookupTables.getAddition(regA, b, carry) :
+                ALULookupTables.getSubtraction(regA, b, carry);
+        if (operation != 7) {
+            cpu.setRa((byte) (resultAndFlags >> 8));
+        }
+        cpu.setRf((byte) resultAndFlags);
+    }
 
-        BiConsumer<Byte, CPU> ALUFunction = INSTRUCTION_TO_ALU_A_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4),
-                GBUtil.getBit(instruction, 3)));
+    /**
+     * Computes the flags set by an 8 bit ALU operation.
+     * @param operation In order: ADD, ADC, SUB, SBC, AND, XOR, OR, CP
+     * @param operand1 the value of register A before the operation
+     * @param operand2 the other operand
+     * @param carry the carry flag used by ADC and SBC. Should be 0 for other operations.
+     * @return the value of register F after the operation
+     */
+    public static byte computeALUFlags(int operation, byte operand1, byte operand2, int carry) {
+        int a = GBUtil.zeroExtend(operand1);
+        int b = GBUtil.zeroExtend(operand2);
+        int result;
+        int halfCarry;
+        int fullCarry;
+        int subtraction;
+        switch (operation) {
+            case 0, 1 -> {
+                result = a + b + carry;
+                subtraction = 0;
+                halfCarry = ((a & 0xF) + (b & 0xF) + carry > GBUtil.UNSIGNED_NIBBLE_MAX) ? 1 : 0;
+                fullCarry = (result > GBUtil.UNSIGNED_BYTE_MAX) ? 1 : 0;
+            }
+            case 2, 3, 7 -> {
+                result = a - b - carry;
+                subtraction = 1;
+                halfCarry = ((a & 0xF) - (b & 0xF) - carry < 0) ? 1 : 0;
+                fullCarry = (result < 0) ? 1 : 0;
+            }
+            case 4 -> {
+                result = a & b;
+                subtraction = 0;
+                halfCarry = 1;
+                fullCarry = 0;
+            }
+            case 5 -> {
+                result = a ^ b;
+                subtraction = 0;
+                halfCarry = 0;
+                fullCarry = 0;
+            }
+            default -> {
+                result = a | b;
+                subtraction = 0;
+                halfCarry = 0;
+                fullCarry = 0;
+            }
+        }
+        int zero = ((result & 0xFF) == 0) ? 1 : 0;
+        return (byte) ((zero << 7) | (subtraction << 6) | (halfCarry << 5) | (fullCarry << 4));
+    }
 
-        ALUFunction.accept(r8, cpu);
+    /**
+     * corresponds to ALU A,r8 instruction.
+     */
+    public static void executeALU_A_r8(int operation, int r8Operand, CPU cpu) {
+        byte r8 = GBUtil.getR8(r8Operand, cpu);
+        executeALUOperation(operation, r8, cpu);
     }
 
     /**
      * corresponds to ALU A,u8 instruction.
      */
-    public static void executeALU_A_u8(byte instruction, CPU cpu) {
+    public static void executeALU_A_u8(int operation, CPU cpu) {
 
         short pc = cpu.getProgramCounter();
         pc = (short) (pc + 1);
         byte u8 = cpu.getMemory().getByte(pc);
         cpu.setProgramCounter(pc);
 
-        BiConsumer<Byte, CPU> ALUFunction = INSTRUCTION_TO_ALU_A_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4),
-                GBUtil.getBit(instruction, 3)));
-
-        ALUFunction.accept(u8, cpu);
+        executeALUOperation(operation, u8, cpu);
     }
 
     /**
      * corresponds to the ADD HL, r16 instruction.
      * Takes 2 M-cycles, so add an extra M-cycle call.
      */
-    public static void executeADD_HL_r16(byte instruction, CPU cpu) {
-       Function<CPU, Short> getR16 = INSTRUCTION_TO_GET_R16_SP_MAP.get(GBUtil.get2BitValue(
-               GBUtil.getBit(instruction, 5),
-               GBUtil.getBit(instruction, 4)
-       ));
-
-       short r16 = getR16.apply(cpu);
+    public static void executeADD_HL_r16(int r16Operand, CPU cpu) {
+        short r16 = GBUtil.getR16SP(r16Operand, cpu);
 
         cpu.setSubtractionFlag(0);
         updateCarryFlagAdditionR16(cpu.getRegisterHL(), r16, cpu);
@@ -194,71 +265,38 @@ public class ALUExecution {
     /**
      * corresponds to INC r8 instruction
      */
-    public static void executeINC_r8(byte instruction, CPU cpu) {
-
-        Function<CPU, Byte> getR8 = GBUtil.INSTRUCTION_TO_GET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4),
-                GBUtil.getBit(instruction, 3)));
-
-        byte r8 = getR8.apply(cpu);
+    public static void executeINC_r8(int r8Operand, CPU cpu) {
+        byte r8 = GBUtil.getR8(r8Operand, cpu);
         int result = GBUtil.zeroExtend(r8) + 1;
         cpu.setZeroFlag(( (byte) result == 0) ? 1 : 0);
         cpu.setSubtractionFlag(0);
         updateHalfCarryFlagAdditionR8(r8, (byte) 1, (byte) 0, cpu);
 
-        BiConsumer<Byte, CPU> setR8 = GBUtil.INSTRUCTION_TO_SET_R8_MAP.get(GBUtil.get3BitValue(
-           GBUtil.getBit(instruction, 5),
-           GBUtil.getBit(instruction, 4),
-           GBUtil.getBit(instruction, 3)
-        ));
-
-        setR8.accept((byte) result, cpu);
+        GBUtil.setR8(r8Operand, (byte) result, cpu);
     }
 
 
     /**
      * corresponds to DEC r8 instruction
      */
-    public static void executeDEC_r8(byte instruction, CPU cpu) {
-        Function<CPU, Byte> getR8 = GBUtil.INSTRUCTION_TO_GET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4),
-                GBUtil.getBit(instruction, 3)));
-
-        byte r8 = getR8.apply(cpu);
+    public static void executeDEC_r8(int r8Operand, CPU cpu) {
+        byte r8 = GBUtil.getR8(r8Operand, cpu);
         int result = GBUtil.zeroExtend(r8) - 1;
         cpu.setZeroFlag(((byte) result == 0) ? 1 : 0);
         cpu.setSubtractionFlag(1);
         updateHalfCarryFlagSubtractionR8(r8, (byte) 1, (byte) 0, cpu);
 
-        BiConsumer<Byte, CPU> setR8 = GBUtil.INSTRUCTION_TO_SET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4),
-                GBUtil.getBit(instruction, 3)
-        ));
-
-        setR8.accept((byte) result, cpu);
+        GBUtil.setR8(r8Operand, (byte) result, cpu);
     }
 
     /**
      * corresponds to INC r16 instruction.
      * This takes 2 M-cycles, so add an extra M-cycle call.
      */
-    public static void executeINC_r16(byte instruction, CPU cpu) {
-        Function<CPU, Short> getR16 = INSTRUCTION_TO_GET_R16_SP_MAP.get(GBUtil.get2BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4)
-        ));
-
-        short r16 = getR16.apply(cpu);
+    public static void executeINC_r16(int r16Operand, CPU cpu) {
+        short r16 = GBUtil.getR16SP(r16Operand, cpu);
         int result = GBUtil.zeroExtend(r16) + 1;
-
-        BiConsumer<Short, CPU> setR16 = INSTRUCTION_TO_SET_R16_SP_MAP.get(GBUtil.get2BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4)
-        ));
-        setR16.accept((short) result, cpu);
+        GBUtil.setR16SP(r16Operand, (short) result, cpu);
         cpu.getMemory().doMCycle();
     }
 
@@ -266,20 +304,10 @@ public class ALUExecution {
      * corresponds to DEC r16 instruction.
      * This takes 2 M-cycles, so add an extra M-cycle call.
      */
-    public static void executeDEC_r16(byte instruction, CPU cpu) {
-        Function<CPU, Short> getR16 = INSTRUCTION_TO_GET_R16_SP_MAP.get(GBUtil.get2BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4)
-        ));
-
-        short r16 = getR16.apply(cpu);
+    public static void executeDEC_r16(int r16Operand, CPU cpu) {
+        short r16 = GBUtil.getR16SP(r16Operand, cpu);
         int result = GBUtil.zeroExtend(r16) - 1;
-
-        BiConsumer<Short, CPU> setR16 = INSTRUCTION_TO_SET_R16_SP_MAP.get(GBUtil.get2BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4)
-        ));
-        setR16.accept((short) result, cpu);
+        GBUtil.setR16SP(r16Operand, (short) result, cpu);
         cpu.getMemory().doMCycle();
     }
 
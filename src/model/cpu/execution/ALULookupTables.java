@@ -0,0 +1,74 @@
+package model.cpu.execution;
+
+import util.GBUtil;
+
+/**
+ * Precomputed results and flags for 8 bit addition, subtraction, and DAA.
+ * Each entry holds the result in the upper byte and register F in the lower byte.
+ * The tables (about 512 KB) are only built the first time this class is used.
+ */
+final class ALULookupTables {
+
+    // indexed by carry (1 bit), A (8 bits), operand (8 bits)
+    private static final char[] ADDITION_TABLE = buildALUTable(1);
+    private static final char[] SUBTRACTION_TABLE = buildALUTable(3);
+
+    // indexed by N, H, C (1 bit each), A (8 bits)
+    private static final char[] DAA_TABLE = buildDAATable();
+
+    private ALULookupTables() {
+    }
+
+    /**
+     * @return the result and flags of operand1 + operand2 + carry
+     */
+    static int getAddition(byte operand1, byte operand2, int carry) {
+        return ADDITION_TABLE[(carry << 16) | (GBUtil.zeroExtend(operand1) << 8) | GBUtil.zeroExtend(operand2)];
+    }
+
+    /**
+     * @return the result and flags of operand1 - operand2 - carry
+     */
+    static int getSubtraction(byte operand1, byte operand2, int carry) {
+        return SUBTRACTION_TABLE[(carry << 16) | (GBUtil.zeroExtend(operand1) << 8) | GBUtil.zeroExtend(operand2)];
+    }
+
+    /**
+     * @return the result and flags of DAA on register A with the given flags
+     */
+    static int getDAA(byte accumulatorValue, int subtractionFlag, int halfCarryFlag, int carryFlag) {
+        return DAA_TABLE[(subtractionFlag << 10) | (halfCarryFlag << 9) | (carryFlag << 8) |
+                GBUtil.zeroExtend(accumulatorValue)];
+    }
+
+    /**
+     * @param operation the ALU operation with carry, ADC (1) or SBC (3)
+     */
+    private static char[] buildALUTable(int operation) {
+        char[] table = new char[2 * 256 * 256];
+        for (int carry = 0; carry < 2; carry++) {
+            for (int a = 0; a < 256; a++) {
+                for (int b = 0; b < 256; b++) {
+                    int result = (operation == 1) ? a + b + carry : a - b - carry;
+                    byte flags = ALUExecution.computeALUFlags(operation, (byte) a, (byte) b, carry);
+                    table[(carry << 16) | (a << 8) | b] = (char) (((result & 0xFF) << 8) | GBUtil.zeroExtend(flags));
+                }
+            }
+        }
+        return table;
+    }
+
+    private static char[] buildDAATable() {
+        char[] table = new char[8 * 256];
+        for (int flags = 0; flags < 8; flags++) {
+            for (int a = 0; a < 256; a++) {
+                int subtractionFlag = (flags >> 2) & 1;
+                int halfCarryFlag = (flags >> 1) & 1;
+                int carryFlag = flags & 1;
+                table[(flags << 8) | a] = (char) BitOpExecution.computeDAA((byte) a, subtractionFlag,
+                        halfCarryFlag, carryFlag);
+            }
+        }
+        return table;
+    }
+}
@@ -1,23 +1,24 @@
 package model.cpu.execution;
 
 import model.cpu.CPU;
+import model.cpu.OpcodeInfo;
+import model.cpu.OpcodeTable;
 import util.GBUtil;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.function.BiConsumer;
-import java.util.function.BiFunction;
-import java.util.function.Consumer;
-import java.util.function.Function;
-
 /**
  * class containing methods that execute misc bit operations, including
  * bit shift, set, reset, test, nibble swap, DAA, and flag operations
  */
 public class BitOpExecution {
 
-    private static final List<BiFunction<Byte, CPU, Byte>> INSTRUCTION_TO_SHIFT_ROTATE_MAP = Arrays.asList(
-            (Byte b, CPU cpu) -> {
+    /**
+     * Executes the shift/rotate operation on b, updating flags.
+     * @param operation bits 5,4,3 of the instruction. In order: RLC, RRC, RL, RR, SLA, SRA, SWAP, SRL
+     * @return the result of the operation
+     */
+    private static byte shiftRotate(int operation, byte b, CPU cpu) {
+        return switch (operation) {
+            case 0 -> { // RLC
                 int bit7Value = GBUtil.getBit(b, 7);
                 int result = b << 1;
                 byte byteResult = (byte) result;
@@ -26,9 +27,9 @@ public class BitOpExecution {
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
                 cpu.setCarryFlag(bit7Value);
-                return byteResult;
-            },
-            (Byte b, CPU cpu) -> {
+                yield byteResult;
+            }
+            case 1 -> { // RRC
                 int bit0Value = GBUtil.getBit(b, 0);
                 int result = GBUtil.zeroExtend(b) >>> 1;
                 byte byteResult = (byte) result;
@@ -37,9 +38,9 @@ public class BitOpExecution {
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
                 cpu.setCarryFlag(bit0Value);
-                return byteResult;
-            },
-            (Byte b, CPU cpu) -> {
+                yield byteResult;
+            }
+            case 2 -> { // RL
                 int carryValue = cpu.getCarryFlag();
                 cpu.setCarryFlag(GBUtil.getBit(b, 7));
                 int result = b << 1;
@@ -48,9 +49,9 @@ public class BitOpExecution {
                 cpu.setZeroFlag((GBUtil.zeroExtend(byteResult) == 0) ? 1 : 0);
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
-                return byteResult;
-            },
-            (Byte b, CPU cpu) -> {
+                yield byteResult;
+            }
+            case 3 -> { // RR
                 int carryValue = cpu.getCarryFlag();
                 cpu.setCarryFlag(GBUtil.getBit(b, 0));
                 int result = GBUtil.zeroExtend(b) >>> 1;
@@ -59,27 +60,27 @@ public class BitOpExecution {
                 cpu.setZeroFlag((GBUtil.zeroExtend(byteResult) == 0) ? 1 : 0);
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
-                return byteResult;
-            },
-            (Byte b, CPU cpu) -> {
+                yield byteResult;
+            }
+            case 4 -> { // SLA
                 cpu.setCarryFlag(GBUtil.getBit(b, 7));
                 int result = b << 1;
                 byte byteResult = (byte) result;
                 cpu.setZeroFlag((GBUtil.zeroExtend(byteResult) == 0) ? 1 : 0);
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
-                return byteResult;
-            },
-            (Byte b, CPU cpu) -> {
+                yield byteResult;
+            }
+            case 5 -> { // SRA
                 cpu.setCarryFlag(GBUtil.getBit(b, 0));
                 int result = b >> 1;
                 byte byteResult = (byte) result;
                 cpu.setZeroFlag((GBUtil.zeroExtend(byteResult) == 0) ? 1 : 0);
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
-                return byteResult;
-            },
-            (Byte b, CPU cpu) -> {
+                yield byteResult;
+            }
+            case 6 -> { // SWAP
                 int lowerNibble = GBUtil.getNibble(true, b);
                 int upperNibble = GBUtil.getNibble(false, b);
                 int result = lowerNibble * 16  + upperNibble;
@@ -88,21 +89,27 @@ public class BitOpExecution {
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
                 cpu.setCarryFlag(0);
-                return byteResult;
-            },
-            (Byte b, CPU cpu) -> {
+                yield byteResult;
+            }
+            default -> { // SRL
                 cpu.setCarryFlag(GBUtil.getBit(b, 0));
                 int result = GBUtil.zeroExtend(b) >>> 1;
                 byte byteResult = (byte) result;
                 cpu.setZeroFlag((GBUtil.zeroExtend(byteResult) == 0) ? 1 : 0);
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
-                return byteResult;
+                yield byteResult;
             }
-    );
+        };
+    }
 
-    private static final List<Consumer<CPU>> INSTRUCTION_TO_ACCUMULATOR_FLAG_MAP = Arrays.asList(
-            (CPU cpu) -> {
+    /**
+     * Executes the accumulator/flag operation.
+     * @param operation bits 5,4,3 of the instruction. In order: RLCA, RRCA, RLA, RRA, DAA, CPL, SCF, CCF
+     */
+    private static void executeAccumulatorFlagOperation(int operation, CPU cpu) {
+        switch (operation) {
+            case 0 -> { // RLCA
                 byte accumulatorValue = cpu.getRa();
                 int bit7Value = GBUtil.getBit(accumulatorValue, 7);
                 int result = accumulatorValue << 1;
@@ -113,8 +120,8 @@ public class BitOpExecution {
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
                 cpu.setCarryFlag(bit7Value);
-            },
-            (CPU cpu) -> {
+            }
+            case 1 -> { // RRCA
                 byte accumulatorValue = cpu.getRa();
                 int bit0Value = GBUtil.getBit(accumulatorValue, 0);
                 int result = GBUtil.zeroExtend(accumulatorValue) >>> 1;
@@ -125,8 +132,8 @@ public class BitOpExecution {
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
                 cpu.setCarryFlag(bit0Value);
-            },
-            (CPU cpu) -> {
+            }
+            case 2 -> { // RLA
                 byte accumulatorValue = cpu.getRa();
                 int carryValue = cpu.getCarryFlag();
                 cpu.setCarryFlag(GBUtil.getBit(accumulatorValue, 7));
@@ -137,8 +144,8 @@ public class BitOpExecution {
                 cpu.setZeroFlag(0);
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
-            },
-            (CPU cpu) -> {
+            }
+            case 3 -> { // RRA
                 byte accumulatorValue = cpu.getRa();
                 int carryValue = cpu.getCarryFlag();
                 cpu.setCarryFlag(GBUtil.getBit(accumulatorValue, 0));
@@ -149,157 +156,149 @@ public class BitOpExecution {
                 cpu.setZeroFlag(0);
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
-            },
-            (CPU cpu) -> {
-                byte accumulatorValue = cpu.getRa();
-                int lowerNibble = GBUtil.getNibble(true, accumulatorValue);
-                int upperNibble = GBUtil.getNibble(false, accumulatorValue);
-                int newCarryValue = cpu.getCarryFlag(); // if not modified, keep as previous value
-                if (cpu.getSubtractionFlag() == 0) {
-                    if (cpu.getHalfCarryFlag() == 1 || lowerNibble > 9) {
-                        lowerNibble += 6;
-                    }
-                    if (cpu.getCarryFlag() == 1 || GBUtil.zeroExtend(accumulatorValue) > 0x99) {
-                        upperNibble += 6;
-                        newCarryValue = 1;
-                    }
-                } else {
-                    if (cpu.getHalfCarryFlag() == 1) {
-                        lowerNibble -= 6;
-                    }
-                    if (cpu.getCarryFlag() == 1) {
-                        upperNibble -= 6;
-                    }
-                }
-                cpu.setRa((byte) (upperNibble * 16 + lowerNibble));
-                cpu.setZeroFlag((GBUtil.zeroExtend(cpu.getRa()) == 0) ? 1 : 0);
-                cpu.setHalfCarryFlag(0);
-                cpu.setCarryFlag(newCarryValue);
-            },
-            (CPU cpu) -> {
+            }
+            case 4 -> { // DAA
+                int resultAndFlags = cpu.isALULookupTables() ?
+                        ALULookupTables.getDAA(cpu.getRa(), cpu.getSubtractionFlag(),
+                                cpu.getHalfCarryFlag(), cpu.getCarryFlag()) :
+                        computeDAA(cpu.getRa(), cpu.getSubtractionFlag(),
+                                cpu.getHalfCarryFlag(), cpu.getCarryFlag());
+                cpu.setRa((byte) (resultAndFlags >> 8));
+                cpu.setRf((byte) resultAndFlags);
+            }
+            case 5 -> { // CPL
                 cpu.setRa((byte) (~cpu.getRa()));
                 cpu.setSubtractionFlag(1);
                 cpu.setHalfCarryFlag(1);
-            },
-            (CPU cpu) -> {
+            }
+            case 6 -> { // SCF
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
                 cpu.setCarryFlag(1);
-            },
-            (CPU cpu) -> {
+            }
+            default -> { // CCF
                 cpu.setSubtractionFlag(0);
                 cpu.setHalfCarryFlag(0);
                 cpu.setCarryFlag((cpu.getCarryFlag() == 0) ? 1 : 0);
             }
-    );
+        }
+    }
 
     /**
-     * corresponds to the bit shift, bit rotate, and nibble swap instructions
+     * Computes the DAA instruction, which adjusts register A to be a BCD number after
+     * a BCD addition or subtraction.
+     * @param accumulatorValue the value of register A
+     * @return the new value of register A in the upper byte, and register F in the lower byte.
+     *         N is unchanged, H is reset.
      */
-    public static void executeSHIFT_ROTATE(byte instruction, CPU cpu) {
-        Function<CPU, Byte> getR8 = GBUtil.INSTRUCTION_TO_GET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 2),
-                GBUtil.getBit(instruction, 1),
-                GBUtil.getBit(instruction, 0)));
-        byte r8 = getR8.apply(cpu);
+    static int computeDAA(byte accumulatorValue, int subtractionFlag, int halfCarryFlag, int carryFlag) {
+        int lowerNibble = GBUtil.getNibble(true, accumulatorValue);
+        int upperNibble = GBUtil.getNibble(false, accumulatorValue);
+        int newCarryValue = carryFlag; // if not modified, keep as previous value
+        if (subtractionFlag == 0) {
+            if (halfCarryFlag == 1 || lowerNibble > 9) {
+                lowerNibble += 6;
+            }
+            if (carryFlag == 1 || GBUtil.zeroExtend(accumulatorValue) > 0x99) {
+                upperNibble += 6;
+                newCarryValue = 1;
+            }
+        } else {
+            if (halfCarryFlag == 1) {
+                lowerNibble -= 6;
+            }
+            if (carryFlag == 1) {
+                upperNibble -= 6;
+            }
+        }
+        byte result = (byte) (upperNibble * 16 + lowerNibble);
+        int zeroFlag = (GBUtil.zeroExtend(result) == 0) ? 1 : 0;
+        return (GBUtil.zeroExtend(result) << 8) | (zeroFlag << 7) | (subtractionFlag << 6) | (newCarryValue << 4);
+    }
+
+    // CB prefixed instruction -> handler, with the operation, bit position and r8 operand already decoded
+    private static final InstructionExecution[] CB_EXECUTION_TABLE = buildCBExecutionTable();
 
-        BiFunction<Byte, CPU, Byte> shiftRotateFunction = INSTRUCTION_TO_SHIFT_ROTATE_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4),
-                GBUtil.getBit(instruction, 3)));
-        byte result = shiftRotateFunction.apply(r8, cpu);
+    /**
+     * Builds the handler for every CB prefixed instruction, binding the operands decoded by OpcodeTable.
+     */
+    private static InstructionExecution[] buildCBExecutionTable() {
+        InstructionExecution[] table = new InstructionExecution[256];
+        for (int i = 0; i < table.length; i++) {
+            OpcodeInfo info = OpcodeTable.getCBOpcodeInfo((byte) i);
+            int operation = info.getOperation();
+            int bitPos = info.getBitPosition();
+            int r8 = info.getR8();
 
-        BiConsumer<Byte, CPU> setR8 = GBUtil.INSTRUCTION_TO_SET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 2),
-                GBUtil.getBit(instruction, 1),
-                GBUtil.getBit(instruction, 0)
-        ));
+            table[i] = switch (i >> 6) {
+                case 0 -> (b, cpu) -> executeSHIFT_ROTATE(operation, r8, cpu);
+                case 1 -> (b, cpu) -> executeBIT_bit_r8(bitPos, r8, cpu);
+                case 2 -> (b, cpu) -> executeRES_bit_r8(bitPos, r8, cpu);
+                default -> (b, cpu) -> executeSET_bit_r8(bitPos, r8, cpu);
+            };
+        }
+        return table;
+    }
 
-        setR8.accept(result, cpu);
+    /**
+     * Executes the instruction that follows a CB prefix.
+     */
+    public static void executeCBInstruction(byte instruction, CPU cpu) {
+        CB_EXECUTION_TABLE[GBUtil.zeroExtend(instruction)].execute(instruction, cpu);
     }
 
     /**
-     * corresponds to the instruction BIT bit, r8
+     * corresponds to the bit shift, bit rotate, and nibble swap instructions
+     * @param operation the shift/rotate operation, bits 5,4,3 of the instruction
+     * @param r8 the register operand, bits 2,1,0 of the instruction
      */
-    public static void executeBIT_bit_r8(byte instruction, CPU cpu) {
-        Function<CPU, Byte> getR8 = GBUtil.INSTRUCTION_TO_GET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 2),
-                GBUtil.getBit(instruction, 1),
-                GBUtil.getBit(instruction, 0)));
-        byte r8 = getR8.apply(cpu);
+    public static void executeSHIFT_ROTATE(int operation, int r8, CPU cpu) {
+        byte value = GBUtil.getR8(r8, cpu);
+        byte result = shiftRotate(operation, value, cpu);
+        GBUtil.setR8(r8, result, cpu);
+    }
 
-        int bitPos = GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4),
-                GBUtil.getBit(instruction, 3));
+    /**
+     * corresponds to the instruction BIT bit, r8
+     * @param bitPos the bit to test, bits 5,4,3 of the instruction
+     * @param r8 the register operand, bits 2,1,0 of the instruction
+     */
+    public static void executeBIT_bit_r8(int bitPos, int r8, CPU cpu) {
+        byte value = GBUtil.getR8(r8, cpu);
 
-        cpu.setZeroFlag((GBUtil.getBit(r8, bitPos) == 0) ? 1 : 0);
+        cpu.setZeroFlag((GBUtil.getBit(value, bitPos) == 0) ? 1 : 0);
         cpu.setSubtractionFlag(0);
         cpu.setHalfCarryFlag(1);
     }
 
     /**
      * corresponds to the instruction RES bit, r8
+     * @param bitPos the bit to reset, bits 5,4,3 of the instruction
+     * @param r8 the register operand, bits 2,1,0 of the instruction
      */
-    public static void executeRES_bit_r8(byte instruction, CPU cpu) {
-        Function<CPU, Byte> getR8 = GBUtil.INSTRUCTION_TO_GET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 2),
-                GBUtil.getBit(instruction, 1),
-                GBUtil.getBit(instruction, 0)));
-        byte r8 = getR8.apply(cpu);
-
-        int bitPos = GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4),
-                GBUtil.getBit(instruction, 3));
-
-        byte result = GBUtil.modifyBit(r8, bitPos, 0);
-
-        BiConsumer<Byte, CPU> setR8 = GBUtil.INSTRUCTION_TO_SET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 2),
-                GBUtil.getBit(instruction, 1),
-                GBUtil.getBit(instruction, 0)
-        ));
-
-        setR8.accept( result, cpu);
+    public static void executeRES_bit_r8(int bitPos, int r8, CPU cpu) {
+        byte value = GBUtil.getR8(r8, cpu);
+        byte result = GBUtil.modifyBit(value, bitPos, 0);
+        GBUtil.setR8(r8, result, cpu);
     }
 
     /**
      * corresponds to the instruction SET bit, r8
+     * @param bitPos the bit to set, bits 5,4,3 of the instruction
+     * @param r8 the register operand, bits 2,1,0 of the instruction
      */
-    public static void executeSET_bit_r8(byte instruction, CPU cpu) {
-        Function<CPU, Byte> getR8 = GBUtil.INSTRUCTION_TO_GET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 2),
-                GBUtil.getBit(instruction, 1),
-                GBUtil.getBit(instruction, 0)));
-        byte r8 = getR8.apply(cpu);
-
-        int bitPos = GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4),
-                GBUtil.getBit(instruction, 3));
-
-        byte result = GBUtil.modifyBit(r8, bitPos, 1);
-
-        BiConsumer<Byte, CPU> setR8 = GBUtil.INSTRUCTION_TO_SET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 2),
-                GBUtil.getBit(instruction, 1),
-                GBUtil.getBit(instruction, 0)
-        ));
-
-        setR8.accept(result, cpu);
+    public static void executeSET_bit_r8(int bitPos, int r8, CPU cpu) {
+        byte value = GBUtil.getR8(r8, cpu);
+        byte result = GBUtil.modifyBit(value, bitPos, 1);
+        GBUtil.setR8(r8, result, cpu);
     }
 
     /**
      * corresponds to instructions related to accumulators and flags:
      * RLCA, RRCA, RLA, RRA, DAA, CPL, SCF, CCF
      */
-    public static void executeACCUMULATOR_FLAG_OPS(byte instruction, CPU cpu) {
-        Consumer<CPU> accumulatorFlagFunction = INSTRUCTION_TO_ACCUMULATOR_FLAG_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4),
-                GBUtil.getBit(instruction, 3)));
-        accumulatorFlagFunction.accept(cpu);
+    public static void executeACCUMULATOR_FLAG_OPS(int operation, CPU cpu) {
+        executeAccumulatorFlagOperation(operation, cpu);
     }
 
     /**
@@ -312,6 +311,6 @@ public class BitOpExecution {
         pc = (short) (pc + 1);
         byte nextInstruction = cpu.getMemory().getByte(pc);
         cpu.setProgramCounter(pc);
-        cpu.decodeExecuteCBInstruction(nextInstruction);
+        executeCBInstruction(nextInstruction, cpu);
     }
 }
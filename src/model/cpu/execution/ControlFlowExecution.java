@@ -3,58 +3,36 @@ package model.cpu.execution;
 import model.cpu.CPU;
 import util.GBUtil;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.function.Consumer;
-import java.util.function.Function;
-
 public class ControlFlowExecution {
 
-    private static final List<Function<CPU, Integer>> INSTRUCTION_TO_CONDITION_MAP = Arrays.asList(
-            (CPU cpu) -> (cpu.getZeroFlag() == 1) ? 0 : 1,
-            (CPU cpu) -> cpu.getZeroFlag(),
-            (CPU cpu) -> (cpu.getCarryFlag() == 1) ? 0 : 1,
-            (CPU cpu) -> cpu.getCarryFlag()
-    );
-
-    private static final List<Consumer<CPU>> INSTRUCTION_TO_RET_HL_MAP = Arrays.asList(
-            (CPU cpu) -> {
-                short sp = cpu.getStackPointer();
-                byte pc_lsb = cpu.getMemory().getByte(sp);
-                sp = (short) (sp + 1);
-                byte pc_msb = cpu.getMemory().getByte(sp);
-                sp = (short) (sp + 1);
-                cpu.setStackPointer(sp);
-                short pc = GBUtil.getShortFromBytes(pc_lsb, pc_msb);
-                cpu.getMemory().doMCycle(); // this instruction takes an extra M-cycle
-                cpu.setProgramCounter((short) (pc - 1)); // account for pc++ at end of cycle
-            },
-            (CPU cpu) -> {
-                // RETI instruction. Sets IME to 1 without having to wait another instruction.
-
-                short sp = cpu.getStackPointer();
-                byte pc_lsb = cpu.getMemory().getByte(sp);
-                sp = (short) (sp + 1);
-                byte pc_msb = cpu.getMemory().getByte(sp);
-                sp = (short) (sp + 1);
-                cpu.setStackPointer(sp);
-                short pc = GBUtil.getShortFromBytes(pc_lsb, pc_msb);
-                cpu.getMemory().doMCycle(); // this instruction takes an extra M-cycle
-                cpu.setProgramCounter((short) (pc - 1)); // account for pc++ at end of cycle
+    /**
+     * @param condition bits 4,3 of the instruction. In order: NZ, Z, NC, C
+     * @return true if the condition is met
+     */
+    private static boolean isConditionMet(int condition, CPU cpu) {
+        return switch (condition) {
+            case 0 -> cpu.getZeroFlag() == 0;
+            case 1 -> cpu.getZeroFlag() == 1;
+            case 2 -> cpu.getCarryFlag() == 0;
+            default -> cpu.getCarryFlag() == 1;
+        };
+    }
 
-                cpu.setIMEImmediately();
-            },
-            (CPU cpu) -> {
-                short hl = cpu.getRegisterHL();
-                cpu.setProgramCounter((short) (hl-1)); // account for pc++ at end of cycle
-            },
-            (CPU cpu) -> {
-                short hl = cpu.getRegisterHL();
-                cpu.setStackPointer(hl);
-                // this takes an extra M-cycle
-                cpu.getMemory().doMCycle();
-            }
-    );
+    /**
+     * Pops the return address off the stack into PC.
+     * This takes 4 M-cycles, so add an extra M-cycle call.
+     */
+    private static void executeRET(CPU cpu) {
+        short sp = cpu.getStackPointer();
+        byte pc_lsb = cpu.getMemory().getByte(sp);
+        sp = (short) (sp + 1);
+        byte pc_msb = cpu.getMemory().getByte(sp);
+        sp = (short) (sp + 1);
+        cpu.setStackPointer(sp);
+        short pc = GBUtil.getShortFromBytes(pc_lsb, pc_msb);
+        cpu.getMemory().doMCycle(); // this instruction takes an extra M-cycle
+        cpu.setProgramCounter((short) (pc - 1)); // account for pc++ at end of cycle
+    }
 
     /**
      * corresponds to unconditional relative jump instruction.
@@ -83,14 +61,9 @@ public class ControlFlowExecution {
      * Conditions are based on the C and Z flags.
      * The 8 bit immediate is still read no matter what.
      */
-    public static void executeJR_CONDITIONAL(byte instruction, CPU cpu) {
-        Function<CPU, Integer> conditionFunction = INSTRUCTION_TO_CONDITION_MAP.get(
-                GBUtil.get2BitValue(
-                        GBUtil.getBit(instruction, 4),
-                        GBUtil.getBit(instruction, 3)));
-
-        if (conditionFunction.apply(cpu) == 1) {
-            executeJR_UNCONDITIONAL(instruction, cpu);
+    public static void executeJR_CONDITIONAL(int condition, CPU cpu) {
+        if (isConditionMet(condition, cpu)) {
+            executeJR_UNCONDITIONAL((byte) 0b00011000, cpu);
         } else {
             short pc = cpu.getProgramCounter();
             pc = (short) (pc + 1);
@@ -121,14 +94,9 @@ public class ControlFlowExecution {
      * Conditions are based on the C and Z flags.
      * The 16 bit immediate is read no matter what.
      */
-    public static void executeJP_CONDITIONAL(byte instruction, CPU cpu) {
-        Function<CPU, Integer> conditionFunction = INSTRUCTION_TO_CONDITION_MAP.get(
-                GBUtil.get2BitValue(
-                        GBUtil.getBit(instruction, 4),
-                        GBUtil.getBit(instruction, 3)));
-
-        if (conditionFunction.apply(cpu) == 1) {
-            executeJP_UNCONDITIONAL(instruction, cpu);
+    public static void executeJP_CONDITIONAL(int condition, CPU cpu) {
+        if (isConditionMet(condition, cpu)) {
+            executeJP_UNCONDITIONAL((byte) 0b11000011, cpu);
         } else {
             short pc = cpu.getProgramCounter();
             pc = (short) (pc + 1);
@@ -174,14 +142,9 @@ public class ControlFlowExecution {
      * Jumps to the 16 bit immediate and pushes the address of the instruction after the
      * CALL on the stack, if condition is met. Either way, the 16 bit immediate is read.
      */
-    public static void executeCALL_CONDITIONAL(byte instruction, CPU cpu) {
-        Function<CPU, Integer> conditionFunction = INSTRUCTION_TO_CONDITION_MAP.get(
-                GBUtil.get2BitValue(
-                        GBUtil.getBit(instruction, 4),
-                        GBUtil.getBit(instruction, 3)));
-
-        if (conditionFunction.apply(cpu) == 1) {
-            executeCALL_UNCONDITIONAL(instruction, cpu);
+    public static void executeCALL_CONDITIONAL(int condition, CPU cpu) {
+        if (isConditionMet(condition, cpu)) {
+            executeCALL_UNCONDITIONAL((byte) 0b11001101, cpu);
         } else {
             short pc = cpu.getProgramCounter();
             pc = (short) (pc + 1);
@@ -197,16 +160,10 @@ public class ControlFlowExecution {
      * Equivalent to CALL 00EXP000, where EXP is represented by
      * bits 5,4,3 in the instruction.
      * This takes 4 M-cycles, so add an extra M-cycle call.
+     * @param vector EXP, bits 5,4,3 of the instruction
      */
-    public static void executeRST(byte instruction, CPU cpu) {
-        int bit5 = GBUtil.getBit(instruction, 5);
-        int bit4 = GBUtil.getBit(instruction, 4);
-        int bit3 = GBUtil.getBit(instruction, 3);
-
-        byte exp = (byte) 0b00000000;
-        exp = GBUtil.modifyBit(exp, 5, bit5);
-        exp = GBUtil.modifyBit(exp, 4, bit4);
-        exp = GBUtil.modifyBit(exp, 3, bit3);
+    public static void executeRST(int vector, CPU cpu) {
+        byte exp = (byte) (vector << 3);
 
         short pc = cpu.getProgramCounter();
         pc = (short) (pc + 1);
@@ -230,12 +187,25 @@ public class ControlFlowExecution {
     /**
      * Executes the instructions RET, RETI, JP HL, and LD SP, HL
      */
-    public static void executeRET_HL_OPS(byte instruction, CPU cpu) {
-        Consumer<CPU> ret_hl_op = INSTRUCTION_TO_RET_HL_MAP.get(
-                GBUtil.get2BitValue(
-                        GBUtil.getBit(instruction, 5),
-                        GBUtil.getBit(instruction, 4)));
-        ret_hl_op.accept(cpu);
+    public static void executeRET_HL_OPS(int operation, CPU cpu) {
+        switch (operation) {
+            case 0 -> executeRET(cpu);
+            case 1 -> {
+                // RETI instruction. Sets IME to 1 without having to wait another instruction.
+                executeRET(cpu);
+                cpu.setIMEImmediately();
+            }
+            case 2 -> {
+                short hl = cpu.getRegisterHL();
+                cpu.setProgramCounter((short) (hl-1)); // account for pc++ at end of cycle
+            }
+            default -> {
+                short hl = cpu.getRegisterHL();
+                cpu.setStackPointer(hl);
+                // this takes an extra M-cycle
+                cpu.getMemory().doMCycle();
+            }
+        }
     }
 
     /**
@@ -244,15 +214,10 @@ public class ControlFlowExecution {
      * and 2 M-cycles in false case, so add an extra
      * M-cycle call.
      */
-    public static void executeRET_CONDITIONAL(byte instruction, CPU cpu) {
-        Function<CPU, Integer> conditionFunction = INSTRUCTION_TO_CONDITION_MAP.get(
-                GBUtil.get2BitValue(
-                        GBUtil.getBit(instruction, 4),
-                        GBUtil.getBit(instruction, 3)));
-
+    public static void executeRET_CONDITIONAL(int condition, CPU cpu) {
         cpu.getMemory().doMCycle();
-        if (conditionFunction.apply(cpu) == 1) {
-            INSTRUCTION_TO_RET_HL_MAP.get(0).accept(cpu);
+        if (isConditionMet(condition, cpu)) {
+            executeRET(cpu);
         }
     }
 }
@@ -0,0 +1,12 @@
+package model.cpu.execution;
+
+import model.cpu.CPU;
+
+/**
+ * A method in one of the execution classes that executes a decoded instruction.
+ * Takes the instruction byte that was fetched, and the CPU to execute it on.
+ */
+@FunctionalInterface
+public interface InstructionExecution {
+    void execute(byte instruction, CPU cpu);
+}
@@ -3,43 +3,52 @@ package model.cpu.execution;
 import model.cpu.CPU;
 import util.GBUtil;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.function.BiConsumer;
-import java.util.function.Function;
-
-import static util.GBUtil.INSTRUCTION_TO_SET_R16_SP_MAP;
-
 public class LoadExecution {
 
-    private static final List<Function<CPU, Short>> INSTRUCTION_TO_GET_R16_INC_DEC_MAP = Arrays.asList(
-            CPU::getRegisterBC,
-            CPU::getRegisterDE,
-            (CPU cpu) -> {
+    /**
+     * @param r16 bits 5,4 of the instruction. In order: BC, DE, HL+, HL-
+     * @return the address in the register. HL+ and HL- increment/decrement HL afterwards.
+     */
+    private static short getR16IncDec(int r16, CPU cpu) {
+        return switch (r16) {
+            case 0 -> cpu.getRegisterBC();
+            case 1 -> cpu.getRegisterDE();
+            case 2 -> {
                 short hl = cpu.getRegisterHL();
                 cpu.setRegisterHL((short) (hl + 1)); // I think technically you need to do this after the memory read
-                return hl;
-            },
-            (CPU cpu) -> {
+                yield hl;
+            }
+            default -> {
                 short hl = cpu.getRegisterHL();
                 cpu.setRegisterHL((short) (hl - 1));
-                return hl;
+                yield hl;
             }
-    );
+        };
+    }
 
-    private static final List<Function<CPU, Short>> INSTRUCTION_TO_GET_R16_AF_MAP = Arrays.asList(
-            CPU::getRegisterBC,
-            CPU::getRegisterDE,
-            CPU::getRegisterHL,
-            CPU::getRegisterAF
-    );
+    /**
+     * @param r16 bits 5,4 of the instruction. In order: BC, DE, HL, AF
+     */
+    private static short getR16AF(int r16, CPU cpu) {
+        return switch (r16) {
+            case 0 -> cpu.getRegisterBC();
+            case 1 -> cpu.getRegisterDE();
+            case 2 -> cpu.getRegisterHL();
+            default -> cpu.getRegisterAF();
+        };
+    }
 
-    private static final List<BiConsumer<Short, CPU>> INSTRUCTION_TO_SET_R16_AF_MAP = Arrays.asList(
-            (Short s, CPU cpu) -> cpu.setRegisterBC(s),
-            (Short s, CPU cpu) -> cpu.setRegisterDE(s),
-            (Short s, CPU cpu) -> cpu.setRegisterHL(s),
-            (Short s, CPU cpu) -> cpu.setRegisterAF(s)
-    );
+    /**
+     * @param r16 bits 5,4 of the instruction. In order: BC, DE, HL, AF
+     */
+    private static void setR16AF(int r16, short value, CPU cpu) {
+        switch (r16) {
+            case 0 -> cpu.setRegisterBC(value);
+            case 1 -> cpu.setRegisterDE(value);
+            case 2 -> cpu.setRegisterHL(value);
+            default -> cpu.setRegisterAF(value);
+        }
+    }
 
     /**
      * executes the instruction LD (u16), SP.
@@ -67,7 +76,7 @@ public class LoadExecution {
      * executes the instruction LD r16, u16.
      * loads the immediate value u16 into the register r16
      */
-    public static void executeLD_r16_u16(byte instruction, CPU cpu) {
+    public static void executeLD_r16_u16(int r16, CPU cpu) {
         short pc = cpu.getProgramCounter();
         pc = (short) (pc + 1);
         byte u16_lsb = cpu.getMemory().getByte(pc);
@@ -76,23 +85,15 @@ public class LoadExecution {
         short u16 = GBUtil.getShortFromBytes(u16_lsb, u16_msb);
         cpu.setProgramCounter(pc);
 
-        BiConsumer<Short, CPU> setR16 = INSTRUCTION_TO_SET_R16_SP_MAP.get(GBUtil.get2BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4)
-        ));
-        setR16.accept(u16, cpu);
+        GBUtil.setR16SP(r16, u16, cpu);
     }
 
     /**
      * Executes the instruction LD (r16), A.
      * Writes the value in register A to the memory address specified by register r16
      */
-    public static void executeLD_Memory_r16_A(byte instruction, CPU cpu) {
-        Function<CPU, Short> getR16 = INSTRUCTION_TO_GET_R16_INC_DEC_MAP.get(GBUtil.get2BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4)
-        ));
-        short address = getR16.apply(cpu);
+    public static void executeLD_Memory_r16_A(int r16, CPU cpu) {
+        short address = getR16IncDec(r16, cpu);
 
         cpu.getMemory().setByte(cpu.getRa(), address);
     }
@@ -101,12 +102,8 @@ public class LoadExecution {
      * Executes the instruction LD A, (r16).
      * Reads the byte from the memory address specified by register r16 into register A.
      */
-    public static void executeLD_A_Memory_r16(byte instruction, CPU cpu) {
-        Function<CPU, Short> getR16 = INSTRUCTION_TO_GET_R16_INC_DEC_MAP.get(GBUtil.get2BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4)
-        ));
-        short address = getR16.apply(cpu);
+    public static void executeLD_A_Memory_r16(int r16, CPU cpu) {
+        short address = getR16IncDec(r16, cpu);
         byte value = cpu.getMemory().getByte(address);
         cpu.setRa(value);
     }
@@ -115,45 +112,23 @@ public class LoadExecution {
      * Executes the instruction LD r8, u8.
      * Loads the immediate 8 bit value u8 into the register r8
      */
-    public static void executeLD_r8_u8(byte instruction, CPU cpu) {
+    public static void executeLD_r8_u8(int r8, CPU cpu) {
         short pc = cpu.getProgramCounter();
         pc = (short) (pc + 1);
         byte u8 = cpu.getMemory().getByte(pc);
         cpu.setProgramCounter(pc);
 
-        BiConsumer<Byte, CPU> setR8 = GBUtil.INSTRUCTION_TO_SET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4),
-                GBUtil.getBit(instruction, 3)
-        ));
-
-        setR8.accept(u8, cpu);
+        GBUtil.setR8(r8, u8, cpu);
     }
 
     /**
      * Executes the instruction LD r8, r8
-     * LD (HL), (HL) is not valid because its encoding overlaps with HALT
+     * LD (HL), (HL) is not valid because its encoding overlaps with HALT,
+     * so the dispatcher never calls this with both operands (HL).
      */
-    public static void executeLD_r8_r8(byte instruction, CPU cpu) {
-        if (instruction == (byte) 0b01110110) {
-            MiscExecution.executeHALT(instruction, cpu);
-            return;
-        }
-        Function<CPU, Byte> getR8 = GBUtil.INSTRUCTION_TO_GET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 2),
-                GBUtil.getBit(instruction, 1),
-                GBUtil.getBit(instruction, 0)
-        ));
-
-        byte r8 = getR8.apply(cpu);
-
-        BiConsumer<Byte, CPU> setR8 = GBUtil.INSTRUCTION_TO_SET_R8_MAP.get(GBUtil.get3BitValue(
-                GBUtil.getBit(instruction, 5),
-                GBUtil.getBit(instruction, 4),
-                GBUtil.getBit(instruction, 3)
-        ));
-
-        setR8.accept(r8, cpu);
+    public static void executeLD_r8_r8(int r8Destination, int r8Source, CPU cpu) {
+        byte r8 = GBUtil.getR8(r8Source, cpu);
+        GBUtil.setR8(r8Destination, r8, cpu);
     }
 
     /**
@@ -249,13 +224,8 @@ public class LoadExecution {
      * (NOT the first "empty" byte above the stack)
      * This takes 4 M-cycles, so add an extra M-cycle.
      */
-    public static void executePUSH_r16(byte instruction, CPU cpu) {
-        Function<CPU, Short> getR16 = INSTRUCTION_TO_GET_R16_AF_MAP.get(
-                GBUtil.get2BitValue(
-                        GBUtil.getBit(instruction, 5),
-                        GBUtil.getBit(instruction, 4)));
-
-        short r16 = getR16.apply(cpu);
+    public static void executePUSH_r16(int r16Operand, CPU cpu) {
+        short r16 = getR16AF(r16Operand, cpu);
         byte r16_lsb = GBUtil.getByteFromShort(true, r16);
         byte r16_msb = GBUtil.getByteFromShort(false, r16);
 
@@ -273,7 +243,7 @@ public class LoadExecution {
      * The stack pointer should point to the byte at the top of the stack.
      * (NOT the first "empty" byte above the stack)
      */
-    public static void executePOP_r16(byte instruction, CPU cpu) {
+    public static void executePOP_r16(int r16Operand, CPU cpu) {
         short sp = cpu.getStackPointer();
         byte r16_lsb = cpu.getMemory().getByte(sp);
         sp = (short) (sp + 1);
@@ -282,10 +252,6 @@ public class LoadExecution {
         cpu.setStackPointer(sp);
         short r16 = GBUtil.getShortFromBytes(r16_lsb, r16_msb);
 
-        BiConsumer<Short, CPU> setR16 = INSTRUCTION_TO_SET_R16_AF_MAP.get(
-                GBUtil.get2BitValue(
-                        GBUtil.getBit(instruction, 5),
-                        GBUtil.getBit(instruction, 4)));
-        setR16.accept(r16, cpu);
+        setR16AF(r16Operand, r16, cpu);
     }
 }
@@ -0,0 +1,28 @@
+package model.memory;
+
+/**
+ * Who is accessing memory, which decides whether the access takes time and has side effects.
+ */
+public enum AccessKind {
+    /**
+     * The CPU: takes one M-cycle, writes to IO and MBC registers have their usual effects.
+     */
+    CPU(true, true),
+    /**
+     * A DMA transfer: has the CPU's side effects, but the transfer keeps its own time.
+     */
+    DMA(false, true),
+    /**
+     * A debugger or test looking at or changing memory: takes no time and has no side effects.
+     * IO registers are written as they are, and writes to ROM are ignored instead of switching banks.
+     */
+    PEEK(false, false);
+
+    final boolean ticks; // true = the access takes one M-cycle
+    final boolean sideEffects; // true = IO and MBC registers react to writes
+
+    AccessKind(boolean ticks, boolean sideEffects) {
+        this.ticks = ticks;
+        this.sideEffects = sideEffects;
+    }
+}
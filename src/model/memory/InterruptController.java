@@ -0,0 +1,65 @@
+package model.memory;
+
+/**
+ * Holds the IE and IF registers, and keeps IE & IF as one cached mask that is updated on every write,
+ * so checking for pending interrupts after each instruction is a single comparison and doesn't allocate.
+ * Bit n of the mask is interrupt n, where the lowest bit has the highest priority.
+ */
+public class InterruptController {
+    private static final int INTERRUPT_BITS = 0b00011111; // VBLANK to JOYPAD
+
+    private byte ieRegister; // interrupt enable register
+    private byte ifRegister; // interrupt flag register
+    private int pending; // ieRegister & ifRegister, only the bits of actual interrupts
+
+    public byte getIE() {
+        return ieRegister;
+    }
+
+    public void setIE(byte ieRegister) {
+        this.ieRegister = ieRegister;
+        updatePending();
+    }
+
+    public byte getIF() {
+        return ifRegister;
+    }
+
+    public void setIF(byte ifRegister) {
+        this.ifRegister = ifRegister;
+        updatePending();
+    }
+
+    /**
+     * Sets the IF bit of interrupt.
+     * @param interrupt the interrupt's bit position, e.g. Constants.TIMER
+     */
+    public void request(int interrupt) {
+        setIF((byte) (ifRegister | (1 << interrupt)));
+    }
+
+    /**
+     * @return true if any interrupt is both requested in IF and enabled in IE
+     */
+    public boolean hasPending() {
+        return pending != 0;
+    }
+
+    /**
+     * @return the mask of interrupts both requested in IF and enabled in IE
+     */
+    public int getPendingMask() {
+        return pending;
+    }
+
+    /**
+     * @return the bit position of the pending interrupt with the highest priority, or -1 if none are pending
+     */
+    public int getHighestPriorityPending() {
+        return (pending == 0) ? -1 : Integer.numberOfTrailingZeros(pending);
+    }
+
+    private void updatePending() {
+        pending = ieRegister & ifRegister & INTERRUPT_BITS;
+    }
+}
@@ -1,9 +1,16 @@
 package model.memory;
 
 import exception.MemoryException;
+import model.Clock;
+import model.Scheduler;
+import model.memory.mapper.Mapper;
+import model.memory.mapper.NoMapper;
 import util.Constants;
 import util.GBUtil;
 
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 /**
@@ -11,155 +18,177 @@ import java.util.*;
  */
 public class Memory {
 
-    enum MBC {
-        NO_MBC,
-        MBC_1
-    }
-    private MBC mbc; // the type of mapper used on the cartridge
-    private int romBanks; // the amount of ROM banks on the cartridge
-    private int ramBanks; // the amount of RAM banks on the cartridge
-    private byte[] fixedRom; // fixed ROM bank 0 from the cartridge (I think technically you can switch, but just ignore)
-    private byte[] switchableRom; // potentially switchable ROM banks 1-N from cartridge
+    private Mapper mapper; // the cartridge's memory bank controller, holds its ROM and RAM
     private byte[] vram; // VRAM from the console
-    private byte[] cartridgeRam; // potentially switchable RAM banks 0-N from cartridge
     private byte[] consoleRam; // RAM from the console (will have to split this into 2 potentially for GBC)
     private byte[] oam; // todo once you work on ppu
     private byte[] ioRegisters; // data for IO registers
     private byte[] hram; // data for high ram
-    private byte ieRegister; // interrupt enable register
-
-    // todo the 4 Cartridge registers below are probably specific to MBC1
-    private boolean ramEnabled; // determines whether cartridge RAM is enabled
-    private int currRomBank; // current ROM bank number in use for switchableRom section, represents either the 5, or 5 and 2 bit registers together
-    private int currRamBank; // current RAM bank number for use in cartridgeRam section, represents the 2 bit register
-    private boolean isRamMode; // true = RAM mode, false = ROM mode
+    private InterruptController interruptController; // holds the IE and IF registers
 
-    // todo end MBC1 specific =================
+    // page tables, one entry per 256 byte page. A mapped page is accessed at pages[page][pageOffsets[page] + address].
+    // null = no backing array (MBC registers, cartridge RAM the mapper handles itself, OAM and the unusable area, IO, HRAM, IE),
+    // so the access goes through getByteUnmapped or setByteUnmapped
+    private static final int PAGE_SHIFT = 8;
+    private static final short SC_ADDRESS = (short) 0xFF02; // serial control, a write of 0x81 starts a transfer
+    private final byte[][] readPages = new byte[0x100][];
+    private final byte[][] writePages = new byte[0x100][];
+    private final int[] pageOffsets = new int[0x100];
 
     // todo the timing related stuff probably belongs in CPU
-    private short sysClock; // upper 8 bits are mapped to DIV register
+    private final Clock clock = new Clock();
+    private final Scheduler scheduler = new Scheduler();
+    private long divResetMCycle; // the M-cycle DIV was last reset at. The system clock counts T-cycles since then.
     private int oldEnabled; // enable bit value at previous tick
     private boolean requestTimerInterrupt; // request timer interrupt due to TIMA overflow on next m-cycle
+    private byte tima; // TIMA at M-cycle timaMCycle, later values are derived from the clock
+    private long timaMCycle;
+    private boolean deferredSync; // true = doMCycle only counts, peripherals catch up in synchronize
+    private long pendingMCycles; // M-cycles counted by doMCycle that haven't passed on the clock yet
+
+    private MemoryWriteListener codeWriteListener; // null = nobody is caching code
 
+    // written cartridge RAM is flushed to the save file this long after the first write since the last flush,
+    // and when the game disables RAM, which games do once they are done saving
+    private static final long SAVE_FLUSH_MCYCLES = 60 * 17556; // 60 frames, about a second
+    private SaveFile saveFile; // null = cartridge RAM isn't saved
+
+    /**
+     * Memory with an empty 32 KB cartridge (no MBC, no cartridge RAM).
+     */
     public Memory() {
-        byte[] cartridge = new byte[0x8000];
-        getMemoryBankInfo(cartridge);
-        memorySetup(cartridge);
+        mapper = new NoMapper(new byte[2 * Constants.kb16], new byte[0]);
+        memorySetup();
     }
 
     public Memory(byte[] cartridge) {
-        getMemoryBankInfo(cartridge);
-        memorySetup(cartridge);
+        mapper = Mapper.create(cartridge, clock);
+        memorySetup();
     }
 
     /**
-     * gets MBC type, and number of ram and ram banks on cartridge
+     * allocates the console's memory regions, and maps them and the cartridge's banks into the page tables.
      */
-    private void getMemoryBankInfo(byte[] cartridge) {
-        final short MBC_ADDRESS = (short) 0x147;
-        final short ROM_BANKS_ADDRESS = (short) 0x148;
-        final short RAM_BANKS_ADDRESS = (short) 0x149;
-
-        mbc = switch(cartridge[MBC_ADDRESS]) {
-            case (byte) 0x1, (byte) 0x2, (byte) 0x3 ->  MBC.MBC_1;
-            default -> MBC.NO_MBC; // 0x0 case
-        };
-
-        romBanks = switch(cartridge[ROM_BANKS_ADDRESS]) {
-            case (byte) 0x1 -> 4;
-            case (byte) 0x2 -> 8;
-            case (byte) 0x3 -> 16;
-            case (byte) 0x4 -> 32;
-            case (byte) 0x5 -> 64;
-            case (byte) 0x6 -> 128;
-            case (byte) 0x7 -> 256;
-            case (byte) 0x8 -> 512;
-            default -> 2; // 0x0 case, no banking beyond the 2 already present in cartridge
-        };
-
-        ramBanks = switch(cartridge[RAM_BANKS_ADDRESS]) {
-            case (byte) 0x2 -> 1;
-            case (byte) 0x3 -> 4;
-            case (byte) 0x4 -> 16;
-            case (byte) 0x5 -> 8;
-            default -> 0; // 0x0 case, no RAM present in cartridge
-        };
-    }
-
-    private void memorySetup(byte[] cartridge) {
-        sysClock = 0;
+    private void memorySetup() {
+        divResetMCycle = clock.getMCycles();
         oldEnabled = 0; // todo idk if this is right
         requestTimerInterrupt = false;
-
-        ramEnabled = false;
-        currRomBank = 1; // todo?
-        currRamBank = 0; // todo?
-        isRamMode = false;
-
-        fixedRom = new byte[Constants.kb16];
-        System.arraycopy(cartridge, 0, fixedRom, 0, Constants.kb16);
-
-        switchableRom = new byte[Constants.kb16 * (romBanks - 1)];
-        System.arraycopy(cartridge, Constants.kb16, switchableRom, 0, Constants.kb16 * (romBanks - 1));
+        tima = 0;
+        timaMCycle = clock.getMCycles();
+        scheduler.cancel(Scheduler.Event.TIMER);
 
         vram = new byte[Constants.kb8];
-        cartridgeRam = new byte[Constants.kb8 * (ramBanks)];
         consoleRam = new byte[Constants.kb8];
         oam = new byte[0xA0];
         ioRegisters = new byte[0x80];
         hram = new byte[0x7F];
-        ieRegister = (byte) 0;
-    }
+        interruptController = new InterruptController();
 
-    public byte getByte(short address) {
-        byte retVal;
-        // todo zero extend short is needed, otherwise could interpret as negative!
-        if (GBUtil.zeroExtend(Constants.FIXED_ROM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.FIXED_ROM_END)) {
+        mapPages(Constants.VRAM_START, Constants.VRAM_END, vram, 0, true);
+        mapPages(Constants.CONSOLE_RAM_START, Constants.CONSOLE_RAM_END, consoleRam, 0, true);
+        mapPages(Constants.ECHO_RAM_START, Constants.ECHO_RAM_END, consoleRam, 0, true);
+        mapBankedPages();
+    }
 
-            retVal = fixedRom[GBUtil.zeroExtend(address)];
+    /**
+     * Maps the pages from start to end to memory, starting at offset in it.
+     * @param writable false if writes go through setByteUnmapped, e.g. ROM where writes go to MBC registers
+     */
+    private void mapPages(short start, short end, byte[] memory, int offset, boolean writable) {
+        for (int page = GBUtil.zeroExtend(start) >>> PAGE_SHIFT; page <= GBUtil.zeroExtend(end) >>> PAGE_SHIFT; page++) {
+            readPages[page] = memory;
+            writePages[page] = writable ? memory : null;
+            pageOffsets[page] = offset - GBUtil.zeroExtend(start);
+        }
+    }
 
-        } else if (GBUtil.zeroExtend(Constants.SWITCHABLE_ROM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.SWITCHABLE_ROM_END)) {
+    private void unmapPages(short start, short end) {
+        for (int page = GBUtil.zeroExtend(start) >>> PAGE_SHIFT; page <= GBUtil.zeroExtend(end) >>> PAGE_SHIFT; page++) {
+            readPages[page] = null;
+            writePages[page] = null;
+        }
+    }
 
-            retVal = switchableRom[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.SWITCHABLE_ROM_START) +
-                    (currRomBank - 1) * Constants.kb16];
+    /**
+     * Maps the ROM and cartridge RAM pages to the mapper's current banks. Has to be called after a register write.
+     */
+    private void mapBankedPages() {
+        mapPages(Constants.FIXED_ROM_START, Constants.FIXED_ROM_END, mapper.getRom(), mapper.getLowRomOffset(), false);
+        mapPages(Constants.SWITCHABLE_ROM_START, Constants.SWITCHABLE_ROM_END,
+                mapper.getRom(), mapper.getHighRomOffset(), false);
+        int ramOffset = mapper.getRamOffset();
+        if (ramOffset >= 0) {
+            // with a save file, writes go through the mapper so it can track which pages are dirty
+            mapPages(Constants.CARTRIDGE_RAM_START, Constants.CARTRIDGE_RAM_END, mapper.getRam(), ramOffset,
+                    saveFile == null);
+        } else {
+            unmapPages(Constants.CARTRIDGE_RAM_START, Constants.CARTRIDGE_RAM_END);
+        }
+    }
 
-        } else if (GBUtil.zeroExtend(Constants.VRAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.VRAM_END)) {
+    public byte getByte(short address) {
+        return read(address, AccessKind.CPU);
+    }
 
-            retVal = vram[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.VRAM_START)];
+    public void setByte(byte value, short address) {
+        write(value, address, AccessKind.CPU);
+    }
 
-        } else if (GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_END)) {
+    /**
+     * Reads the byte at address, the single path every read goes through.
+     * @param kind decides if the read takes an M-cycle
+     */
+    public byte read(short address, AccessKind kind) {
+        int page = GBUtil.zeroExtend(address) >>> PAGE_SHIFT;
+        byte[] memory = readPages[page];
+        byte retVal = (memory != null) ?
+                memory[pageOffsets[page] + GBUtil.zeroExtend(address)] :
+                getByteUnmapped(address);
+        if (kind.ticks) {
+            doMCycle();
+        }
+        return retVal;
+    }
 
-            if (ramEnabled) {
-                retVal = cartridgeRam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_START) +
-                        currRamBank * Constants.kb8];
-            } else {
-                retVal = (byte) 0xFF; // technically not guaranteed to return this
+    /**
+     * Writes value to address, the single path every write goes through.
+     * Writes that could modify code are reported to the code write listener, whatever their kind.
+     * @param kind decides if the write takes an M-cycle, and if IO and MBC registers react to it
+     */
+    public void write(byte value, short address, AccessKind kind) {
+        int page = GBUtil.zeroExtend(address) >>> PAGE_SHIFT;
+        byte[] memory = writePages[page];
+        if (memory != null) {
+            memory[pageOffsets[page] + GBUtil.zeroExtend(address)] = value;
+            if (GBUtil.zeroExtend(address) >= GBUtil.zeroExtend(Constants.CONSOLE_RAM_START)) {
+                notifyCodeWrite(address); // console RAM and echo RAM
             }
+        } else {
+            setByteUnmapped(value, address, kind);
+        }
+        if (kind.ticks) {
+            doMCycle();
+        }
+        if (kind == AccessKind.CPU && address == SC_ADDRESS) {
+            // todo for testing only
+            printSerialOutput();
+        }
+    }
 
-        } else if (GBUtil.zeroExtend(Constants.CONSOLE_RAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.CONSOLE_RAM_END)) {
-
-            retVal = consoleRam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.CONSOLE_RAM_START)];
-
-        } else if (GBUtil.zeroExtend(Constants.ECHO_RAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.ECHO_RAM_END)) {
-
-            // todo technically this is prohibited so I could return an exception
-            retVal = consoleRam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.ECHO_RAM_START)];
-
-        } else if (GBUtil.zeroExtend(Constants.OAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.OAM_END)) {
+    /**
+     * @return the byte at address, which is on a page without a backing array
+     */
+    private byte getByteUnmapped(short address) {
+        byte retVal;
+        if (GBUtil.zeroExtend(Constants.HRAM_START) <= GBUtil.zeroExtend(address) &&
+                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.HRAM_END)) {
 
-            // todo placeholder for now
-            retVal = oam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.OAM_START)];
+            retVal = hram[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.HRAM_START)];
 
         } else if (GBUtil.zeroExtend(Constants.IO_REGISTERS_START) <= GBUtil.zeroExtend(address) &&
                 GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.IO_REGISTERS_END)) {
 
+            synchronize();
             // todo for testing only
             if (address == (short) 0xFF44) {
                 retVal =  (byte) 0x90;
@@ -167,56 +196,84 @@ public class Memory {
                 // todo according to https://www.reddit.com/r/EmuDev/comments/u1d1p6/gameboy_blargg_test_03_infinite_loop/
                 // maybe I should make unused/unmapped IO registers read out 0xFF and be read only!
                 retVal = (byte) 0xFF;
+            } else if (address == Constants.IF_ADDRESS) {
+                retVal = interruptController.getIF();
+            } else if (address == Constants.DIV_ADDRESS) {
+                retVal = getDiv();
+            } else if (address == Constants.TIMA_ADDRESS) {
+                retVal = getTima();
             } else {
                 retVal = ioRegisters[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.IO_REGISTERS_START)];
             }
 
-        } else if (GBUtil.zeroExtend(Constants.HRAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.HRAM_END)) {
+        } else if (GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_START) <= GBUtil.zeroExtend(address) &&
+                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_END)) {
 
-            retVal = hram[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.HRAM_START)];
+            synchronize(); // the real time clock reads the clock
+            retVal = mapper.readRam(address);
+
+        } else if (GBUtil.zeroExtend(Constants.OAM_START) <= GBUtil.zeroExtend(address) &&
+                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.OAM_END)) {
+
+            // todo placeholder for now
+            retVal = oam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.OAM_START)];
 
         } else if (Constants.IE_ADDRESS == address) {
-            retVal = ieRegister;
+            synchronize();
+            retVal = interruptController.getIE();
         } else {
             // unusuable or out of bounds
             // todo I think unusable area actually returns an a value, but probably don't need to implement.
             throw new MemoryException("called getByte on not usable, or out of bounds address space: " +
                     GBUtil.zeroExtend(address));
         }
-
-        doMCycle();
         return retVal;
     }
 
-    public void setByte(byte value, short address) {
-        if (GBUtil.zeroExtend(Constants.FIXED_ROM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.SWITCHABLE_ROM_END)) {
-
-            setMBC1Registers(value, address);
-
-        } else if (GBUtil.zeroExtend(Constants.VRAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.VRAM_END)) {
+    /**
+     * Writes value to address, which is on a page without a backing array.
+     * Without side effects, IO registers are written as they are, e.g. writing DIV doesn't reset it,
+     * and ROM writes are ignored instead of going to the MBC registers.
+     */
+    private void setByteUnmapped(byte value, short address, AccessKind kind) {
+        if (GBUtil.zeroExtend(Constants.HRAM_START) <= GBUtil.zeroExtend(address) &&
+                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.HRAM_END)) {
 
-            vram[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.VRAM_START)] = value;
+            hram[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.HRAM_START)] = value;
+            notifyCodeWrite(address);
 
-        } else if (GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_END)) {
+        } else if (GBUtil.zeroExtend(Constants.IO_REGISTERS_START) <= GBUtil.zeroExtend(address) &&
+                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.IO_REGISTERS_END)) {
 
-            if (ramEnabled) {
-                cartridgeRam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_START) +
-                        currRamBank * Constants.kb8] = value;
+            synchronize();
+            if (kind.sideEffects) {
+                setByteIORegister(value, address);
+            } else {
+                setByteIORegisterNoSideEffects(value, address);
             }
 
-        } else if (GBUtil.zeroExtend(Constants.CONSOLE_RAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.CONSOLE_RAM_END)) {
+        } else if (GBUtil.zeroExtend(Constants.FIXED_ROM_START) <= GBUtil.zeroExtend(address) &&
+                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.SWITCHABLE_ROM_END)) {
 
-            consoleRam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.CONSOLE_RAM_START)] = value;
+            if (kind.sideEffects) {
+                synchronize(); // latching the real time clock reads the clock
+                boolean ramEnabled = mapper.isRamEnabled();
+                mapper.writeRegister(address, value);
+                mapBankedPages();
+                if (saveFile != null && ramEnabled && !mapper.isRamEnabled()) {
+                    saveFile.flush();
+                }
+            }
 
-        } else if (GBUtil.zeroExtend(Constants.ECHO_RAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.ECHO_RAM_END)) {
+        } else if (GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_START) <= GBUtil.zeroExtend(address) &&
+                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_END)) {
 
-            consoleRam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.ECHO_RAM_START)] = value;
+            synchronize(); // the real time clock and SAVE_FLUSH read the clock
+            mapper.writeRam(address, value);
+            if (saveFile != null && mapper.isRamDirty() &&
+                    scheduler.getEventCycle(Scheduler.Event.SAVE_FLUSH) == Scheduler.NEVER) {
+                scheduler.schedule(Scheduler.Event.SAVE_FLUSH, clock.getMCycles() + SAVE_FLUSH_MCYCLES);
+            }
 
         } else if (GBUtil.zeroExtend(Constants.OAM_START) <= GBUtil.zeroExtend(address) &&
                 GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.OAM_END)) {
@@ -224,58 +281,38 @@ public class Memory {
             // todo, placeholder for now
             oam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.OAM_START)] = value;
 
-        } else if (GBUtil.zeroExtend(Constants.IO_REGISTERS_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.IO_REGISTERS_END)) {
-
-            setByteIORegister(value, address);
-
-        } else if (GBUtil.zeroExtend(Constants.HRAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.HRAM_END)) {
-
-            hram[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.HRAM_START)] = value;
-
         } else if (Constants.IE_ADDRESS == address) {
-            ieRegister = value;
+            synchronize();
+            interruptController.setIE(value);
         } else {
             // unusuable or out of bounds
             throw new MemoryException("called setByte on not usable, or out of bounds address space: " +
                     GBUtil.zeroExtend(address));
         }
-        doMCycle();
-        // todo for testing only
-        printSerialOutput();
     }
 
-    private void setMBC1Registers(byte value, short address) {
-        if (mbc != MBC.MBC_1) {
-            return;
-        }
-
-        if (GBUtil.zeroExtend(Constants.RAM_ENABLE_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.RAM_ENABLE_END)) {
-            ramEnabled = GBUtil.getNibble(true, value) == 0xA;
-        } else if (GBUtil.zeroExtend(Constants.ROM_BANK_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.ROM_BANK_END)) {
-            // todo I'm pretty sure this handles the 0x20, 0x40, and 0x60 translation, but make sure
-            byte fiveBitValue = (byte) (value & 0b00011111);
-            if (fiveBitValue == (byte) 0) {
-                fiveBitValue = (byte) 1;
+    // Since setByteIORegister has special behavior for stuff like DIV and TIMA, which a debugger or test
+    // writing a register doesn't want, PEEK writes use this instead.
+    private void setByteIORegisterNoSideEffects(byte value, short address) {
+        if (address == Constants.IF_ADDRESS) {
+            interruptController.setIF(value);
+        } else if (address == Constants.DIV_ADDRESS) {
+            // DIV is the upper byte of the system clock, so move the clock's origin until it reads value,
+            // keeping the lower byte so TIMA keeps its phase
+            setTima(getTima());
+            long lowerByte = getSysClock() & 0xFF;
+            divResetMCycle = clock.getMCycles() - (GBUtil.zeroExtend(value) * 256L + lowerByte) / 4;
+            rescheduleTimer();
+        } else {
+            if (address == Constants.TIMA_ADDRESS || address == Constants.TAC_ADDRESS) {
+                setTima(getTima());
             }
-            currRomBank = currRomBank & 0b1100000;
-            currRomBank = currRomBank | fiveBitValue;
-        } else if (GBUtil.zeroExtend(Constants.RAM_BANK_OR_UPPER_ROM_BANK_BIT_START_ADDRESS) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.RAM_BANK_OR_UPPER_ROM_BANK_BIT_END_ADDRESS)) {
-            byte twoBitValue = (byte) (value & 0b00000011);
-            if (isRamMode) {
-                currRamBank = twoBitValue;
-            } else {
-                currRomBank = currRomBank & 0b0011111;
-                currRomBank = currRomBank | (twoBitValue << 5);
+            ioRegisters[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.IO_REGISTERS_START)] = value;
+            if (address == Constants.TIMA_ADDRESS) {
+                setTima(value);
             }
-        } else {
-            isRamMode = GBUtil.getBit(value, 0) == 1;
-            if (!isRamMode) {
-                currRamBank = 0;
+            if (address == Constants.TIMA_ADDRESS || address == Constants.TAC_ADDRESS) {
+                rescheduleTimer();
             }
         }
     }
@@ -283,56 +320,208 @@ public class Memory {
     private void setByteIORegister(byte value, short address) {
         if (address == Constants.DIV_ADDRESS) {
             // writing any value to DIV sets it to 0
-            sysClock = (short) 0;
-            ioRegisters[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.IO_REGISTERS_START)] = (byte) 0;
+            setTima(getTima());
+            divResetMCycle = clock.getMCycles();
+            rescheduleTimer();
+        } else if (address == Constants.IF_ADDRESS) {
+            interruptController.setIF(value);
         } else if (address == Constants.TIMA_ADDRESS) {
             // abort timer interrupt and TMA reload
             requestTimerInterrupt = false;
+            setTima(value);
+            rescheduleTimer();
+        } else if (address == Constants.TAC_ADDRESS) {
+            setTima(getTima());
             ioRegisters[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.IO_REGISTERS_START)] = value;
+            rescheduleTimer();
         } else {
             ioRegisters[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.IO_REGISTERS_START)] = value;
         }
     }
 
+    public Mapper getMapper() {
+        return mapper;
+    }
+
+    /**
+     * Loads cartridge RAM (and MBC3's clock) from the save file at path, creating it if it doesn't exist,
+     * and keeps the file up to date from then on. Does nothing if the cartridge has no battery.
+     * A save file that is already open is closed first, so everything written to it is kept.
+     */
+    public void openSaveFile(Path path) {
+        if (!mapper.hasBattery()) {
+            return;
+        }
+        closeSaveFile();
+        saveFile = new SaveFile(path, mapper);
+        mapBankedPages();
+    }
+
+    /**
+     * Writes everything that isn't in the save file yet, and waits until it is on disk.
+     */
+    public void closeSaveFile() {
+        if (saveFile == null) {
+            return;
+        }
+        scheduler.cancel(Scheduler.Event.SAVE_FLUSH);
+        saveFile.close();
+        saveFile = null;
+        mapBankedPages();
+    }
+
+    /**
+     * @return the ROM bank mapped to the switchable ROM section
+     */
+    public int getCurrentRomBank() {
+        return mapper.getHighRomBank();
+    }
+
+    /**
+     * @return the ROM bank mapped to address, which has to be in 0x0000-0x7FFF
+     */
+    public int getRomBankAt(short address) {
+        return (GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.FIXED_ROM_END)) ?
+                mapper.getLowRomBank() : mapper.getHighRomBank();
+    }
+
+    /**
+     * @return the number of ROM banks on the cartridge
+     */
+    public int getRomBankCount() {
+        return mapper.getRomBankCount();
+    }
+
+    /**
+     * @return the SHA-256 hash of the whole ROM, as a hex string
+     */
+    public String getRomHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(mapper.getRom());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new MemoryException("SHA-256 is not available: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param codeWriteListener notified of every write that could modify code, or null for none.
+     */
+    public void setCodeWriteListener(MemoryWriteListener codeWriteListener) {
+        this.codeWriteListener = codeWriteListener;
+    }
+
+    private void notifyCodeWrite(short address) {
+        if (codeWriteListener != null) {
+            codeWriteListener.onWrite(address);
+        }
+    }
+
     // todo this really belongs in CPU, but that may require refactoring. actually maybe not, idk
     // todo I'm assuming this is the only way to progress "time", aka progress m-cycles
     // todo at the last paragraph of "TIMA overflow behavior" there are specific T cycle timings. Ignoring those.
 
-    // TODO THIS NEEDS TO BE SPLIT INTO SEPARATE METHODS!!!
     /**
      * Causes 1 M-cycle worth of time to pass. This should be called
-     * during every memory operation. This also increments timers as needed.
+     * during every memory operation. Peripherals are only updated if one of their events is due.
+     * With deferred sync, the M-cycle is only counted, and passes in the next synchronize.
      */
     public void doMCycle() {
+        if (deferredSync) {
+            pendingMCycles++;
+            return;
+        }
+        clock.tick();
+        if (clock.getMCycles() >= scheduler.getNextEventCycle()) {
+            doEvents();
+        }
+    }
+
+    /**
+     * Lets the M-cycles counted by doMCycle with deferred sync pass on the clock, doing every event
+     * in the M-cycle it was due in, so the result is the same as if every doMCycle had let its M-cycle pass.
+     * Has to be called before peripheral state is used: on IO register, IE, MBC register and unmapped cartridge RAM
+     * accesses, which do this themselves, and by the CPU before checking for interrupts once an event is due,
+     * see synchronizeIfEventDue. Does nothing without deferred sync.
+     */
+    public void synchronize() {
+        while (pendingMCycles > 0) {
+            long mCycles = Math.min(pendingMCycles, scheduler.getNextEventCycle() - clock.getMCycles());
+            clock.advance(mCycles);
+            pendingMCycles -= mCycles;
+            if (clock.getMCycles() >= scheduler.getNextEventCycle()) {
+                doEvents();
+            }
+        }
+    }
+
+    /**
+     * Synchronizes only if an event is due by the end of the pending M-cycles. Events are the only way peripherals
+     * change IF without the CPU accessing an IO register or IE, so the CPU can check for interrupts after this
+     * instead of synchronizing every instruction.
+     */
+    public void synchronizeIfEventDue() {
+        if (pendingMCycles > 0 && clock.getMCycles() + pendingMCycles >= scheduler.getNextEventCycle()) {
+            synchronize();
+        }
+    }
+
+    /**
+     * @return the M-cycles that passed, including those deferred sync hasn't let pass on the clock yet
+     */
+    public long getMCycles() {
+        return clock.getMCycles() + pendingMCycles;
+    }
+
+    public boolean isDeferredSync() {
+        return deferredSync;
+    }
+
+    /**
+     * @param deferredSync if true, doMCycle doesn't update peripherals, it only counts M-cycles.
+     *                     They catch up at once when the CPU accesses IO registers or IE, or checks for interrupts.
+     *                     If false, every doMCycle lets its M-cycle pass immediately.
+     */
+    public void setDeferredSync(boolean deferredSync) {
+        synchronize();
+        this.deferredSync = deferredSync;
+    }
+
+    private void doEvents() {
+        Scheduler.Event event;
+        while ((event = scheduler.popDueEvent(clock.getMCycles())) != null) {
+            switch (event) {
+                case TIMER -> doTimerStep();
+                case SAVE_FLUSH -> saveFile.flush();
+            }
+        }
+    }
+
+    /**
+     * Updates the timer for the M-cycle that just passed, exactly like checking for a falling edge every M-cycle would.
+     * It only has to run in M-cycles where that check does more than increment TIMA:
+     * TIMA overflowing, TMA being reloaded, or a write to TAC taking effect.
+     * The increments in all other M-cycles are derived from the clock by getTima.
+     */
+    private void doTimerStep() {
+        long mCycle = clock.getMCycles();
+        byte tima = getTima(mCycle - 1);
         if (requestTimerInterrupt) {
             requestTimerInterrupt = false;
-            setByteNoTick(getByteNoTick(Constants.TMA_ADDRESS), Constants.TIMA_ADDRESS); // reload TMA value
-            // request timer interrupt
-            byte b = getByteNoTick(Constants.IF_ADDRESS);
-            b = GBUtil.modifyBit(b, Constants.TIMER, 1);
-            setByteNoTick(b, Constants.IF_ADDRESS);
+            tima = getIORegister(Constants.TMA_ADDRESS); // reload TMA value
+            interruptController.request(Constants.TIMER);
 
             // do this to guarantee TIMA won't be incremented this cycle
             oldEnabled = 0;
         }
-        short oldSysClock = sysClock;
-        sysClock = (short) (sysClock + 4); // increments once every T cycle, so 4 every M cycle
-        // since tick is called in setByte, we need to use setByteNoTick
-        setByteNoTick(GBUtil.getByteFromShort(false, sysClock), Constants.DIV_ADDRESS);
+        short oldSysClock = getSysClock(mCycle - 1);
+        short sysClock = getSysClock(mCycle);
 
-        byte tima = getByteNoTick(Constants.TIMA_ADDRESS);
-        byte tac = getByteNoTick(Constants.TAC_ADDRESS);
+        byte tac = getIORegister(Constants.TAC_ADDRESS);
 
         int enable = GBUtil.getBit(tac, 2);
-        int clockSelect = GBUtil.get2BitValue(
-                GBUtil.getBit(tac, 1),
-                GBUtil.getBit(tac, 0));
-        int bitPos = switch (clockSelect) {
-            case 0 -> 9; // every 256 m-cycles
-            case 1 -> 3; // every 4 m-cycles
-            case 2 -> 5; // every 16 m-cycles
-            default -> 7; // evert 64 m-cycles
-        };
+        int bitPos = getTimerBitPosition(tac);
 
         int oldAndResult = GBUtil.getBit(oldSysClock, bitPos) & oldEnabled;
         int newAndResult = GBUtil.getBit(sysClock, bitPos) & enable;
@@ -346,22 +535,207 @@ public class Memory {
         }
 
         oldEnabled = enable;
-        setByteNoTick(tima, Constants.TIMA_ADDRESS);
+        setTima(tima);
+        rescheduleTimer();
+    }
+
+    /**
+     * Schedules the next M-cycle doTimerStep has to run in. Has to be called whenever the timer's state changes.
+     */
+    private void rescheduleTimer() {
+        long mCycles = getMCyclesUntilTimerStep();
+        if (mCycles == Long.MAX_VALUE) {
+            scheduler.cancel(Scheduler.Event.TIMER);
+        } else {
+            scheduler.schedule(Scheduler.Event.TIMER, clock.getMCycles() + mCycles);
+        }
+    }
+
+    /**
+     * @return TIMA at the current M-cycle
+     */
+    private byte getTima() {
+        return getTima(clock.getMCycles());
+    }
+
+    /**
+     * @return TIMA at M-cycle mCycle, which must not be before timaMCycle or after the next timer event.
+     *         Since nothing but increments happen until then, it is the stored value plus the number of
+     *         falling edges of the bit TAC selects.
+     */
+    private byte getTima(long mCycle) {
+        if (oldEnabled == 0) {
+            return tima;
+        }
+        long period = 1L << (getTimerBitPosition(getIORegister(Constants.TAC_ADDRESS)) + 1);
+        long increments = getTotalSysClock(mCycle) / period - getTotalSysClock(timaMCycle) / period;
+        return (byte) (tima + increments);
+    }
+
+    /**
+     * Sets TIMA at the current M-cycle.
+     */
+    private void setTima(byte tima) {
+        this.tima = tima;
+        timaMCycle = clock.getMCycles();
     }
 
+    /**
+     * @return the clock, after synchronizing so it counts every M-cycle that has passed
+     */
+    public Clock getClock() {
+        synchronize();
+        return clock;
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return the 16 bit system clock, which increments every T-cycle. Its upper 8 bits are mapped to DIV.
+     */
+    private short getSysClock() {
+        return getSysClock(clock.getMCycles());
+    }
+
+    /**
+     * @return the system clock at M-cycle mCycle
+     */
+    private short getSysClock(long mCycle) {
+        return (short) getTotalSysClock(mCycle);
+    }
+
+    /**
+     * @return the T-cycles from the last DIV reset to M-cycle mCycle. Unlike the system clock it doesn't wrap around,
+     *         but since every timer period divides 2^16, falling edges happen at the same multiples of the period.
+     */
+    private long getTotalSysClock(long mCycle) {
+        return (mCycle - divResetMCycle) * 4;
+    }
+
+    /**
+     * @return the IO register at address, without synchronizing.
+     *         For code that runs while synchronizing, and registers that no peripheral changes.
+     */
+    private byte getIORegister(short address) {
+        return ioRegisters[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.IO_REGISTERS_START)];
+    }
+
+    private byte getDiv() {
+        return GBUtil.getByteFromShort(false, getSysClock());
+    }
+
+    /**
+     * @return the bit of the system clock whose falling edge increments TIMA, selected by bits 1 and 0 of tac
+     */
+    private static int getTimerBitPosition(byte tac) {
+        int clockSelect = GBUtil.get2BitValue(
+                GBUtil.getBit(tac, 1),
+                GBUtil.getBit(tac, 0));
+        return switch (clockSelect) {
+            case 0 -> 9; // every 256 m-cycles
+            case 1 -> 3; // every 4 m-cycles
+            case 2 -> 5; // every 16 m-cycles
+            default -> 7; // evert 64 m-cycles
+        };
+    }
+
+    /**
+     * Lets up to maxMCycles M-cycles pass, stopping as soon as an interrupt is pending.
+     * Has the same effect as calling doMCycle that many times, but the cycles between timer events
+     * and other scheduled events are skipped in one step.
+     * @return the number of M-cycles that passed
+     */
+    public long fastForward(long maxMCycles) {
+        synchronize();
+        long passed = 0;
+        while (passed < maxMCycles && !hasPendingInterrupt()) {
+            long skipped = Math.min(getMCyclesUntilEvent(), maxMCycles - passed) - 1;
+            skipMCycles(skipped);
+            doMCycle(); // the cycle with the event, if there is one, is done normally
+            passed += skipped + 1;
+        }
+        return passed;
+    }
+
+    /**
+     * @return the number of doMCycle calls until one that does more than increment DIV and TIMA:
+     *         TIMA overflowing, TMA being reloaded, a write to TAC taking effect, or any other scheduled event
+     *         such as a save file flush. Long.MAX_VALUE if there won't be one.
+     */
+    public long getMCyclesUntilEvent() {
+        synchronize();
+        long nextEventCycle = scheduler.getNextEventCycle();
+        long untilScheduled = (nextEventCycle == Scheduler.NEVER) ? Long.MAX_VALUE : nextEventCycle - clock.getMCycles();
+        return Math.min(getMCyclesUntilTimerStep(), untilScheduled);
+    }
+
+    /**
+     * @return the number of doMCycle calls until the next timer event, without synchronizing
+     */
+    private long getMCyclesUntilTimerStep() {
+        byte tac = getIORegister(Constants.TAC_ADDRESS);
+        int enable = GBUtil.getBit(tac, 2);
+        if (requestTimerInterrupt || enable != oldEnabled) {
+            return 1;
+        }
+        if (enable == 0) {
+            return Long.MAX_VALUE;
+        }
+        long period = 1L << (getTimerBitPosition(tac) + 1); // T-cycles between increments
+        long sysClock = getTotalSysClock(clock.getMCycles());
+        long increments = 256 - GBUtil.zeroExtend(getTima());
+        long overflowClock = (sysClock / period + increments) * period;
+        return (overflowClock - sysClock) / 4;
+    }
+
+    /**
+     * Has the same effect as calling doMCycle mCycles times, in one step.
+     * @throws MemoryException if a timer or other scheduled event would happen during those M-cycles,
+     *         i.e. getMCyclesUntilEvent is not greater than mCycles
+     */
+    public void skipMCycles(long mCycles) {
+        if (mCycles <= 0) {
+            return;
+        }
+        if (mCycles >= getMCyclesUntilEvent()) {
+            throw new MemoryException("can't skip " + mCycles + " M-cycles past a scheduled event");
+        }
+        clock.advance(mCycles); // DIV and TIMA follow the clock
+    }
+
+    /**
+     * @return true if an enabled interrupt is certain to be requested at some point, without the CPU doing anything:
+     *         the timer interrupt is enabled in IE, and TIMA is running or has just overflowed.
+     */
+    public boolean isInterruptScheduled() {
+        synchronize();
+        return GBUtil.getBit(interruptController.getIE(), Constants.TIMER) == 1 &&
+                (requestTimerInterrupt || GBUtil.getBit(getIORegister(Constants.TAC_ADDRESS), 2) == 1);
+    }
+
+    /**
+     * @return true if any interrupt is both requested in IF and enabled in IE. This does NOT consume an m-cycle.
+     */
+    public boolean hasPendingInterrupt() {
+        synchronize();
+        return interruptController.hasPending();
+    }
 
     /**
      * returns a queue containing all pending interrupts, i.e. bit positions
      * in both IE and IF that are 1. They can be removed in priority order, where
      * lowest bit position = highest priority.
+     * This allocates; code that runs every instruction should use getInterruptController instead.
      */
     public Queue<Integer> getPendingInterrupts() {
+        synchronize();
         Queue<Integer> pendingInterrupts = new PriorityQueue<>();
-        byte andResult = (byte) (getByteNoTick(Constants.IE_ADDRESS) & getByteNoTick(Constants.IF_ADDRESS));
-        for (int i = Constants.VBLANK; i <= Constants.JOYPAD; i++) {
-            if (GBUtil.getBit(andResult, i) == 1) {
-                pendingInterrupts.add(i);
-            }
+        int pending = interruptController.getPendingMask();
+        while (pending != 0) {
+            pendingInterrupts.add(Integer.numberOfTrailingZeros(pending));
+            pending &= pending - 1;
         }
         return pendingInterrupts;
     }
@@ -370,7 +744,16 @@ public class Memory {
      * @return the IE register. This does NOT consume an m-cycle.
      */
     public byte getIERegister() {
-        return ieRegister;
+        synchronize();
+        return interruptController.getIE();
+    }
+
+    /**
+     * @return the interrupt controller, after synchronizing so IF has every interrupt requested so far
+     */
+    public InterruptController getInterruptController() {
+        synchronize();
+        return interruptController;
     }
 
     // todo these cause m-cycle to pass - is this OK??? - are these even being used????
@@ -566,12 +949,13 @@ public class Memory {
     }
 
     // todo for testing purposes, probably remove later
+    // reads the serial registers directly, so writes don't synchronize. Only CPU writes to SC call this.
     public void printSerialOutput() {
-        if (getByteNoTick((short) 0xff02) == (byte) 0x81) {
-            byte b = getByteNoTick((short) 0xff01);
+        if (getIORegister((short) 0xff02) == (byte) 0x81) {
+            byte b = getIORegister((short) 0xff01);
             char c = (char) GBUtil.zeroExtend(b);
             System.out.println(c);
-            setByteNoTick((byte) 0, (short) 0xff02);
+            ioRegisters[0x02] = (byte) 0;
         }
     }
 
@@ -594,139 +978,12 @@ public class Memory {
 
     // todo for testing purposes, probably remove later (some of my actual methods use this, so need to come up with better way to do this)
     public byte getByteNoTick(short address) {
-        byte retVal;
-        if (GBUtil.zeroExtend(Constants.FIXED_ROM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.FIXED_ROM_END)) {
-
-            retVal = fixedRom[GBUtil.zeroExtend(address)];
-
-        } else if (GBUtil.zeroExtend(Constants.SWITCHABLE_ROM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.SWITCHABLE_ROM_END)) {
-
-            retVal = switchableRom[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.SWITCHABLE_ROM_START) +
-                    (currRomBank - 1) * Constants.kb16];
-
-        } else if (GBUtil.zeroExtend(Constants.VRAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.VRAM_END)) {
-
-            retVal = vram[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.VRAM_START)];
-
-        } else if (GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_END)) {
-
-            if (ramEnabled) {
-                retVal = cartridgeRam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_START) +
-                        currRamBank * Constants.kb8];
-            } else {
-                retVal = (byte) 0xFF; // technically not guaranteed to return this
-            }
-
-        } else if (GBUtil.zeroExtend(Constants.CONSOLE_RAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.CONSOLE_RAM_END)) {
-
-            retVal = consoleRam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.CONSOLE_RAM_START)];
-
-        } else if (GBUtil.zeroExtend(Constants.ECHO_RAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.ECHO_RAM_END)) {
-
-            // todo technically this is prohibited so I could return an exception
-            retVal = consoleRam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.ECHO_RAM_START)];
-
-        } else if (GBUtil.zeroExtend(Constants.OAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.OAM_END)) {
-
-            // todo placeholder for now
-            retVal = oam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.OAM_START)];
-
-        } else if (GBUtil.zeroExtend(Constants.IO_REGISTERS_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.IO_REGISTERS_END)) {
-
-            // todo for testing only
-            if (address == (short) 0xFF44) {
-                retVal =  (byte) 0x90;
-            } else if (address == (short) 0xFF4D) { // todo prevent blargg test from trying to speed switch
-                // todo according to https://www.reddit.com/r/EmuDev/comments/u1d1p6/gameboy_blargg_test_03_infinite_loop/
-                // maybe I should make unused/unmapped IO registers read out 0xFF and be read only!
-                retVal = (byte) 0xFF;
-            } else {
-                retVal = ioRegisters[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.IO_REGISTERS_START)];
-            }
-
-        } else if (GBUtil.zeroExtend(Constants.HRAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.HRAM_END)) {
-
-            retVal = hram[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.HRAM_START)];
-
-        } else if (Constants.IE_ADDRESS == address) {
-            retVal = ieRegister;
-        } else {
-            // unusuable or out of bounds
-            // todo I think unusable area actually returns an a value, but probably don't need to implement.
-            throw new MemoryException("called getByte on not usable, or out of bounds address space: " +
-                    GBUtil.zeroExtend(address));
-        }
-
-        return retVal;
+        return read(address, AccessKind.PEEK);
     }
 
     // todo for testing purposes, probably remove later, need to come up with better way to do this
     public void setByteNoTick(byte value, short address) {
-        if (GBUtil.zeroExtend(Constants.FIXED_ROM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.SWITCHABLE_ROM_END)) {
-
-            setMBC1Registers(value, address);
-
-        } else if (GBUtil.zeroExtend(Constants.VRAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.VRAM_END)) {
-
-            vram[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.VRAM_START)] = value;
-
-        } else if (GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_END)) {
-
-            if (ramEnabled) {
-                cartridgeRam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.CARTRIDGE_RAM_START) +
-                        currRamBank * Constants.kb8] = value;
-            }
-
-        } else if (GBUtil.zeroExtend(Constants.CONSOLE_RAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.CONSOLE_RAM_END)) {
-
-            consoleRam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.CONSOLE_RAM_START)] = value;
-
-        } else if (GBUtil.zeroExtend(Constants.ECHO_RAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.ECHO_RAM_END)) {
-
-            consoleRam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.ECHO_RAM_START)] = value;
-
-        } else if (GBUtil.zeroExtend(Constants.OAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.OAM_END)) {
-
-            // todo, placeholder for now
-            oam[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.OAM_START)] = value;
-
-        } else if (GBUtil.zeroExtend(Constants.IO_REGISTERS_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.IO_REGISTERS_END)) {
-
-            // todo setByteNoTick method is only used by doMCycle().
-            // Since setByteIORegister has special behavior for stuff like DIV and TIMA, which we don't want,
-            // we can't use that and just use this instead.
-            ioRegisters[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.IO_REGISTERS_START)] = value;
-
-        } else if (GBUtil.zeroExtend(Constants.HRAM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.HRAM_END)) {
-
-            hram[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.HRAM_START)] = value;
-
-        } else if (Constants.IE_ADDRESS == address) {
-            ieRegister = value;
-        } else {
-            // unusuable or out of bounds
-            throw new MemoryException("called setByte on not usable, or out of bounds address space: " +
-                    GBUtil.zeroExtend(address));
-        }
-        // todo for testing only
-        printSerialOutput();
+        write(value, address, AccessKind.PEEK);
     }
 
     // todo needed for unit tests to set interrupt handler methods for now.
@@ -734,15 +991,11 @@ public class Memory {
     // This method allows you to directly write to the ROM address space, no side effects otherwise.
     public void setByteRom(byte value, short address) {
         if (GBUtil.zeroExtend(Constants.FIXED_ROM_START) <= GBUtil.zeroExtend(address) &&
-                GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.FIXED_ROM_END)) {
-
-            fixedRom[GBUtil.zeroExtend(address)] = value;
-
-        } else if (GBUtil.zeroExtend(Constants.SWITCHABLE_ROM_START) <= GBUtil.zeroExtend(address) &&
                 GBUtil.zeroExtend(address) <= GBUtil.zeroExtend(Constants.SWITCHABLE_ROM_END)) {
 
-            switchableRom[GBUtil.zeroExtend(address) - GBUtil.zeroExtend(Constants.SWITCHABLE_ROM_START) +
-                    (currRomBank - 1) * Constants.kb16] = value;
+            int page = GBUtil.zeroExtend(address) >>> PAGE_SHIFT;
+            readPages[page][pageOffsets[page] + GBUtil.zeroExtend(address)] = value;
+            notifyCodeWrite(address);
 
         } else {
             throw new MemoryException("Address: " + address + " is not in the ROM address space");
@@ -0,0 +1,10 @@
+package model.memory;
+
+/**
+ * Notified when Memory writes to an address that can hold code: console RAM, echo RAM, HRAM,
+ * or ROM through setByteRom.
+ */
+@FunctionalInterface
+public interface MemoryWriteListener {
+    void onWrite(short address);
+}
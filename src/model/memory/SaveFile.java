@@ -0,0 +1,142 @@
+package model.memory;
+
+import exception.MemoryException;
+import model.memory.mapper.MBC3;
+import model.memory.mapper.Mapper;
+import model.memory.mapper.RealTimeClock;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The .sav file of a cartridge with a battery: its RAM, followed by the real time clock's state if it has one.
+ * The file is memory mapped. flush copies the RAM pages written since the last flush on the emulation thread,
+ * which is only a few small array copies, and a background thread puts them into the file and forces it to disk.
+ */
+public class SaveFile {
+    private final Mapper mapper;
+    private final RealTimeClock rtc; // null if the cartridge has no clock
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer; // only used by the flusher thread after the constructor
+    private final ExecutorService flusher;
+    private volatile RuntimeException flushFailure; // the first exception a flush threw, null if none did
+    private boolean closed;
+
+    /**
+     * Opens the save file at path, creating it if it doesn't exist, and loads it into the mapper's RAM and clock.
+     * A file that is too short for the RAM is ignored, a missing clock state keeps the clock at 0.
+     */
+    public SaveFile(Path path, Mapper mapper) {
+        this.mapper = mapper;
+        this.rtc = (mapper instanceof MBC3 mbc3) ? mbc3.getRealTimeClock() : null;
+        byte[] ram = mapper.getRam();
+        int size = ram.length + ((rtc == null) ? 0 : RealTimeClock.STATE_SIZE);
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long existingSize = channel.size();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (existingSize >= ram.length) {
+                buffer.get(0, ram);
+            }
+            if (rtc != null && existingSize >= size) {
+                byte[] state = new byte[RealTimeClock.STATE_SIZE];
+                buffer.get(ram.length, state);
+                rtc.load(state);
+            }
+        } catch (IOException e) {
+            throw new MemoryException("could not open save file " + path + ": " + e.getMessage());
+        }
+        mapper.clearDirtyRamPages();
+        flusher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "save-file-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Writes the RAM pages written since the last flush, and the clock's state, to the file in the background.
+     * Does nothing if no RAM was written, or the file is closed.
+     */
+    public void flush() {
+        if (!closed && mapper.isRamDirty()) {
+            submitFlush();
+        }
+    }
+
+    /**
+     * Flushes everything, including the clock's state, and waits until it is on disk.
+     * Does nothing if the file is already closed.
+     * @throws MemoryException if this or any earlier flush failed, or didn't finish within a minute
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        submitFlush();
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(1, TimeUnit.MINUTES)) {
+                throw new MemoryException("could not write save file: timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MemoryException("could not write save file: interrupted");
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (flushFailure == null) {
+                    flushFailure = new UncheckedIOException(e);
+                }
+            }
+        }
+        if (flushFailure != null) {
+            throw new MemoryException("could not write save file: " + flushFailure.getMessage());
+        }
+    }
+
+    private void submitFlush() {
+        byte[] ram = mapper.getRam();
+        boolean[] dirtyPages = mapper.getDirtyRamPages();
+        List<Integer> offsets = new ArrayList<>();
+        List<byte[]> pages = new ArrayList<>();
+        for (int page = 0; page < dirtyPages.length; page++) {
+            if (dirtyPages[page]) {
+                int offset = page * Mapper.RAM_PAGE_SIZE;
+                byte[] copy = new byte[Math.min(Mapper.RAM_PAGE_SIZE, ram.length - offset)];
+                System.arraycopy(ram, offset, copy, 0, copy.length);
+                offsets.add(offset);
+                pages.add(copy);
+            }
+        }
+        mapper.clearDirtyRamPages();
+        byte[] rtcState = (rtc == null) ? null : rtc.save();
+
+        flusher.execute(() -> {
+            try {
+                for (int i = 0; i < pages.size(); i++) {
+                    buffer.put(offsets.get(i), pages.get(i));
+                }
+                if (rtcState != null) {
+                    buffer.put(ram.length, rtcState);
+                }
+                buffer.force();
+            } catch (RuntimeException e) {
+                if (flushFailure == null) {
+                    flushFailure = e; // kept until close, so a later successful flush doesn't hide it
+                }
+            }
+        });
+    }
+}
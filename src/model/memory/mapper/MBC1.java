@@ -0,0 +1,50 @@
+package model.memory.mapper;
+
+import util.GBUtil;
+
+/**
+ * MBC1: up to 2 MB of ROM and 32 KB of RAM.
+ * The 5 bit BANK1 register holds the lower bits of the ROM bank, the 2 bit BANK2 register the upper bits.
+ * In mode 1, BANK2 also selects the RAM bank and the bank mapped to 0x0000-0x3FFF.
+ */
+public class MBC1 extends Mapper {
+    protected int bank1 = 1;
+    protected int bank2 = 0;
+    protected boolean mode1 = false;
+
+    public MBC1(byte[] rom, byte[] ram) {
+        super(rom, ram);
+    }
+
+    @Override
+    public void writeRegister(short address, byte value) {
+        int a = GBUtil.zeroExtend(address);
+        if (a <= 0x1FFF) {
+            ramEnabled = (value & 0x0F) == 0x0A;
+        } else if (a <= 0x3FFF) {
+            bank1 = value & 0b00011111;
+            if (bank1 == 0) {
+                bank1 = 1; // 0x20, 0x40 and 0x60 can't be mapped to 0x4000-0x7FFF either
+            }
+        } else if (a <= 0x5FFF) {
+            bank2 = value & 0b00000011;
+        } else {
+            mode1 = (value & 1) == 1;
+        }
+        updateBanks();
+    }
+
+    /**
+     * @return true if BANK2 reaches past bank 0 when mode 1 maps it to 0x0000-0x3FFF
+     */
+    @Override
+    public boolean canRemapLowRom() {
+        return romBankCount > 32; // BANK2 << 5
+    }
+
+    protected void updateBanks() {
+        highRomBank = wrapRomBank((bank2 << 5) | bank1);
+        lowRomBank = mode1 ? wrapRomBank(bank2 << 5) : 0;
+        ramBank = mode1 ? wrapRamBank(bank2) : 0;
+    }
+}
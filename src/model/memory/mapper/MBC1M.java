@@ -0,0 +1,46 @@
+package model.memory.mapper;
+
+import util.Constants;
+
+import java.util.Arrays;
+
+/**
+ * MBC1 wired for multicarts: 1 MB of ROM holding 4 games of 256 KB each.
+ * Only 4 bits of BANK1 are connected, so BANK2 selects the game.
+ */
+public class MBC1M extends MBC1 {
+    private static final int LOGO_ADDRESS = 0x104;
+    private static final int LOGO_LENGTH = 0x30;
+
+    public MBC1M(byte[] rom, byte[] ram) {
+        super(rom, ram);
+    }
+
+    /**
+     * @return true if rom looks like a multicart: 1 MB with a second header, including the logo, at the start of bank 0x10
+     */
+    static boolean isMulticart(byte[] rom) {
+        if (rom.length != 64 * Constants.kb16) {
+            return false;
+        }
+        byte[] logo = Arrays.copyOfRange(rom, LOGO_ADDRESS, LOGO_ADDRESS + LOGO_LENGTH);
+        int secondLogoAddress = 0x10 * Constants.kb16 + LOGO_ADDRESS;
+        return !Arrays.equals(logo, new byte[LOGO_LENGTH]) &&
+                Arrays.equals(logo, Arrays.copyOfRange(rom, secondLogoAddress, secondLogoAddress + LOGO_LENGTH));
+    }
+
+    /**
+     * @return true if BANK2 reaches past bank 0 when mode 1 maps it to 0x0000-0x3FFF
+     */
+    @Override
+    public boolean canRemapLowRom() {
+        return romBankCount > 16; // BANK2 << 4
+    }
+
+    @Override
+    protected void updateBanks() {
+        highRomBank = wrapRomBank((bank2 << 4) | (bank1 & 0b1111));
+        lowRomBank = mode1 ? wrapRomBank(bank2 << 4) : 0;
+        ramBank = mode1 ? wrapRamBank(bank2) : 0;
+    }
+}
@@ -0,0 +1,53 @@
+package model.memory.mapper;
+
+import util.GBUtil;
+
+/**
+ * MBC2: up to 256 KB of ROM, and 512 half bytes of built in RAM that repeat across 0xA000-0xBFFF.
+ * Bit 8 of the register address decides between the RAM enable and the ROM bank register.
+ */
+public class MBC2 extends Mapper {
+    private static final int RAM_SIZE = 0x200;
+
+    public MBC2(byte[] rom) {
+        super(rom, new byte[RAM_SIZE]);
+    }
+
+    @Override
+    public void writeRegister(short address, byte value) {
+        int a = GBUtil.zeroExtend(address);
+        if (a > 0x3FFF) {
+            return;
+        }
+        if ((a & 0x100) == 0) {
+            ramEnabled = (value & 0x0F) == 0x0A;
+        } else {
+            int bank = value & 0b1111;
+            highRomBank = wrapRomBank((bank == 0) ? 1 : bank);
+        }
+    }
+
+    /**
+     * @return -1, the half bytes and their repetition can't be mapped directly
+     */
+    @Override
+    public int getRamOffset() {
+        return -1;
+    }
+
+    @Override
+    public byte readRam(short address) {
+        if (!ramEnabled) {
+            return (byte) 0xFF;
+        }
+        return (byte) (ram[address & (RAM_SIZE - 1)] | 0xF0); // the upper half isn't connected
+    }
+
+    @Override
+    public void writeRam(short address, byte value) {
+        if (ramEnabled) {
+            ram[address & (RAM_SIZE - 1)] = (byte) (value & 0x0F);
+            markRamDirty(address & (RAM_SIZE - 1));
+        }
+    }
+}
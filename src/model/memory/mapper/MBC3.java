@@ -0,0 +1,67 @@
+package model.memory.mapper;
+
+import util.GBUtil;
+
+/**
+ * MBC3: up to 2 MB of ROM and 32 KB of RAM, with a 7 bit ROM bank register.
+ * Values 0x08-0x0C in the RAM bank register select a register of the real time clock instead of a RAM bank,
+ * if the cartridge has one.
+ */
+public class MBC3 extends Mapper {
+    private final RealTimeClock rtc; // null if the cartridge has no clock
+    private int ramBankRegister = 0;
+
+    public MBC3(byte[] rom, byte[] ram, RealTimeClock rtc) {
+        super(rom, ram);
+        this.rtc = rtc;
+    }
+
+    @Override
+    public void writeRegister(short address, byte value) {
+        int a = GBUtil.zeroExtend(address);
+        if (a <= 0x1FFF) {
+            ramEnabled = (value & 0x0F) == 0x0A;
+        } else if (a <= 0x3FFF) {
+            int bank = value & 0b01111111;
+            highRomBank = wrapRomBank((bank == 0) ? 1 : bank);
+        } else if (a <= 0x5FFF) {
+            ramBankRegister = value & 0x0F;
+            ramBank = wrapRamBank(ramBankRegister & 0b11);
+        } else if (rtc != null) {
+            rtc.writeLatch(value);
+        }
+    }
+
+    /**
+     * @return the real time clock, or null if the cartridge has none
+     */
+    public RealTimeClock getRealTimeClock() {
+        return rtc;
+    }
+
+    @Override
+    public int getRamOffset() {
+        return (ramBankRegister <= 0x03) ? super.getRamOffset() : -1;
+    }
+
+    @Override
+    public byte readRam(short address) {
+        if (ramEnabled && isRtcSelected()) {
+            return rtc.read(ramBankRegister);
+        }
+        return super.readRam(address);
+    }
+
+    @Override
+    public void writeRam(short address, byte value) {
+        if (ramEnabled && isRtcSelected()) {
+            rtc.write(ramBankRegister, value);
+        } else {
+            super.writeRam(address, value);
+        }
+    }
+
+    private boolean isRtcSelected() {
+        return rtc != null && RealTimeClock.SECONDS <= ramBankRegister && ramBankRegister <= RealTimeClock.DAYS_HIGH;
+    }
+}
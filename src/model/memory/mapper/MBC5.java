@@ -0,0 +1,30 @@
+package model.memory.mapper;
+
+import util.GBUtil;
+
+/**
+ * MBC5: up to 8 MB of ROM with a 9 bit ROM bank register, and 128 KB of RAM.
+ * Unlike the other mappers, bank 0 can be mapped to 0x4000-0x7FFF too.
+ */
+public class MBC5 extends Mapper {
+    private int romBankRegister = 1;
+
+    public MBC5(byte[] rom, byte[] ram) {
+        super(rom, ram);
+    }
+
+    @Override
+    public void writeRegister(short address, byte value) {
+        int a = GBUtil.zeroExtend(address);
+        if (a <= 0x1FFF) {
+            ramEnabled = (value & 0x0F) == 0x0A;
+        } else if (a <= 0x2FFF) {
+            romBankRegister = (romBankRegister & 0x100) | GBUtil.zeroExtend(value);
+        } else if (a <= 0x3FFF) {
+            romBankRegister = (romBankRegister & 0xFF) | ((value & 1) << 8);
+        } else if (a <= 0x5FFF) {
+            ramBank = wrapRamBank(value & 0x0F);
+        }
+        highRomBank = wrapRomBank(romBankRegister);
+    }
+}
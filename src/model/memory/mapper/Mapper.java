@@ -0,0 +1,203 @@
+package model.memory.mapper;
+
+import model.Clock;
+import util.Constants;
+
+import java.util.Arrays;
+
+/**
+ * A cartridge's memory bank controller. It decides which ROM banks are mapped to 0x0000-0x3FFF and 0x4000-0x7FFF,
+ * and which RAM bank to 0xA000-0xBFFF, based on writes to its registers in 0x0000-0x7FFF.
+ * Memory maps the banks straight into its page table after every register write, using getLowRomOffset,
+ * getHighRomOffset and getRamOffset, so an access costs the same whatever the mapper.
+ */
+public abstract class Mapper {
+    private static final int CARTRIDGE_TYPE_ADDRESS = 0x147;
+    private static final int ROM_SIZE_ADDRESS = 0x148;
+    private static final int RAM_SIZE_ADDRESS = 0x149;
+    public static final int RAM_PAGE_SIZE = 0x100;
+
+    protected final byte[] rom; // the whole ROM, romBankCount banks of 16 KB
+    protected final byte[] ram; // the whole cartridge RAM, can be empty
+    protected final int romBankCount; // always a power of 2
+
+    protected int lowRomBank = 0; // bank mapped to 0x0000-0x3FFF
+    protected int highRomBank = 1; // bank mapped to 0x4000-0x7FFF
+    protected int ramBank = 0; // bank mapped to 0xA000-0xBFFF, 8 KB each
+    protected boolean ramEnabled = false;
+    private boolean battery; // true = RAM is kept in a save file while the game isn't running
+    private final boolean[] dirtyRamPages; // pages of RAM_PAGE_SIZE bytes written since the last clearDirtyRamPages
+    private boolean ramDirty; // true = any of dirtyRamPages is set
+
+    protected Mapper(byte[] rom, byte[] ram) {
+        this.rom = rom;
+        this.ram = ram;
+        this.romBankCount = rom.length / Constants.kb16;
+        this.dirtyRamPages = new boolean[(ram.length + RAM_PAGE_SIZE - 1) / RAM_PAGE_SIZE];
+    }
+
+    /**
+     * @return the mapper the cartridge header asks for, with the cartridge copied into its ROM.
+     *         Cartridges with an unknown mapper are treated as if they had none.
+     * @param clock time source of the cartridge's real time clock, if it has one
+     */
+    public static Mapper create(byte[] cartridge, Clock clock) {
+        int romBankCount = switch (cartridge[ROM_SIZE_ADDRESS]) {
+            case (byte) 0x1 -> 4;
+            case (byte) 0x2 -> 8;
+            case (byte) 0x3 -> 16;
+            case (byte) 0x4 -> 32;
+            case (byte) 0x5 -> 64;
+            case (byte) 0x6 -> 128;
+            case (byte) 0x7 -> 256;
+            case (byte) 0x8 -> 512;
+            default -> 2; // 0x0 case, no banking beyond the 2 already present in cartridge
+        };
+        int ramBankCount = switch (cartridge[RAM_SIZE_ADDRESS]) {
+            case (byte) 0x2 -> 1;
+            case (byte) 0x3 -> 4;
+            case (byte) 0x4 -> 16;
+            case (byte) 0x5 -> 8;
+            default -> 0; // 0x0 case, no RAM present in cartridge
+        };
+        byte[] rom = new byte[romBankCount * Constants.kb16];
+        System.arraycopy(cartridge, 0, rom, 0, Math.min(cartridge.length, rom.length));
+        byte[] ram = new byte[ramBankCount * Constants.kb8];
+
+        Mapper mapper = switch (cartridge[CARTRIDGE_TYPE_ADDRESS]) {
+            case (byte) 0x01, (byte) 0x02, (byte) 0x03 -> MBC1M.isMulticart(rom) ? new MBC1M(rom, ram) : new MBC1(rom, ram);
+            case (byte) 0x05, (byte) 0x06 -> new MBC2(rom);
+            case (byte) 0x0F, (byte) 0x10 -> new MBC3(rom, ram, new RealTimeClock(clock));
+            case (byte) 0x11, (byte) 0x12, (byte) 0x13 -> new MBC3(rom, ram, null);
+            case (byte) 0x19, (byte) 0x1A, (byte) 0x1B, (byte) 0x1C, (byte) 0x1D, (byte) 0x1E -> new MBC5(rom, ram);
+            default -> new NoMapper(rom, ram); // 0x0 case, and the ones that aren't implemented
+        };
+        mapper.battery = switch (cartridge[CARTRIDGE_TYPE_ADDRESS]) {
+            case (byte) 0x03, (byte) 0x06, (byte) 0x09, (byte) 0x0F, (byte) 0x10, (byte) 0x13, (byte) 0x1B, (byte) 0x1E -> true;
+            default -> false;
+        };
+        return mapper;
+    }
+
+    /**
+     * Handles a write to 0x0000-0x7FFF.
+     */
+    public abstract void writeRegister(short address, byte value);
+
+    public byte[] getRom() {
+        return rom;
+    }
+
+    public byte[] getRam() {
+        return ram;
+    }
+
+    public int getRomBankCount() {
+        return romBankCount;
+    }
+
+    public boolean isRamEnabled() {
+        return ramEnabled;
+    }
+
+    /**
+     * @return true if RAM is kept in a save file while the game isn't running
+     */
+    public boolean hasBattery() {
+        return battery;
+    }
+
+    /**
+     * @return true if RAM was written through writeRam since the last clearDirtyRamPages
+     */
+    public boolean isRamDirty() {
+        return ramDirty;
+    }
+
+    /**
+     * @return one flag per RAM_PAGE_SIZE bytes of getRam, set if the page was written since the last clearDirtyRamPages
+     */
+    public boolean[] getDirtyRamPages() {
+        return dirtyRamPages;
+    }
+
+    public void clearDirtyRamPages() {
+        Arrays.fill(dirtyRamPages, false);
+        ramDirty = false;
+    }
+
+    public int getLowRomBank() {
+        return lowRomBank;
+    }
+
+    public int getHighRomBank() {
+        return highRomBank;
+    }
+
+    /**
+     * @return true if register writes can map a bank other than 0 to 0x0000-0x3FFF
+     */
+    public boolean canRemapLowRom() {
+        return false;
+    }
+
+    /**
+     * @return the offset in getRom of the bank mapped to 0x0000-0x3FFF
+     */
+    public int getLowRomOffset() {
+        return lowRomBank * Constants.kb16;
+    }
+
+    /**
+     * @return the offset in getRom of the bank mapped to 0x4000-0x7FFF
+     */
+    public int getHighRomOffset() {
+        return highRomBank * Constants.kb16;
+    }
+
+    /**
+     * @return the offset in getRam of the bank mapped to 0xA000-0xBFFF, or -1 if accesses there
+     *         have to go through readRam and writeRam, e.g. because RAM is disabled
+     */
+    public int getRamOffset() {
+        return (ramEnabled && ram.length > 0) ? ramBank * Constants.kb8 : -1;
+    }
+
+    /**
+     * Reads 0xA000-0xBFFF while getRamOffset is -1.
+     */
+    public byte readRam(short address) {
+        return (byte) 0xFF; // technically not guaranteed to return this
+    }
+
+    /**
+     * Writes 0xA000-0xBFFF while it isn't mapped for writing: while getRamOffset is -1,
+     * or always if Memory tracks the writes for the save file.
+     */
+    public void writeRam(short address, byte value) {
+        int ramOffset = getRamOffset();
+        if (ramOffset >= 0) {
+            int index = ramOffset + (address & (Constants.kb8 - 1));
+            ram[index] = value;
+            markRamDirty(index);
+        }
+        // otherwise RAM is disabled, the write is ignored
+    }
+
+    /**
+     * @return bank, wrapped around the number of banks like the unused upper bits of a bank register are
+     */
+    protected int wrapRomBank(int bank) {
+        return bank & (romBankCount - 1);
+    }
+
+    protected void markRamDirty(int index) {
+        dirtyRamPages[index / RAM_PAGE_SIZE] = true;
+        ramDirty = true;
+    }
+
+    protected int wrapRamBank(int bank) {
+        int ramBankCount = ram.length / Constants.kb8;
+        return (ramBankCount == 0) ? 0 : bank & (ramBankCount - 1);
+    }
+}
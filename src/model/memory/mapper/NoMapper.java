@@ -0,0 +1,16 @@
+package model.memory.mapper;
+
+/**
+ * A cartridge without a memory bank controller: 32 KB of ROM, and RAM that is always enabled if there is any.
+ */
+public class NoMapper extends Mapper {
+    public NoMapper(byte[] rom, byte[] ram) {
+        super(rom, ram);
+        ramEnabled = true;
+    }
+
+    @Override
+    public void writeRegister(short address, byte value) {
+        // there are no registers, ROM is read only
+    }
+}
@@ -0,0 +1,192 @@
+package model.memory.mapper;
+
+import model.Clock;
+
+/**
+ * MBC3's real time clock. It doesn't tick: the time is kept as a number of seconds counted at some point,
+ * and the seconds that have passed since are derived from the emulated Clock (or the host's clock in
+ * real time mode) only when the registers are latched or written.
+ * Register values that can't be reached by counting, like 60 seconds, are folded into the total
+ * when written, so they read back as the equivalent valid time.
+ */
+public class RealTimeClock {
+    public static final int SECONDS = 0x08;
+    public static final int MINUTES = 0x09;
+    public static final int HOURS = 0x0A;
+    public static final int DAYS_LOW = 0x0B;
+    public static final int DAYS_HIGH = 0x0C; // bit 0 = day bit 8, bit 6 = halt, bit 7 = day counter carry
+    public static final int STATE_SIZE = 48; // the layout used in .sav files by other emulators
+
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+    private static final long MAX_SECONDS = 512 * SECONDS_PER_DAY; // the day counter has 9 bits
+
+    private final Clock clock;
+    private boolean realTime; // true = time passes with the host's clock, false = with the emulated Clock
+    private long baseSeconds; // seconds on the clock at baseTime, less than MAX_SECONDS
+    private long baseTime; // getTime when baseSeconds was counted
+    private boolean halted;
+    private boolean dayCarry;
+    private final byte[] latched = new byte[5]; // the registers as of the last latch, by register - SECONDS
+    private boolean latchArmed; // true = 0x00 was written to the latch register last
+    private long offlineSeconds; // host seconds from saving to loading the last loaded state, not counted yet
+
+    public RealTimeClock(Clock clock) {
+        this.clock = clock;
+        baseTime = getTime();
+        latchRegisters();
+    }
+
+    public boolean isRealTime() {
+        return realTime;
+    }
+
+    /**
+     * @param realTime true = time passes with the host's clock, false = with the emulated Clock.
+     *                 The current time is kept. Switching to real time mode also counts the time that passed
+     *                 on the host between saving and loading the state loaded last, if it isn't counted yet.
+     */
+    public void setRealTime(boolean realTime) {
+        update();
+        if (realTime && !this.realTime && !halted) {
+            addSeconds(offlineSeconds);
+            offlineSeconds = 0;
+        }
+        this.realTime = realTime;
+        baseTime = getTime();
+    }
+
+    /**
+     * Handles a write to 0x6000-0x7FFF. Writing 0x00 and then 0x01 copies the current time into the registers.
+     */
+    public void writeLatch(byte value) {
+        if (latchArmed && value == 0x01) {
+            latchRegisters();
+        }
+        latchArmed = value == 0x00;
+    }
+
+    /**
+     * @return the latched value of register, SECONDS to DAYS_HIGH
+     */
+    public byte read(int register) {
+        return latched[register - SECONDS];
+    }
+
+    /**
+     * Sets register, SECONDS to DAYS_HIGH, of the running clock. Writing the seconds also restarts the current second.
+     */
+    public void write(int register, byte value) {
+        update();
+        long seconds = baseSeconds % 60;
+        long minutes = baseSeconds / 60 % 60;
+        long hours = baseSeconds / (60 * 60) % 24;
+        long days = baseSeconds / SECONDS_PER_DAY;
+        switch (register) {
+            case SECONDS -> {
+                seconds = value & 0b00111111;
+                baseTime = getTime();
+            }
+            case MINUTES -> minutes = value & 0b00111111;
+            case HOURS -> hours = value & 0b00011111;
+            case DAYS_LOW -> days = (days & 0x100) | (value & 0xFF);
+            case DAYS_HIGH -> {
+                days = (days & 0xFF) | ((value & 1) << 8);
+                dayCarry = (value & 0b10000000) != 0;
+                halted = (value & 0b01000000) != 0;
+            }
+            default -> {
+                return;
+            }
+        }
+        baseSeconds = (((days * 24 + hours) * 60 + minutes) * 60 + seconds) % MAX_SECONDS;
+        latched[register - SECONDS] = value;
+    }
+
+    /**
+     * @return the clock's registers (running and latched) and the host's time, STATE_SIZE bytes,
+     *         in the layout other emulators append to .sav files
+     */
+    public byte[] save() {
+        update();
+        byte[] state = new byte[STATE_SIZE];
+        byte[] current = getRegisters();
+        for (int i = 0; i < 5; i++) {
+            state[i * 4] = current[i];
+            state[20 + i * 4] = latched[i];
+        }
+        long timestamp = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < 8; i++) {
+            state[40 + i] = (byte) (timestamp >>> (i * 8));
+        }
+        return state;
+    }
+
+    /**
+     * Restores a state from save. The time that passed on the host since is added in real time mode,
+     * or once setRealTime switches to it.
+     */
+    public void load(byte[] state) {
+        for (int register = SECONDS; register <= DAYS_HIGH; register++) {
+            write(register, state[(register - SECONDS) * 4]);
+        }
+        for (int i = 0; i < 5; i++) {
+            latched[i] = state[20 + i * 4];
+        }
+        long timestamp = 0;
+        for (int i = 0; i < 8; i++) {
+            timestamp |= (state[40 + i] & 0xFFL) << (i * 8);
+        }
+        offlineSeconds = Math.max(0, System.currentTimeMillis() / 1000 - timestamp);
+        if (realTime && !halted) {
+            addSeconds(offlineSeconds);
+            offlineSeconds = 0;
+        }
+        baseTime = getTime();
+    }
+
+    private long getTime() {
+        return realTime ? System.currentTimeMillis() : clock.getMCycles();
+    }
+
+    private long getTicksPerSecond() {
+        return realTime ? 1000 : Clock.M_CYCLES_PER_SECOND;
+    }
+
+    /**
+     * Counts the whole seconds that passed since baseTime into baseSeconds.
+     */
+    private void update() {
+        long time = getTime();
+        if (halted) {
+            baseTime = time;
+            return;
+        }
+        long seconds = (time - baseTime) / getTicksPerSecond();
+        baseTime += seconds * getTicksPerSecond();
+        addSeconds(seconds);
+    }
+
+    private void addSeconds(long seconds) {
+        baseSeconds += seconds;
+        if (baseSeconds >= MAX_SECONDS) {
+            dayCarry = true; // stays set until it is written
+            baseSeconds %= MAX_SECONDS;
+        }
+    }
+
+    private void latchRegisters() {
+        update();
+        System.arraycopy(getRegisters(), 0, latched, 0, latched.length);
+    }
+
+    private byte[] getRegisters() {
+        long days = baseSeconds / SECONDS_PER_DAY;
+        return new byte[] {
+                (byte) (baseSeconds % 60),
+                (byte) (baseSeconds / 60 % 60),
+                (byte) (baseSeconds / (60 * 60) % 24),
+                (byte) days,
+                (byte) ((days >>> 8) | (halted ? 0b01000000 : 0) | (dayCarry ? 0b10000000 : 0))
+        };
+    }
+}
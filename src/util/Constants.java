@@ -21,17 +21,6 @@ public class Constants {
     public static final short IO_REGISTERS_END = (short) 0xFF7F;
     public static final short HRAM_START = (short) 0xFF80;
     public static final short HRAM_END = (short) 0xFFFE;
-    // TODO THESE CONSTANTS ARE WRITTEN ASSUMING MBC1/MBC0 ONLY!
-    public static final short RAM_ENABLE_START = (short) 0x0000; // write here to enable or disable external ram
-    public static final short RAM_ENABLE_END = (short) 0x1FFF;
-    public static final short ROM_BANK_START = (short) 0x2000; // write here to select lower 5 bits of rom bank number
-    public static final short ROM_BANK_END = (short) 0x3FFF;
-    public static final short ROM_RAM_MODE_SELECT_START = (short) 0x6000; // write here to select extended ROM or RAM mode
-    public static final short ROM_RAM_MODE_SELECT_END = (short) 0x7FFF;
-    public static final short RAM_BANK_OR_UPPER_ROM_BANK_BIT_START_ADDRESS = (short) 0x4000;
-    // write here to select upper 2 bits of ROM bank number or RAM bank number
-    public static final short RAM_BANK_OR_UPPER_ROM_BANK_BIT_END_ADDRESS = (short) 0x5FFF;
-    // todo end MBC1/MBC 0
     public static final short DIV_ADDRESS = (short) 0xFF04;
     public static final short TIMA_ADDRESS = (short) 0xFF05;
     public static final short TMA_ADDRESS = (short) 0xFF06;
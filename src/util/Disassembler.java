@@ -0,0 +1,62 @@
+package util;
+
+import exception.MemoryException;
+import model.cpu.OpcodeInfo;
+import model.cpu.OpcodeTable;
+import model.memory.AccessKind;
+import model.memory.Memory;
+
+public class Disassembler {
+
+    /**
+     * Disassembles the instruction at address, without ticking memory or side effects.
+     * @return the instruction with its immediates filled in, e.g. "LD A, $3C" or "JR NZ, -5"
+     */
+    public static String disassemble(Memory memory, short address) {
+        byte opcode = peek(memory, address);
+        OpcodeInfo info = getOpcodeInfo(memory, address);
+        if (info == null) {
+            return "ILLEGAL $" + String.format("%02X", opcode);
+        }
+
+        byte lsb = peek(memory, (short) (address + 1));
+        byte msb = peek(memory, (short) (address + 2));
+        String i8 = ((lsb < 0) ? "-" : "+") + Math.abs(lsb);
+        return info.getMnemonic()
+                .replace("u16", String.format("$%04X", GBUtil.zeroExtend(GBUtil.getShortFromBytes(lsb, msb))))
+                .replace("u8", String.format("$%02X", lsb))
+                .replace("+i8", i8)
+                .replace("i8", i8);
+    }
+
+    /**
+     * @return the length in bytes of the instruction at address, 1 for illegal opcodes.
+     */
+    public static int getInstructionLength(Memory memory, short address) {
+        OpcodeInfo info = getOpcodeInfo(memory, address);
+        return (info == null) ? 1 : info.getLength();
+    }
+
+    /**
+     * @return the description of the instruction at address, looking past the CB prefix if there is one.
+     *         null if it is an illegal opcode.
+     */
+    public static OpcodeInfo getOpcodeInfo(Memory memory, short address) {
+        byte opcode = peek(memory, address);
+        if (opcode == (byte) 0xCB) {
+            return OpcodeTable.getCBOpcodeInfo(peek(memory, (short) (address + 1)));
+        }
+        return OpcodeTable.getOpcodeInfo(opcode);
+    }
+
+    /**
+     * @return the byte at address, or 0xFF if it is in the unusable area, so code right before it can still be shown
+     */
+    private static byte peek(Memory memory, short address) {
+        try {
+            return memory.read(address, AccessKind.PEEK);
+        } catch (MemoryException e) {
+            return (byte) 0xFF;
+        }
+    }
+}
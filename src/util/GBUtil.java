@@ -3,58 +3,75 @@ package util;
 import exception.CPUException;
 import model.cpu.CPU;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.function.BiConsumer;
-import java.util.function.Function;
-
 public class GBUtil {
     public static final int UNSIGNED_SHORT_MAX = 65535;
     public static final int UNSIGNED_12_BIT_MAX = 4095;
     public static final int UNSIGNED_BYTE_MAX = 255;
     public static final int UNSIGNED_NIBBLE_MAX = 15;
 
-    public static final List<Function<CPU, Byte>> INSTRUCTION_TO_GET_R8_MAP = Arrays.asList(
-            CPU::getRb,
-            CPU::getRc,
-            CPU::getRd,
-            CPU::getRe,
-            CPU::getRh,
-            CPU::getRl,
-            (CPU cpu) -> {
-                short hl = cpu.getRegisterHL();
-                return cpu.getMemory().getByte(hl);
-            },
-            CPU::getRa
-    );
-
-    public static final List<BiConsumer<Byte, CPU>> INSTRUCTION_TO_SET_R8_MAP = Arrays.asList(
-            (Byte b, CPU cpu) -> cpu.setRb(b),
-            (Byte b, CPU cpu) -> cpu.setRc(b),
-            (Byte b, CPU cpu) -> cpu.setRd(b),
-            (Byte b, CPU cpu) -> cpu.setRe(b),
-            (Byte b, CPU cpu) -> cpu.setRh(b),
-            (Byte b, CPU cpu) -> cpu.setRl(b),
-            (Byte b, CPU cpu) -> {
-                short hl = cpu.getRegisterHL();
-                cpu.getMemory().setByte(b, hl);
-            },
-            (Byte b, CPU cpu) -> cpu.setRa(b)
-    );
-
-    public static final List<Function<CPU, Short>> INSTRUCTION_TO_GET_R16_SP_MAP = Arrays.asList(
-            CPU::getRegisterBC,
-            CPU::getRegisterDE,
-            CPU::getRegisterHL,
-            CPU::getStackPointer
-    );
-
-    public static final List<BiConsumer<Short, CPU>> INSTRUCTION_TO_SET_R16_SP_MAP = Arrays.asList(
-            (Short s, CPU cpu) -> cpu.setRegisterBC(s),
-            (Short s, CPU cpu) -> cpu.setRegisterDE(s),
-            (Short s, CPU cpu) -> cpu.setRegisterHL(s),
-            (Short s, CPU cpu) -> cpu.setStackPointer(s)
-    );
+    /**
+     * @param r8 the 3 bit register operand of an instruction, in [0,7].
+     *           In order: B, C, D, E, H, L, (HL), A
+     * @return the value of the register. (HL) reads the byte at the address in HL.
+     */
+    public static byte getR8(int r8, CPU cpu) {
+        return switch (r8) {
+            case 0 -> cpu.getRb();
+            case 1 -> cpu.getRc();
+            case 2 -> cpu.getRd();
+            case 3 -> cpu.getRe();
+            case 4 -> cpu.getRh();
+            case 5 -> cpu.getRl();
+            case 6 -> cpu.getMemory().getByte(cpu.getRegisterHL());
+            default -> cpu.getRa();
+        };
+    }
+
+    /**
+     * @param r8 the 3 bit register operand of an instruction, in [0,7].
+     *           In order: B, C, D, E, H, L, (HL), A
+     * @param value the value to write to the register. (HL) writes to the byte at the address in HL.
+     */
+    public static void setR8(int r8, byte value, CPU cpu) {
+        switch (r8) {
+            case 0 -> cpu.setRb(value);
+            case 1 -> cpu.setRc(value);
+            case 2 -> cpu.setRd(value);
+            case 3 -> cpu.setRe(value);
+            case 4 -> cpu.setRh(value);
+            case 5 -> cpu.setRl(value);
+            case 6 -> cpu.getMemory().setByte(value, cpu.getRegisterHL());
+            default -> cpu.setRa(value);
+        }
+    }
+
+    /**
+     * @param r16 the 2 bit register operand of an instruction, in [0,3].
+     *            In order: BC, DE, HL, SP
+     * @return the value of the register
+     */
+    public static short getR16SP(int r16, CPU cpu) {
+        return switch (r16) {
+            case 0 -> cpu.getRegisterBC();
+            case 1 -> cpu.getRegisterDE();
+            case 2 -> cpu.getRegisterHL();
+            default -> cpu.getStackPointer();
+        };
+    }
+
+    /**
+     * @param r16 the 2 bit register operand of an instruction, in [0,3].
+     *            In order: BC, DE, HL, SP
+     * @param value the value to write to the register
+     */
+    public static void setR16SP(int r16, short value, CPU cpu) {
+        switch (r16) {
+            case 0 -> cpu.setRegisterBC(value);
+            case 1 -> cpu.setRegisterDE(value);
+            case 2 -> cpu.setRegisterHL(value);
+            default -> cpu.setStackPointer(value);
+        }
+    }
 
     /**
      * @param b the byte to get the bit from
@@ -175,7 +192,7 @@ public class GBUtil {
      * @param msb the most significant byte
      * @return a short constructed from lsb and msb
      */
-    public static Short getShortFromBytes(byte lsb, byte msb) {
+    public static short getShortFromBytes(byte lsb, byte msb) {
         return (short) (zeroExtend(lsb) + (zeroExtend(msb) << 8));
     }
 
@@ -1,5 +1,7 @@
 package util;
 
+import java.lang.management.ManagementFactory;
+
 public class TestUtil {
 
     /**
@@ -31,5 +33,13 @@ public class TestUtil {
         return Integer.toString(GBUtil.zeroExtend(s));
     }
 
-
+    /**
+     * @return the total number of bytes allocated on the heap by the current thread so far.
+     * Take the difference of two calls to find how much some code allocates.
+     */
+    public static long getThreadAllocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
 }
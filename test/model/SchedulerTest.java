@@ -0,0 +1,82 @@
+package model;
+
+import model.memory.Memory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import util.Constants;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchedulerTest {
+    Scheduler scheduler;
+
+    @BeforeEach
+    public void setup() {
+        scheduler = new Scheduler();
+    }
+
+    @Test
+    public void testScheduleAndPop() {
+        assertEquals(Scheduler.NEVER, scheduler.getNextEventCycle());
+        assertNull(scheduler.popDueEvent(1000));
+
+        scheduler.schedule(Scheduler.Event.TIMER, 100);
+        assertEquals(100, scheduler.getNextEventCycle());
+        assertEquals(100, scheduler.getEventCycle(Scheduler.Event.TIMER));
+        assertNull(scheduler.popDueEvent(99));
+
+        // scheduling again moves the event, in both directions
+        scheduler.schedule(Scheduler.Event.TIMER, 50);
+        assertEquals(50, scheduler.getNextEventCycle());
+        scheduler.schedule(Scheduler.Event.TIMER, 200);
+        assertEquals(200, scheduler.getNextEventCycle());
+
+        assertEquals(Scheduler.Event.TIMER, scheduler.popDueEvent(250));
+        assertEquals(Scheduler.NEVER, scheduler.getNextEventCycle());
+        assertEquals(Scheduler.NEVER, scheduler.getEventCycle(Scheduler.Event.TIMER));
+        assertNull(scheduler.popDueEvent(250));
+    }
+
+    @Test
+    public void testCancel() {
+        scheduler.cancel(Scheduler.Event.TIMER); // not scheduled, nothing happens
+        scheduler.schedule(Scheduler.Event.TIMER, 10);
+        scheduler.cancel(Scheduler.Event.TIMER);
+        assertEquals(Scheduler.NEVER, scheduler.getNextEventCycle());
+        assertNull(scheduler.popDueEvent(10));
+    }
+
+    /*
+    The timer only schedules its overflow and the TMA reload after it, and none while it is stopped.
+    TIMA is derived from the clock in between.
+     */
+    @Test
+    public void testTimerEvents() {
+        Memory memory = new Memory();
+        memory.doMCycle();
+        assertEquals(Scheduler.NEVER, memory.getScheduler().getNextEventCycle());
+
+        memory.setByte((byte) 0xE0, Constants.TMA_ADDRESS);
+        memory.setByte((byte) 0xFD, Constants.TIMA_ADDRESS);
+        memory.setByte((byte) 0b00000101, Constants.TAC_ADDRESS); // every 4 M-cycles, takes effect in setByte's M-cycle
+        long overflow = memory.getScheduler().getNextEventCycle();
+        assertEquals(0, overflow % 4); // the system clock starts at 0, so bit 3 falls every 4 M-cycles
+        assertEquals(12, overflow - memory.getClock().getMCycles()); // 3 increments
+
+        while (memory.getClock().getMCycles() < overflow - 4) {
+            memory.doMCycle();
+        }
+        assertEquals((byte) 0xFF, memory.getByteNoTick(Constants.TIMA_ADDRESS));
+        assertEquals(overflow, memory.getScheduler().getNextEventCycle());
+        for (int i = 0; i < 4; i++) {
+            memory.doMCycle();
+        }
+        assertEquals((byte) 0x00, memory.getByteNoTick(Constants.TIMA_ADDRESS));
+        assertEquals(overflow + 1, memory.getScheduler().getNextEventCycle()); // TMA reload
+
+        memory.doMCycle();
+        assertEquals((byte) 0xE0, memory.getByteNoTick(Constants.TIMA_ADDRESS));
+        assertEquals(1, memory.getTimerIF());
+        assertEquals(overflow + 32 * 4, memory.getScheduler().getNextEventCycle());
+    }
+}
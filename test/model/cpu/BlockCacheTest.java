@@ -0,0 +1,191 @@
+package model.cpu;
+
+import org.junit.jupiter.api.Test;
+import util.Constants;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockCacheTest {
+    // timer interrupt every 64 M-cycles, while a loop ending at 0x11E writes to 0xC100-0xC13F
+    static final byte[] TIMER_PROGRAM = {
+            (byte) 0x3E, (byte) 0xF0,               // LD A, $F0
+            (byte) 0xE0, (byte) 0x06,               // LD (FF00+$06), A    TMA
+            (byte) 0xE0, (byte) 0x05,               // LD (FF00+$05), A    TIMA
+            (byte) 0x3E, (byte) 0x05,               // LD A, $05
+            (byte) 0xE0, (byte) 0x07,               // LD (FF00+$07), A    TAC
+            (byte) 0x3E, (byte) 0x04,               // LD A, $04
+            (byte) 0xEA, (byte) 0xFF, (byte) 0xFF,  // LD ($FFFF), A       IE
+            (byte) 0xFB,                            // EI
+            (byte) 0x06, (byte) 0x40,               // LD B, $40
+            (byte) 0x21, (byte) 0x00, (byte) 0xC1,  // LD HL, $C100
+            (byte) 0x78,                            // LD A, B          <- 0x115
+            (byte) 0x22,                            // LD (HL+), A
+            (byte) 0xCB, (byte) 0x37,               // SWAP A
+            (byte) 0x80,                            // ADD A, B
+            (byte) 0x27,                            // DAA
+            (byte) 0x05,                            // DEC B
+            (byte) 0x20, (byte) 0xF7,               // JR NZ, -9
+            (byte) 0x18, (byte) 0xFE                // JR -2            <- 0x11E
+    };
+
+    static final byte[] TIMER_HANDLER = {
+            (byte) 0x1C,                            // INC E
+            (byte) 0xD9                             // RETI
+    };
+
+    static void loadProgram(CPU cpu, byte[] program, int address) {
+        for (int i = 0; i < program.length; i++) {
+            if (address + i <= 0x7FFF) {
+                cpu.getMemory().setByteRom(program[i], (short) (address + i));
+            } else {
+                cpu.getMemory().setByte(program[i], (short) (address + i));
+            }
+        }
+    }
+
+    static void runUntil(CPU cpu, int address) {
+        for (int i = 0; i < 100000 && cpu.getProgramCounter() != (short) address; i++) {
+            cpu.doInstructionCycle();
+        }
+        assertEquals((short) address, cpu.getProgramCounter());
+    }
+
+    static void assertSameState(CPU expected, CPU actual) {
+        assertEquals(expected.getRegisterAF(), actual.getRegisterAF());
+        assertEquals(expected.getRegisterBC(), actual.getRegisterBC());
+        assertEquals(expected.getRegisterDE(), actual.getRegisterDE());
+        assertEquals(expected.getRegisterHL(), actual.getRegisterHL());
+        assertEquals(expected.getStackPointer(), actual.getStackPointer());
+        assertEquals(expected.getIME(), actual.getIME());
+        // timers only match if every instruction took the same number of M-cycles
+        for (short address : new short[] {Constants.DIV_ADDRESS, Constants.TIMA_ADDRESS, Constants.IF_ADDRESS}) {
+            assertEquals(expected.getMemory().getByteNoTick(address), actual.getMemory().getByteNoTick(address));
+        }
+    }
+
+    /*
+    Runs a loop in ROM while the timer interrupt fires every 64 M-cycles, and checks that
+    the block cache ends up in exactly the same state as executing one instruction at a time.
+     */
+    @Test
+    public void testBlockCacheMatchesInterpreter() {
+        CPU interpreter = new CPU();
+        CPU cached = new CPU();
+        for (CPU cpu : new CPU[] {interpreter, cached}) {
+            loadProgram(cpu, TIMER_PROGRAM, 0x100);
+            loadProgram(cpu, TIMER_HANDLER, Constants.TIMER_HANDLER_ADDRESS);
+        }
+        cached.setBlockCache(true);
+        assertTrue(cached.isBlockCache());
+
+        runUntil(interpreter, 0x11E);
+        runUntil(cached, 0x11E);
+
+        assertSameState(interpreter, cached);
+        assertNotEquals((byte) 0xD8, cached.getRe()); // some timer interrupts happened
+        for (int address = 0xC100; address < 0xC140; address++) {
+            assertEquals(interpreter.getMemory().getByteNoTick((short) address),
+                    cached.getMemory().getByteNoTick((short) address));
+        }
+    }
+
+    /*
+    The first instruction of a block in WRAM overwrites its own opcode, INC B, with INC C.
+    Later iterations must execute INC C.
+     */
+    @Test
+    public void testSelfModifyingCode() {
+        byte[] program = {
+                (byte) 0x04,                            // INC B            <- 0xC000
+                (byte) 0x21, (byte) 0x00, (byte) 0xC0,  // LD HL, $C000
+                (byte) 0x36, (byte) 0x0C,               // LD (HL), $0C     (INC C)
+                (byte) 0x15,                            // DEC D
+                (byte) 0x20, (byte) 0xF7,               // JR NZ, -9
+                (byte) 0x18, (byte) 0xFE                // JR -2            <- 0xC009
+        };
+        CPU interpreter = new CPU();
+        CPU cached = new CPU();
+        cached.setBlockCache(true);
+        for (CPU cpu : new CPU[] {interpreter, cached}) {
+            loadProgram(cpu, program, 0xC000);
+            cpu.setRb((byte) 0);
+            cpu.setRc((byte) 0);
+            cpu.setRd((byte) 3);
+            cpu.setProgramCounter((short) 0xC000);
+            runUntil(cpu, 0xC009);
+        }
+
+        assertEquals((byte) 1, cached.getRb());
+        assertEquals((byte) 2, cached.getRc());
+        assertSameState(interpreter, cached);
+    }
+
+    /*
+    Calls 0x4000 with ROM bank 1 and then bank 2 mapped. The block cached for bank 1
+    must not be executed for bank 2.
+     */
+    @Test
+    public void testBankSwitch() {
+        byte[] cartridge = new byte[Constants.kb16 * 4];
+        cartridge[0x147] = (byte) 0x01; // MBC1
+        cartridge[0x148] = (byte) 0x01; // 4 ROM banks
+        byte[] program = {
+                (byte) 0x3E, (byte) 0x01,               // LD A, $01
+                (byte) 0xEA, (byte) 0x00, (byte) 0x20,  // LD ($2000), A
+                (byte) 0xCD, (byte) 0x00, (byte) 0x40,  // CALL $4000
+                (byte) 0x3E, (byte) 0x02,               // LD A, $02
+                (byte) 0xEA, (byte) 0x00, (byte) 0x20,  // LD ($2000), A
+                (byte) 0xCD, (byte) 0x00, (byte) 0x40,  // CALL $4000
+                (byte) 0x18, (byte) 0xFE                // JR -2            <- 0x110
+        };
+        System.arraycopy(program, 0, cartridge, 0x100, program.length);
+        cartridge[Constants.kb16] = (byte) 0x04; // bank 1: INC B
+        cartridge[Constants.kb16 + 1] = (byte) 0xC9; // RET
+        cartridge[Constants.kb16 * 2] = (byte) 0x0C; // bank 2: INC C
+        cartridge[Constants.kb16 * 2 + 1] = (byte) 0xC9; // RET
+
+        CPU cpu = new CPU(cartridge);
+        cpu.setBlockCache(true);
+        cpu.setRb((byte) 0);
+        cpu.setRc((byte) 0);
+        runUntil(cpu, 0x110);
+
+        assertEquals((byte) 1, cpu.getRb());
+        assertEquals((byte) 1, cpu.getRc());
+        assertEquals(2, cpu.getMemory().getCurrentRomBank());
+    }
+
+    /*
+    MBC5 can map bank 0 to 0x4000-0x7FFF too, which must not be mistaken for the code at 0x0000-0x3FFF.
+     */
+    @Test
+    public void testBankZeroInBothRegions() {
+        byte[] cartridge = new byte[4 * Constants.kb16];
+        cartridge[0x147] = (byte) 0x19; // MBC5
+        cartridge[0x148] = (byte) 0x01; // 4 ROM banks
+        byte[] program = {
+                (byte) 0xAF,                            // XOR A
+                (byte) 0xEA, (byte) 0x00, (byte) 0x20,  // LD ($2000), A
+                (byte) 0xCD, (byte) 0x00, (byte) 0x40,  // CALL $4000
+                (byte) 0xCD, (byte) 0x00, (byte) 0x00,  // CALL $0000
+                (byte) 0x3E, (byte) 0x01,               // LD A, $01
+                (byte) 0xEA, (byte) 0x00, (byte) 0x20,  // LD ($2000), A
+                (byte) 0xCD, (byte) 0x00, (byte) 0x40,  // CALL $4000
+                (byte) 0x18, (byte) 0xFE                // JR -2            <- 0x112
+        };
+        System.arraycopy(program, 0, cartridge, 0x100, program.length);
+        cartridge[0] = (byte) 0x0C; // bank 0: INC C
+        cartridge[1] = (byte) 0xC9; // RET
+        cartridge[Constants.kb16] = (byte) 0x04; // bank 1: INC B
+        cartridge[Constants.kb16 + 1] = (byte) 0xC9; // RET
+
+        CPU cpu = new CPU(cartridge);
+        cpu.setBlockCache(true);
+        cpu.setRb((byte) 0);
+        cpu.setRc((byte) 0);
+        runUntil(cpu, 0x112);
+
+        assertEquals((byte) 1, cpu.getRb());
+        assertEquals((byte) 2, cpu.getRc());
+    }
+}
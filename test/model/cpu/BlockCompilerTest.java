@@ -0,0 +1,194 @@
+package model.cpu;
+
+import exception.CPUException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import util.Constants;
+
+import javax.tools.ToolProvider;
+
+import static model.cpu.BlockCacheTest.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class BlockCompilerTest {
+
+    @BeforeEach
+    public void setup() {
+        // the recompiler needs a JDK
+        assumeTrue(ToolProvider.getSystemJavaCompiler() != null);
+    }
+
+    @Test
+    public void testCompiledBlocksMatchInterpreter() {
+        CPU interpreter = new CPU();
+        CPU compiled = new CPU();
+        for (CPU cpu : new CPU[] {interpreter, compiled}) {
+            loadProgram(cpu, TIMER_PROGRAM, 0x100);
+            loadProgram(cpu, TIMER_HANDLER, Constants.TIMER_HANDLER_ADDRESS);
+        }
+        compiled.setRecompiler(2);
+        assertTrue(compiled.isRecompiler());
+        assertTrue(compiled.isBlockCache());
+
+        runUntil(interpreter, 0x11E);
+        for (int i = 0; i < 3; i++) {
+            runUntil(compiled, 0x115);
+            compiled.doInstructionCycle();
+        }
+        compiled.awaitCompilations();
+        runUntil(compiled, 0x11E);
+
+        assertTrue(compiled.getCompiledBlockCount() > 0);
+        assertSameState(interpreter, compiled);
+        for (int address = 0xC100; address < 0xC140; address++) {
+            assertEquals(interpreter.getMemory().getByteNoTick((short) address),
+                    compiled.getMemory().getByteNoTick((short) address));
+        }
+    }
+
+    /*
+    Calls 0x4000 with ROM bank 1 and then bank 2 mapped, 3 times. Every block is compiled the first time
+    it runs, and the block compiled for bank 1 must not run for bank 2.
+     */
+    @Test
+    public void testCompiledBlocksBankSwitch() {
+        byte[] cartridge = new byte[Constants.kb16 * 4];
+        cartridge[0x147] = (byte) 0x01; // MBC1
+        cartridge[0x148] = (byte) 0x01; // 4 ROM banks
+        byte[] program = {
+                (byte) 0x16, (byte) 0x03,               // LD D, $03
+                (byte) 0x3E, (byte) 0x01,               // LD A, $01           <- 0x102
+                (byte) 0xEA, (byte) 0x00, (byte) 0x20,  // LD ($2000), A
+                (byte) 0xCD, (byte) 0x00, (byte) 0x40,  // CALL $4000
+                (byte) 0x3E, (byte) 0x02,               // LD A, $02
+                (byte) 0xEA, (byte) 0x00, (byte) 0x20,  // LD ($2000), A
+                (byte) 0xCD, (byte) 0x00, (byte) 0x40,  // CALL $4000
+                (byte) 0x15,                            // DEC D
+                (byte) 0x20, (byte) 0xED,               // JR NZ, -19
+                (byte) 0x18, (byte) 0xFE                // JR -2               <- 0x115
+        };
+        System.arraycopy(program, 0, cartridge, 0x100, program.length);
+        cartridge[Constants.kb16] = (byte) 0x04; // bank 1: INC B
+        cartridge[Constants.kb16 + 1] = (byte) 0xC9; // RET
+        cartridge[Constants.kb16 * 2] = (byte) 0x0C; // bank 2: INC C
+        cartridge[Constants.kb16 * 2 + 1] = (byte) 0xC9; // RET
+
+        CPU interpreter = new CPU(cartridge);
+        CPU compiled = new CPU(cartridge);
+        compiled.setRecompiler(1);
+        for (CPU cpu : new CPU[] {interpreter, compiled}) {
+            cpu.setRb((byte) 0);
+            cpu.setRc((byte) 0);
+            runUntil(cpu, 0x112);
+            cpu.awaitCompilations();
+            runUntil(cpu, 0x115);
+        }
+
+        assertTrue(compiled.getCompiledBlockCount() > 0);
+        assertEquals((byte) 3, compiled.getRb());
+        assertEquals((byte) 3, compiled.getRc());
+        assertSameState(interpreter, compiled);
+    }
+
+    /*
+    A loop made only of instructions that BlockCompiler writes out instead of calling their handlers,
+    with memory operands through (HL) and conditional jumps taken and not taken.
+     */
+    private static final byte[] INLINED_PROGRAM = {
+            (byte) 0x21, (byte) 0x00, (byte) 0xC0,  // LD HL, $C000
+            (byte) 0x36, (byte) 0x35,               // LD (HL), $35
+            (byte) 0x06, (byte) 0x10,               // LD B, $10
+            (byte) 0x7E,                            // LD A, (HL)       <- 0x107
+            (byte) 0x80,                            // ADD A, B
+            (byte) 0x8E,                            // ADC A, (HL)
+            (byte) 0xD6, (byte) 0x07,               // SUB A, $07
+            (byte) 0x99,                            // SBC A, C
+            (byte) 0xE6, (byte) 0xF7,               // AND A, $F7
+            (byte) 0xAE,                            // XOR A, (HL)
+            (byte) 0xB0,                            // OR A, B
+            (byte) 0xFE, (byte) 0x40,               // CP A, $40
+            (byte) 0x38, (byte) 0x01,               // JR C, +1
+            (byte) 0x0C,                            // INC C
+            (byte) 0x34,                            // INC (HL)
+            (byte) 0x35,                            // DEC (HL)
+            (byte) 0x35,                            // DEC (HL)
+            (byte) 0x77,                            // LD (HL), A
+            (byte) 0x4E,                            // LD C, (HL)
+            (byte) 0x05,                            // DEC B
+            (byte) 0xC2, (byte) 0x07, (byte) 0x01,  // JP NZ, $0107
+            (byte) 0x18, (byte) 0xFE                // JR -2            <- 0x11F
+    };
+
+    @Test
+    public void testInlinedInstructionsMatchInterpreter() {
+        for (boolean lazyFlags : new boolean[] {false, true}) {
+            CPU interpreter = new CPU();
+            CPU compiled = new CPU();
+            for (CPU cpu : new CPU[] {interpreter, compiled}) {
+                loadProgram(cpu, INLINED_PROGRAM, 0x100);
+                cpu.setLazyFlags(lazyFlags);
+            }
+            compiled.setRecompiler(1);
+
+            runUntil(interpreter, 0x11F);
+            for (int i = 0; i < 3; i++) {
+                runUntil(compiled, 0x107);
+                compiled.doInstructionCycle();
+            }
+            compiled.awaitCompilations();
+            runUntil(compiled, 0x11F);
+
+            assertTrue(compiled.getCompiledBlockCount() > 0);
+            assertSameState(interpreter, compiled);
+            assertEquals(interpreter.getMemory().getByteNoTick((short) 0xC000),
+                    compiled.getMemory().getByteNoTick((short) 0xC000));
+        }
+    }
+
+    @Test
+    public void testInlinedInstructionsDontCallHandlers() {
+        CPU cpu = new CPU();
+        loadProgram(cpu, INLINED_PROGRAM, 0x100);
+        BlockCache.Block block = new BlockCache(cpu.getMemory()).getBlock((short) 0x107);
+        String source = new BlockCompiler(cpu.getMemory(), 1).generateSource("Test", block);
+
+        assertFalse(source.contains(".execute("), source);
+    }
+
+    /*
+    A class this JVM just compiled must load, while a broken cached class only means compiling again.
+     */
+    @Test
+    public void testDefineBrokenClass() {
+        CPU cpu = new CPU();
+        loadProgram(cpu, INLINED_PROGRAM, 0x100);
+        BlockCache.Block block = new BlockCache(cpu.getMemory()).getBlock((short) 0x107);
+        BlockCompiler compiler = new BlockCompiler(cpu.getMemory(), 1);
+        byte[] broken = {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE};
+
+        assertNull(compiler.define(broken, block, true));
+        assertThrows(CPUException.class, () -> compiler.define(broken, block, false));
+    }
+
+    /*
+    A failure on the compiler thread is thrown on the emulation thread instead of being lost with the thread.
+     */
+    @Test
+    public void testBackgroundFailureReported() {
+        CPU cpu = new CPU();
+        loadProgram(cpu, INLINED_PROGRAM, 0x100);
+        BlockCache.Block block = new BlockCache(cpu.getMemory()).getBlock((short) 0x107);
+        BlockCompiler compiler = new BlockCompiler(cpu.getMemory(), 1) {
+            @Override
+            String generateSource(String className, BlockCache.Block block) {
+                return "class " + className + " {"; // doesn't compile
+            }
+        };
+
+        compiler.compileInBackground(block);
+        assertThrows(CPUException.class, compiler::awaitCompilations);
+        assertNull(block.compiled);
+        compiler.shutdown();
+    }
+}
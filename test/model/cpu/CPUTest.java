@@ -1,6 +1,7 @@
 package model.cpu;
 
 import exception.CPUException;
+import model.Clock;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import util.TestUtil;
@@ -31,6 +32,141 @@ public class CPUTest {
         System.out.println("register C value: " + TestUtil.convertToHexString(cpu.getRc()));
     }
 
+    @Test
+    public void testRegisterAF() {
+        cpu.setRegisterAF((short) 0x12FF);
+        assertEquals((byte) 0x12, cpu.getRa());
+        assertEquals((byte) 0xF0, cpu.getRf());
+        assertEquals((short) 0x12F0, cpu.getRegisterAF());
+
+        cpu.setRa((byte) 0xAB);
+        cpu.setRf((byte) 0x5F);
+        assertEquals((short) 0xAB50, cpu.getRegisterAF());
+    }
+
+    @Test
+    public void testRegisterPairsDoNotAllocate() {
+        int iterations = 100000;
+        // warm up first, so class loading and interpreter setup aren't measured
+        accessRegisterPairs(iterations);
+        TestUtil.getThreadAllocatedBytes();
+
+        long before = TestUtil.getThreadAllocatedBytes();
+        accessRegisterPairs(iterations);
+        long allocated = TestUtil.getThreadAllocatedBytes() - before;
+        // less than one byte per access means nothing is allocated per access
+        assertTrue(allocated < iterations);
+    }
+
+    private void accessRegisterPairs(int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            cpu.setRegisterAF((short) (cpu.getRegisterAF() + i));
+            cpu.setRegisterBC((short) (cpu.getRegisterBC() + i));
+            cpu.setRegisterDE((short) (cpu.getRegisterDE() + i));
+            cpu.setRegisterHL((short) (cpu.getRegisterHL() + i));
+        }
+    }
+
+    /*
+    Runs the following loop from 0xC000, which covers 8 bit and 16 bit register operands,
+    (HL) operands, the stack, CB instructions, and conditional/unconditional control flow:
+
+    LD BC, 0x1234
+    INC DE
+    ADD HL, BC
+    PUSH BC
+    POP DE
+    LD HL, 0xC100
+    LD A, (HL+)
+    LD (HL), A
+    ADD A, B
+    SWAP A
+    CP 0x10
+    JR NZ, +0 (either way, continue to the next instruction)
+    CALL 0xC020
+    JR loop
+
+    0xC020:
+    RES 3, (HL)
+    RET
+     */
+    @Test
+    public void testInstructionsDoNotAllocate() {
+        byte[] loop = {
+                (byte) 0x01, (byte) 0x34, (byte) 0x12,
+                (byte) 0x13,
+                (byte) 0x09,
+                (byte) 0xC5,
+                (byte) 0xD1,
+                (byte) 0x21, (byte) 0x00, (byte) 0xC1,
+                (byte) 0x2A,
+                (byte) 0x77,
+                (byte) 0x80,
+                (byte) 0xCB, (byte) 0x37,
+                (byte) 0xFE, (byte) 0x10,
+                (byte) 0x20, (byte) 0x00,
+                (byte) 0xCD, (byte) 0x20, (byte) 0xC0,
+                (byte) 0x18, (byte) 0xE8
+        };
+        byte[] subroutine = {
+                (byte) 0xCB, (byte) 0x9E,
+                (byte) 0xC9
+        };
+        short startAddress = (short) 0xC000;
+        for (int i = 0; i < loop.length; i++) {
+            cpu.getMemory().setByte(loop[i], (short) (startAddress + i));
+        }
+        for (int i = 0; i < subroutine.length; i++) {
+            cpu.getMemory().setByte(subroutine[i], (short) (0xC020 + i));
+        }
+        cpu.setProgramCounter(startAddress);
+        cpu.setStackPointer((short) 0xFFFE);
+
+        int instructions = 160000; // 16 instructions per loop
+        // warm up first, so class loading and interpreter setup aren't measured
+        for (int i = 0; i < instructions; i++) {
+            cpu.doInstructionCycle();
+        }
+        TestUtil.getThreadAllocatedBytes();
+
+        long before = TestUtil.getThreadAllocatedBytes();
+        for (int i = 0; i < instructions; i++) {
+            cpu.doInstructionCycle();
+        }
+        long allocated = TestUtil.getThreadAllocatedBytes() - before;
+        assertEquals(startAddress, cpu.getProgramCounter());
+        assertTrue(allocated < instructions);
+    }
+
+    /*
+    With IME = 1, interrupts are checked after every instruction. Runs NOP; JR -3 from 0xC000
+    with every interrupt enabled in IE but none requested, and checks that the interrupt checks don't allocate.
+     */
+    @Test
+    public void testInterruptCheckDoesNotAllocate() {
+        cpu.getMemory().setByte((byte) 0x00, (short) 0xC000);
+        cpu.getMemory().setByte((byte) 0x18, (short) 0xC001);
+        cpu.getMemory().setByte((byte) 0xFD, (short) 0xC002);
+        cpu.getMemory().setByte((byte) 0x1F, Constants.IE_ADDRESS);
+        cpu.getMemory().setByte((byte) 0x00, Constants.IF_ADDRESS);
+        cpu.setProgramCounter((short) 0xC000);
+        cpu.setIME(1);
+
+        int instructions = 100000;
+        for (int i = 0; i < instructions; i++) {
+            cpu.doInstructionCycle();
+        }
+        TestUtil.getThreadAllocatedBytes();
+
+        long before = TestUtil.getThreadAllocatedBytes();
+        for (int i = 0; i < instructions; i++) {
+            cpu.doInstructionCycle();
+        }
+        long allocated = TestUtil.getThreadAllocatedBytes() - before;
+        assertEquals((short) 0xC000, cpu.getProgramCounter());
+        assertTrue(allocated < instructions);
+    }
+
     @Test
     public void testFlags() {
         cpu.setRf((byte) 0b10100000);
@@ -65,6 +201,17 @@ public class CPUTest {
         }
     }
 
+    @Test
+    public void testIllegalInstructions() {
+        byte[] illegalInstructions = {
+                (byte) 0xD3, (byte) 0xDB, (byte) 0xDD, (byte) 0xE3, (byte) 0xE4, (byte) 0xEB,
+                (byte) 0xEC, (byte) 0xED, (byte) 0xF4, (byte) 0xFC, (byte) 0xFD
+        };
+        for (byte instruction : illegalInstructions) {
+            assertThrows(CPUException.class, () -> cpu.decodeExecuteInstruction(instruction));
+        }
+    }
+
     @Test
     public void testPCIncrementByOneByte() {
         // ADD A, r8 instruction, which is one byte in length
@@ -129,4 +276,102 @@ public class CPUTest {
         assertEquals((byte) 6, cpu.getRb());
         assertEquals((byte) 9, cpu.getRa());
     }
+
+    /*
+    NOP; JR -3 from 0xC000 takes 1 + 3 M-cycles per loop, so runFor(1000) ends exactly after 250 loops.
+    An instruction that goes past the requested M-cycles is still finished.
+     */
+    @Test
+    public void testRunFor() {
+        cpu.getMemory().setByte((byte) 0x00, (short) 0xC000);
+        cpu.getMemory().setByte((byte) 0x18, (short) 0xC001);
+        cpu.getMemory().setByte((byte) 0xFD, (short) 0xC002);
+        cpu.setProgramCounter((short) 0xC000);
+
+        long start = cpu.getClock().getMCycles();
+        assertEquals(1000, cpu.runFor(1000));
+        assertEquals(start + 1000, cpu.getClock().getMCycles());
+        assertEquals((short) 0xC000, cpu.getProgramCounter());
+
+        assertEquals(1001, cpu.runFor(1001));
+        assertEquals((short) 0xC001, cpu.getProgramCounter());
+        assertEquals(3, cpu.runFor(1)); // JR
+        assertEquals((short) 0xC000, cpu.getProgramCounter());
+        assertEquals(0, cpu.runFor(0));
+    }
+
+    /*
+    A CPU halted with no interrupt that could wake it up uses up exactly the time it is given.
+     */
+    @Test
+    public void testRunForHalted() {
+        cpu.getMemory().setByte((byte) 0x76, (short) 0xC000); // HALT
+        cpu.getMemory().setByte((byte) 0, Constants.IE_ADDRESS);
+        cpu.setProgramCounter((short) 0xC000);
+
+        assertEquals(1 + 99999, cpu.runFor(1 + 99999));
+        assertTrue(cpu.getIsHalted());
+    }
+
+    @Test
+    public void testRunUntil() {
+        cpu.getMemory().setByte((byte) 0x04, (short) 0xC000); // INC B
+        cpu.getMemory().setByte((byte) 0x18, (short) 0xC001); // JR -3
+        cpu.getMemory().setByte((byte) 0xFD, (short) 0xC002);
+        cpu.setProgramCounter((short) 0xC000);
+        cpu.setRb((byte) 0);
+
+        assertEquals(10 * 4 - 3, cpu.runUntil(c -> c.getRb() == 10, 1000000));
+        assertEquals((short) 0xC001, cpu.getProgramCounter());
+
+        assertEquals(100, cpu.runUntil(c -> false, 100));
+    }
+
+    /*
+    With deferred sync the timer catches up on IO accesses and interrupt checks instead of every M-cycle.
+    Every instruction must still end in the same state, at the same M-cycle, as with eager sync.
+     */
+    @Test
+    public void testDeferredSyncMatchesEager() {
+        for (boolean blockCache : new boolean[] {false, true}) {
+            CPU eager = new CPU();
+            CPU deferred = new CPU();
+            for (CPU c : new CPU[] {eager, deferred}) {
+                BlockCacheTest.loadProgram(c, BlockCacheTest.TIMER_PROGRAM, 0x100);
+                BlockCacheTest.loadProgram(c, BlockCacheTest.TIMER_HANDLER, Constants.TIMER_HANDLER_ADDRESS);
+                c.setBlockCache(blockCache);
+            }
+            deferred.getMemory().setDeferredSync(true);
+            assertTrue(deferred.getMemory().isDeferredSync());
+
+            for (int i = 0; i < 3000; i++) {
+                eager.doInstructionCycle();
+                deferred.doInstructionCycle();
+                assertEquals(eager.getProgramCounter(), deferred.getProgramCounter());
+                assertEquals(eager.getClock().getMCycles(), deferred.getMemory().getMCycles());
+                BlockCacheTest.assertSameState(eager, deferred);
+            }
+            assertNotEquals((byte) 0xD8, deferred.getRe()); // some timer interrupts happened
+        }
+    }
+
+    /*
+    With the timer off nothing is scheduled, so NOPs don't let the deferred M-cycles pass on the clock
+    until something needs it.
+     */
+    @Test
+    public void testDeferredSyncOnlyWhenEventDue() {
+        CPU cpu = new CPU();
+        cpu.getMemory().setDeferredSync(true);
+        Clock clock = cpu.getClock(); // getClock synchronizes, the Clock itself doesn't
+        long start = clock.getMCycles();
+        for (int i = 0; i < 10; i++) {
+            cpu.doInstructionCycle();
+        }
+        assertEquals(start, clock.getMCycles());
+        assertEquals(start + 10, cpu.getMemory().getMCycles());
+
+        cpu.getMemory().synchronize();
+        assertEquals(start + 10, clock.getMCycles());
+    }
 }
@@ -0,0 +1,97 @@
+package model.cpu;
+
+import org.junit.jupiter.api.Test;
+import util.Constants;
+
+import static model.cpu.BlockCacheTest.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdleLoopDetectorTest {
+    // waits in a polling loop until the timer handler has counted 3 interrupts in 0xC000, ending at 0x11B
+    private static final byte[] WAIT_PROGRAM = {
+            (byte) 0x3E, (byte) 0xC0,               // LD A, $C0
+            (byte) 0xE0, (byte) 0x06,               // LD (FF00+$06), A    TMA
+            (byte) 0x3E, (byte) 0xF0,               // LD A, $F0
+            (byte) 0xE0, (byte) 0x05,               // LD (FF00+$05), A    TIMA
+            (byte) 0x3E, (byte) 0x04,               // LD A, $04
+            (byte) 0xE0, (byte) 0x07,               // LD (FF00+$07), A    TAC, every 256 M-cycles
+            (byte) 0xEA, (byte) 0xFF, (byte) 0xFF,  // LD ($FFFF), A       IE
+            (byte) 0xFB,                            // EI
+            (byte) 0x00,                            // NOP
+            (byte) 0xFA, (byte) 0x00, (byte) 0xC0,  // LD A, ($C000)    <- 0x111
+            (byte) 0xFE, (byte) 0x03,               // CP A, $03
+            (byte) 0xC2, (byte) 0x11, (byte) 0x01,  // JP NZ, $0111
+            (byte) 0x06, (byte) 0x01,               // LD B, $01
+            (byte) 0x18, (byte) 0xFE                // JR -2            <- 0x11B
+    };
+
+    private static final byte[] COUNT_HANDLER = {
+            (byte) 0x21, (byte) 0x00, (byte) 0xC0,  // LD HL, $C000
+            (byte) 0x34,                            // INC (HL)
+            (byte) 0xD9                             // RETI
+    };
+
+    /*
+    Skipping iterations of the polling loop must end in exactly the same state as running every iteration.
+     */
+    @Test
+    public void testIdleLoopSkippingMatchesInterpreter() {
+        CPU interpreter = new CPU();
+        CPU skipping = new CPU();
+        for (CPU cpu : new CPU[] {interpreter, skipping}) {
+            loadProgram(cpu, WAIT_PROGRAM, 0x100);
+            loadProgram(cpu, COUNT_HANDLER, Constants.TIMER_HANDLER_ADDRESS);
+            cpu.getMemory().setByte((byte) 0, (short) 0xC000);
+        }
+        skipping.setIdleLoopSkipping(true);
+        assertTrue(skipping.isIdleLoopSkipping());
+        assertTrue(skipping.isBlockCache());
+
+        runUntil(interpreter, 0x11B);
+        runUntil(skipping, 0x11B);
+
+        assertSameState(interpreter, skipping);
+        assertEquals((byte) 3, skipping.getMemory().getByteNoTick((short) 0xC000));
+        assertEquals(0, interpreter.getIdleMCyclesSkipped());
+        // 3 interrupts take 4096 + 2 * 16384 M-cycles, nearly all of them spent in the loop
+        assertTrue(skipping.getIdleMCyclesSkipped() > 30000);
+    }
+
+    @Test
+    public void testDetect() {
+        byte[] program = {
+                (byte) 0xF0, (byte) 0x44,               // LD A, (FF00+$44)  <- 0xC000, idle
+                (byte) 0xFE, (byte) 0x90,               // CP A, $90
+                (byte) 0x20, (byte) 0xFA,               // JR NZ, -6
+                (byte) 0xF0, (byte) 0x04,               // LD A, (FF00+$04)  <- 0xC006, polls DIV
+                (byte) 0xFE, (byte) 0x40,               // CP A, $40
+                (byte) 0x20, (byte) 0xFA,               // JR NZ, -6
+                (byte) 0x04,                            // INC B             <- 0xC00C, changes every iteration
+                (byte) 0x20, (byte) 0xFD,               // JR NZ, -3
+                (byte) 0x7E,                            // LD A, (HL)        <- 0xC00F, idle
+                (byte) 0xCB, (byte) 0x47,               // BIT 0, A
+                (byte) 0x28, (byte) 0xFB,               // JR Z, -5
+                (byte) 0x7E,                            // LD A, (HL)        <- 0xC014, writes memory
+                (byte) 0x12,                            // LD (DE), A
+                (byte) 0x18, (byte) 0xFC,               // JR -4
+                (byte) 0x18, (byte) 0xFE                // JR -2             <- 0xC018, idle
+        };
+        CPU cpu = new CPU();
+        loadProgram(cpu, program, 0xC000);
+        BlockCache blockCache = new BlockCache(cpu.getMemory());
+
+        assertEquals(3 + 2 + 3, blockCache.getBlock((short) 0xC000).idleLoopMCycles);
+        assertEquals(0, blockCache.getBlock((short) 0xC006).idleLoopMCycles);
+        assertEquals(0, blockCache.getBlock((short) 0xC00C).idleLoopMCycles);
+        BlockCache.Block pollHL = blockCache.getBlock((short) 0xC00F);
+        assertEquals(2 + 2 + 3, pollHL.idleLoopMCycles);
+        assertEquals(0b100, pollHL.idleLoopPointers);
+        assertEquals(0, blockCache.getBlock((short) 0xC014).idleLoopMCycles);
+        assertEquals(3, blockCache.getBlock((short) 0xC018).idleLoopMCycles);
+
+        cpu.setRegisterHL(Constants.DIV_ADDRESS);
+        assertFalse(IdleLoopDetector.isPollingTimeIndependent(pollHL, cpu));
+        cpu.setRegisterHL((short) 0xC100);
+        assertTrue(IdleLoopDetector.isPollingTimeIndependent(pollHL, cpu));
+    }
+}
@@ -0,0 +1,181 @@
+package model.cpu;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OpcodeTableTest {
+    CPU cpu;
+
+    @BeforeEach
+    public void setup() {
+        cpu = new CPU();
+    }
+
+    @Test
+    public void testIllegalOpcodes() {
+        Set<Integer> illegalOpcodes = Set.of(0xD3, 0xDB, 0xDD, 0xE3, 0xE4, 0xEB, 0xEC, 0xED, 0xF4, 0xFC, 0xFD);
+        for (int opcode = 0; opcode < 256; opcode++) {
+            if (illegalOpcodes.contains(opcode)) {
+                assertNull(OpcodeTable.getOpcodeInfo((byte) opcode));
+            } else {
+                assertNotNull(OpcodeTable.getOpcodeInfo((byte) opcode));
+            }
+            assertNotNull(OpcodeTable.getCBOpcodeInfo((byte) opcode));
+        }
+    }
+
+    @Test
+    public void testMnemonics() {
+        assertEquals("NOP", OpcodeTable.getOpcodeInfo((byte) 0x00).getMnemonic());
+        assertEquals("LD (HL-), A", OpcodeTable.getOpcodeInfo((byte) 0x32).getMnemonic());
+        assertEquals("LD D, (HL)", OpcodeTable.getOpcodeInfo((byte) 0x56).getMnemonic());
+        assertEquals("HALT", OpcodeTable.getOpcodeInfo((byte) 0x76).getMnemonic());
+        assertEquals("SBC A, u8", OpcodeTable.getOpcodeInfo((byte) 0xDE).getMnemonic());
+        assertEquals("RET NC", OpcodeTable.getOpcodeInfo((byte) 0xD0).getMnemonic());
+        assertEquals("PUSH AF", OpcodeTable.getOpcodeInfo((byte) 0xF5).getMnemonic());
+        assertEquals("RST 38h", OpcodeTable.getOpcodeInfo((byte) 0xFF).getMnemonic());
+        assertEquals("LD SP, HL", OpcodeTable.getOpcodeInfo((byte) 0xF9).getMnemonic());
+        assertEquals("SWAP A", OpcodeTable.getCBOpcodeInfo((byte) 0x37).getMnemonic());
+        assertEquals("BIT 7, (HL)", OpcodeTable.getCBOpcodeInfo((byte) 0x7E).getMnemonic());
+        assertEquals("SET 0, B", OpcodeTable.getCBOpcodeInfo((byte) 0xC0).getMnemonic());
+    }
+
+    @Test
+    public void testControlFlowFlags() {
+        for (int opcode = 0; opcode < 256; opcode++) {
+            OpcodeInfo info = OpcodeTable.getOpcodeInfo((byte) opcode);
+            if (info == null) {
+                continue;
+            }
+            String name = info.getMnemonic().split(" ")[0];
+            boolean branch = Set.of("JP", "JR", "CALL", "RET", "RETI", "RST").contains(name);
+            assertEquals(branch, info.isBranch(), info.getMnemonic());
+            assertEquals(branch || Set.of("HALT", "STOP", "EI", "DI").contains(name), info.isEndsBlock(),
+                    info.getMnemonic());
+        }
+    }
+
+    @Test
+    public void testDecodedFields() {
+        OpcodeInfo ldDHL = OpcodeTable.getOpcodeInfo((byte) 0x56);
+        assertEquals(6, ldDHL.getR8());
+        assertEquals(2, ldDHL.getR8Destination());
+        assertEquals(1, ldDHL.getLength());
+        assertEquals(2, ldDHL.getCycles());
+        assertEquals(OpcodeInfo.NONE, ldDHL.getR16());
+
+        OpcodeInfo callZ = OpcodeTable.getOpcodeInfo((byte) 0xCC);
+        assertEquals(1, callZ.getCondition());
+        assertEquals(3, callZ.getLength());
+        assertEquals(3, callZ.getCycles());
+        assertEquals(6, callZ.getBranchCycles());
+
+        OpcodeInfo cpL = OpcodeTable.getOpcodeInfo((byte) 0xBD);
+        assertEquals(7, cpL.getOperation());
+        assertEquals(5, cpL.getR8());
+
+        OpcodeInfo popHL = OpcodeTable.getOpcodeInfo((byte) 0xE1);
+        assertEquals(2, popHL.getR16());
+        assertEquals(3, popHL.getCycles());
+
+        OpcodeInfo incHL = OpcodeTable.getOpcodeInfo((byte) 0x34);
+        assertEquals(6, incHL.getR8());
+        assertEquals(3, incHL.getCycles());
+
+        OpcodeInfo bit7HL = OpcodeTable.getCBOpcodeInfo((byte) 0x7E);
+        assertEquals(7, bit7HL.getBitPosition());
+        assertEquals(6, bit7HL.getR8());
+        assertEquals(2, bit7HL.getLength());
+        assertEquals(3, bit7HL.getCycles());
+
+        OpcodeInfo res3HL = OpcodeTable.getCBOpcodeInfo((byte) 0x9E);
+        assertEquals(3, res3HL.getBitPosition());
+        assertEquals(4, res3HL.getCycles());
+    }
+
+    /*
+    Executes every opcode that doesn't jump, and checks that the
+    instruction reads as many bytes as its length says.
+     */
+    @Test
+    public void testLengthsMatchExecution() {
+        short startAddress = (short) 0xC000;
+        for (int opcode = 0; opcode < 256; opcode++) {
+            OpcodeInfo info = OpcodeTable.getOpcodeInfo((byte) opcode);
+            if (info == null || info.getCondition() != OpcodeInfo.NONE ||
+                    info.getMnemonic().matches("(JP|JR|CALL|RET|RST|STOP|HALT).*")) {
+                continue;
+            }
+            cpu = new CPU();
+            cpu.setRegisterBC((short) 0xC100);
+            cpu.setRegisterDE((short) 0xC100);
+            cpu.setRegisterHL((short) 0xC100);
+            cpu.getMemory().setByte((byte) opcode, startAddress);
+            cpu.getMemory().setByte((byte) 0xC0, (short) (startAddress + 1));
+            cpu.getMemory().setByte((byte) 0xC1, (short) (startAddress + 2));
+            cpu.setProgramCounter(startAddress);
+
+            cpu.decodeExecuteInstruction((byte) opcode);
+            int expectedLength = info.getLength();
+            if (opcode == 0xCB) {
+                expectedLength = OpcodeTable.getCBOpcodeInfo((byte) 0xC0).getLength();
+            }
+            // the instruction cycle increments pc past the last byte
+            assertEquals(startAddress + expectedLength - 1, cpu.getProgramCounter(), info.getMnemonic());
+        }
+    }
+
+    /*
+    Executes every opcode except HALT and STOP, and every CB prefixed opcode, and checks on the clock
+    that the instruction takes as many M-cycles as the table says. Conditional instructions
+    are executed once with the branch taken and once not taken.
+     */
+    @Test
+    public void testCyclesMatchExecution() {
+        for (int opcode = 0; opcode < 256; opcode++) {
+            OpcodeInfo info = OpcodeTable.getOpcodeInfo((byte) opcode);
+            if (info == null || info.getMnemonic().matches("HALT|STOP")) {
+                continue;
+            }
+            if (opcode == 0xCB) {
+                for (int cbOpcode = 0; cbOpcode < 256; cbOpcode++) {
+                    OpcodeInfo cbInfo = OpcodeTable.getCBOpcodeInfo((byte) cbOpcode);
+                    assertEquals(cbInfo.getCycles(), getExecutionCycles(opcode, cbOpcode, 0), cbInfo.getMnemonic());
+                }
+            } else if (info.getCondition() != OpcodeInfo.NONE) {
+                int condition = info.getCondition();
+                byte taken = (byte) (((condition == 1) ? 0x80 : 0) | ((condition == 3) ? 0x10 : 0));
+                byte notTaken = (byte) (~taken & 0x90);
+                assertEquals(info.getBranchCycles(), getExecutionCycles(opcode, 0xC0, taken), info.getMnemonic());
+                assertEquals(info.getCycles(), getExecutionCycles(opcode, 0xC0, notTaken), info.getMnemonic());
+            } else {
+                assertEquals(info.getCycles(), getExecutionCycles(opcode, 0xC0, 0), info.getMnemonic());
+            }
+        }
+    }
+
+    /**
+     * @return the M-cycles doInstructionCycle takes to execute opcode, followed by the byte operand and 0xC1
+     */
+    private long getExecutionCycles(int opcode, int operand, int flags) {
+        short startAddress = (short) 0xC000;
+        cpu = new CPU();
+        cpu.setRegisterBC((short) 0xC100);
+        cpu.setRegisterDE((short) 0xC100);
+        cpu.setRegisterHL((short) 0xC100);
+        cpu.setStackPointer((short) 0xD000);
+        cpu.setRf((byte) flags);
+        cpu.getMemory().setByte((byte) opcode, startAddress);
+        cpu.getMemory().setByte((byte) operand, (short) (startAddress + 1));
+        cpu.getMemory().setByte((byte) 0xC1, (short) (startAddress + 2));
+        cpu.setProgramCounter(startAddress);
+
+        long before = cpu.getClock().getMCycles();
+        cpu.doInstructionCycle();
+        return cpu.getClock().getMCycles() - before;
+    }
+}
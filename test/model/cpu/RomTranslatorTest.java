@@ -0,0 +1,141 @@
+package model.cpu;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import util.Constants;
+
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static model.cpu.BlockCacheTest.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class RomTranslatorTest {
+    @TempDir
+    Path cacheDirectory;
+
+    @BeforeEach
+    public void setup() {
+        // translating needs a JDK
+        assumeTrue(ToolProvider.getSystemJavaCompiler() != null);
+    }
+
+    private static byte[] getTimerCartridge() {
+        byte[] cartridge = new byte[Constants.kb16 * 2];
+        System.arraycopy(TIMER_PROGRAM, 0, cartridge, 0x100, TIMER_PROGRAM.length);
+        System.arraycopy(TIMER_HANDLER, 0, cartridge, Constants.TIMER_HANDLER_ADDRESS,
+                TIMER_HANDLER.length);
+        return cartridge;
+    }
+
+    private static long countClassFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(file -> file.toString().endsWith(".class")).count();
+        }
+    }
+
+    /*
+    The first run compiles every reachable block and saves it. The second run of the same ROM
+    loads every block from the cache without compiling anything. Both must run exactly like the interpreter.
+     */
+    @Test
+    public void testTranslateAndReloadFromCache() throws IOException {
+        CPU interpreter = new CPU(getTimerCartridge());
+        CPU first = new CPU(getTimerCartridge());
+        CPU second = new CPU(getTimerCartridge());
+
+        int translated = first.translateRom(cacheDirectory);
+        assertTrue(translated > 0);
+        assertTrue(first.isRecompiler());
+        assertEquals(translated, first.getCompiledBlockCount());
+        assertEquals(translated, countClassFiles(cacheDirectory));
+
+        assertEquals(translated, second.translateRom(cacheDirectory));
+        assertEquals(0, second.getCompiledBlockCount());
+
+        runUntil(interpreter, 0x11E);
+        runUntil(first, 0x11E);
+        runUntil(second, 0x11E);
+        assertSameState(interpreter, first);
+        assertSameState(interpreter, second);
+        assertNotEquals((byte) 0xD8, second.getRe()); // the translated timer handler ran
+    }
+
+    /*
+    With more than one switchable bank, code at 0x4000-0x7FFF isn't translated,
+    and is still interpreted with whatever bank is mapped.
+     */
+    @Test
+    public void testBankedCodeNotTranslated() throws IOException {
+        byte[] cartridge = new byte[Constants.kb16 * 4];
+        cartridge[0x147] = (byte) 0x01; // MBC1
+        cartridge[0x148] = (byte) 0x01; // 4 ROM banks
+        byte[] program = {
+                (byte) 0x3E, (byte) 0x02,               // LD A, $02
+                (byte) 0xEA, (byte) 0x00, (byte) 0x20,  // LD ($2000), A
+                (byte) 0xCD, (byte) 0x00, (byte) 0x40,  // CALL $4000
+                (byte) 0x18, (byte) 0xFE                // JR -2            <- 0x108
+        };
+        System.arraycopy(program, 0, cartridge, 0x100, program.length);
+        cartridge[Constants.kb16 * 2] = (byte) 0x0C; // bank 2: INC C
+        cartridge[Constants.kb16 * 2 + 1] = (byte) 0xC9; // RET
+
+        CPU cpu = new CPU(cartridge);
+        RomTranslator translator = new RomTranslator(cpu.getMemory(), new BlockCache(cpu.getMemory()),
+                new BlockCompiler(cpu.getMemory(), BlockCompiler.DEFAULT_HOT_THRESHOLD));
+        for (BlockCache.Block block : translator.findReachableBlocks()) {
+            assertTrue(block.start <= 0x3FFF);
+        }
+
+        assertTrue(cpu.translateRom(cacheDirectory) > 0);
+        cpu.setRc((byte) 0);
+        runUntil(cpu, 0x108);
+        assertEquals((byte) 1, cpu.getRc());
+    }
+
+    /*
+    A cached class file that doesn't match its saved SHA-256 is compiled again instead of loaded.
+     */
+    @Test
+    public void testTamperedCacheRecompiled() throws IOException {
+        CPU interpreter = new CPU(getTimerCartridge());
+        CPU first = new CPU(getTimerCartridge());
+        CPU second = new CPU(getTimerCartridge());
+        int translated = first.translateRom(cacheDirectory);
+
+        Path classFile;
+        try (Stream<Path> files = Files.walk(cacheDirectory)) {
+            classFile = files.filter(file -> file.toString().endsWith(".class")).findFirst().orElseThrow();
+        }
+        byte[] classBytes = Files.readAllBytes(classFile);
+        classBytes[classBytes.length - 1] ^= 1;
+        Files.write(classFile, classBytes);
+
+        assertEquals(translated, second.translateRom(cacheDirectory));
+        assertEquals(1, second.getCompiledBlockCount());
+        runUntil(interpreter, 0x11E);
+        runUntil(second, 0x11E);
+        assertSameState(interpreter, second);
+    }
+
+    /*
+    MBC1 with more than 32 banks can map another bank to 0x0000-0x3FFF in mode 1, so nothing is translated.
+     */
+    @Test
+    public void testRemappableLowBankNotTranslated() {
+        byte[] cartridge = new byte[Constants.kb16 * 64];
+        System.arraycopy(TIMER_PROGRAM, 0, cartridge, 0x100, TIMER_PROGRAM.length);
+        cartridge[0x147] = (byte) 0x01; // MBC1
+        cartridge[0x148] = (byte) 0x05; // 64 ROM banks
+
+        CPU cpu = new CPU(cartridge);
+        RomTranslator translator = new RomTranslator(cpu.getMemory(), new BlockCache(cpu.getMemory()),
+                new BlockCompiler(cpu.getMemory(), BlockCompiler.DEFAULT_HOT_THRESHOLD));
+        assertTrue(translator.findReachableBlocks().isEmpty());
+    }
+}
@@ -0,0 +1,141 @@
+package model.cpu;
+
+import org.junit.jupiter.api.Test;
+import util.Constants;
+
+import java.util.List;
+
+import static model.cpu.BlockCacheTest.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SuperinstructionsTest {
+    // timer interrupt every 64 M-cycles, during a copy loop and then a loop polling DIV, ending at 0x125
+    private static final byte[] FUSED_PROGRAM = {
+            (byte) 0x3E, (byte) 0xF0,               // LD A, $F0
+            (byte) 0xE0, (byte) 0x06,               // LD (FF00+$06), A    TMA
+            (byte) 0xE0, (byte) 0x05,               // LD (FF00+$05), A    TIMA
+            (byte) 0x3E, (byte) 0x05,               // LD A, $05
+            (byte) 0xE0, (byte) 0x07,               // LD (FF00+$07), A    TAC
+            (byte) 0x3E, (byte) 0x04,               // LD A, $04
+            (byte) 0xEA, (byte) 0xFF, (byte) 0xFF,  // LD ($FFFF), A       IE
+            (byte) 0xFB,                            // EI
+            (byte) 0x21, (byte) 0x00, (byte) 0x00,  // LD HL, $0000
+            (byte) 0x11, (byte) 0x00, (byte) 0xC0,  // LD DE, $C000
+            (byte) 0x06, (byte) 0x40,               // LD B, $40
+            (byte) 0x2A,                            // LD A, (HL+)      <- 0x118
+            (byte) 0x12,                            // LD (DE), A
+            (byte) 0x13,                            // INC DE
+            (byte) 0x05,                            // DEC B
+            (byte) 0x20, (byte) 0xFA,               // JR NZ, -6
+            (byte) 0xF0, (byte) 0x04,               // LD A, (FF00+$04)    DIV  <- 0x11E
+            (byte) 0xFE, (byte) 0x30,               // CP A, $30
+            (byte) 0x20, (byte) 0xFA,               // JR NZ, -6
+            (byte) 0x18, (byte) 0xFE                // JR -2            <- 0x124
+    };
+
+    /*
+    Runs a copy loop, a delay loop and a polling loop with superinstructions while timer interrupts
+    keep landing between fused instructions, and checks that the state matches the interpreter exactly.
+     */
+    @Test
+    public void testSuperinstructionsMatchInterpreter() {
+        CPU interpreter = new CPU();
+        CPU fused = new CPU();
+        for (CPU cpu : new CPU[] {interpreter, fused}) {
+            loadProgram(cpu, FUSED_PROGRAM, 0x100);
+            loadProgram(cpu, TIMER_HANDLER, Constants.TIMER_HANDLER_ADDRESS);
+        }
+        fused.setSuperinstructions(true);
+        assertTrue(fused.isSuperinstructions());
+        assertTrue(fused.isBlockCache());
+
+        runUntil(interpreter, 0x124);
+        runUntil(fused, 0x124);
+
+        assertSameState(interpreter, fused);
+        assertEquals((byte) 0x30, fused.getRa());
+        assertNotEquals((byte) 0xD8, fused.getRe()); // some timer interrupts happened
+        for (int address = 0xC000; address < 0xC040; address++) {
+            assertEquals(interpreter.getMemory().getByteNoTick((short) address),
+                    fused.getMemory().getByteNoTick((short) address));
+        }
+    }
+
+    /*
+    Without EI, the fused sequences skip the interrupt checks between their instructions,
+    and still end in the same state as the interpreter, with the timer interrupt left pending in IF.
+     */
+    @Test
+    public void testSuperinstructionsWithoutInterrupts() {
+        byte[] program = FUSED_PROGRAM.clone();
+        program[0x0F] = (byte) 0x00; // NOP instead of EI
+        CPU interpreter = new CPU();
+        CPU fused = new CPU();
+        for (CPU cpu : new CPU[] {interpreter, fused}) {
+            loadProgram(cpu, program, 0x100);
+        }
+        fused.setSuperinstructions(true);
+
+        runUntil(interpreter, 0x124);
+        runUntil(fused, 0x124);
+
+        assertSameState(interpreter, fused);
+        assertFalse(fused.canServiceInterrupts());
+        for (int address = 0xC000; address < 0xC040; address++) {
+            assertEquals(interpreter.getMemory().getByteNoTick((short) address),
+                    fused.getMemory().getByteNoTick((short) address));
+        }
+    }
+
+    @Test
+    public void testFuse() {
+        CPU cpu = new CPU();
+        loadProgram(cpu, FUSED_PROGRAM, 0x100);
+        BlockCache blockCache = new BlockCache(cpu.getMemory());
+        blockCache.setSuperinstructions(true);
+
+        BlockCache.Block copyLoop = blockCache.getBlock((short) 0x118);
+        assertEquals(2, copyLoop.superinstructions[0].length); // LD A, (HL+); LD (DE), A
+        assertNull(copyLoop.superinstructions[1]);
+        assertNull(copyLoop.superinstructions[2]);
+        assertEquals(2, copyLoop.superinstructions[3].length); // DEC B; JR NZ
+
+        BlockCache.Block pollLoop = blockCache.getBlock((short) 0x11E);
+        assertEquals(3, pollLoop.superinstructions[0].length); // LDH A, (u8); CP u8; JR NZ
+
+        BlockCache.Block setup = blockCache.getBlock((short) 0x100);
+        assertNull(setup.superinstructions);
+
+        blockCache.setSuperinstructions(false);
+        assertFalse(copyLoop.valid);
+        assertNull(blockCache.getBlock((short) 0x118).superinstructions);
+    }
+
+    @Test
+    public void testOpcodePairProfiler() {
+        byte[] program = {
+                (byte) 0x06, (byte) 0x10,               // LD B, $10
+                (byte) 0x2A,                            // LD A, (HL+)
+                (byte) 0x12,                            // LD (DE), A
+                (byte) 0x05,                            // DEC B
+                (byte) 0x20, (byte) 0xFB,               // JR NZ, -5
+                (byte) 0x18, (byte) 0xFE                // JR -2            <- 0x107
+        };
+        CPU cpu = new CPU();
+        loadProgram(cpu, program, 0x100);
+        cpu.setRegisterHL((short) 0x0000);
+        cpu.setRegisterDE((short) 0xC000);
+        assertNull(cpu.getOpcodePairProfiler());
+        cpu.setOpcodePairProfiler(true);
+        runUntil(cpu, 0x107);
+
+        OpcodePairProfiler profiler = cpu.getOpcodePairProfiler();
+        assertEquals(16, profiler.getCount((byte) 0x2A, (byte) 0x12));
+        assertEquals(15, profiler.getCount((byte) 0x20, (byte) 0x2A));
+        assertEquals(1, profiler.getCount((byte) 0x06, (byte) 0x2A));
+        assertEquals(0, profiler.getCount((byte) 0x12, (byte) 0x2A));
+        // ties keep opcode order
+        assertEquals(List.of("DEC B; JR NZ, i8: 16", "LD (DE), A; DEC B: 16", "LD A, (HL+); LD (DE), A: 16"),
+                profiler.getMostFrequentPairs(3));
+    }
+}
@@ -0,0 +1,46 @@
+package model.cpu.execution;
+
+import model.cpu.CPU;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs all ALUExecutionTest tests again with ALU lookup tables enabled.
+ */
+public class ALULookupTablesALUExecutionTest extends ALUExecutionTest {
+    @BeforeEach
+    @Override
+    public void setup() {
+        super.setup();
+        cpu.setALULookupTables(true);
+    }
+
+    /*
+    Compares the lookup tables against the regular flag computation for every
+    ALU A, B instruction, and every value of A, B and the carry flag.
+     */
+    @Test
+    public void testLookupTablesMatchComputation() {
+        CPU computedCpu = new CPU();
+        for (int operation = 0; operation < 8; operation++) {
+            byte instruction = (byte) (0b10000000 | (operation << 3));
+            for (int a = 0; a < 256; a++) {
+                for (int b = 0; b < 256; b++) {
+                    for (int carry = 0; carry < 2; carry++) {
+                        for (CPU c : new CPU[] {cpu, computedCpu}) {
+                            c.setRf((byte) 0);
+                            c.setCarryFlag(carry);
+                            c.setRa((byte) a);
+                            c.setRb((byte) b);
+                            c.decodeExecuteInstruction(instruction);
+                        }
+                        assertEquals(computedCpu.getRa(), cpu.getRa());
+                        assertEquals(computedCpu.getRf(), cpu.getRf());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package model.cpu.execution;
+
+import model.cpu.CPU;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs all BitOpExecutionTest tests again with ALU lookup tables enabled.
+ */
+public class ALULookupTablesBitOpExecutionTest extends BitOpExecutionTest {
+    @BeforeEach
+    @Override
+    public void setup() {
+        super.setup();
+        cpu.setALULookupTables(true);
+    }
+
+    /*
+    Compares the DAA lookup table against the regular DAA computation for
+    every value of A, and every combination of the N, H and C flags.
+     */
+    @Test
+    public void testDAALookupTableMatchesComputation() {
+        byte daaInstruction = (byte) 0b00100111;
+        CPU computedCpu = new CPU();
+        for (int flags = 0; flags < 8; flags++) {
+            for (int a = 0; a < 256; a++) {
+                for (CPU c : new CPU[] {cpu, computedCpu}) {
+                    c.setRf((byte) (flags << 4));
+                    c.setRa((byte) a);
+                    c.decodeExecuteInstruction(daaInstruction);
+                }
+                assertEquals(computedCpu.getRa(), cpu.getRa());
+                assertEquals(computedCpu.getRf(), cpu.getRf());
+            }
+        }
+    }
+}
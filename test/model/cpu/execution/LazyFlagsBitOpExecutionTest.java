@@ -0,0 +1,15 @@
+package model.cpu.execution;
+
+import org.junit.jupiter.api.BeforeEach;
+
+/**
+ * Runs all BitOpExecutionTest tests again with lazy flags enabled.
+ */
+public class LazyFlagsBitOpExecutionTest extends BitOpExecutionTest {
+    @BeforeEach
+    @Override
+    public void setup() {
+        super.setup();
+        cpu.setLazyFlags(true);
+    }
+}
@@ -5,7 +5,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import util.Constants;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class MiscExecutionTest {
     CPU cpu;
@@ -199,4 +199,58 @@ public class MiscExecutionTest {
         assertEquals((byte) 6, cpu.getRb());
         assertEquals((byte) 9, cpu.getRa());
     }
+
+    /*
+    Tests that HALT with only the timer interrupt enabled lets time pass until TIMA overflows,
+    instead of waiting forever.
+
+    Instructions to execute:
+    DI
+    HALT
+    <TIMA overflows, and requests the timer interrupt>
+    NOP
+     */
+    @Test
+    public void testExecuteHALTWakesOnTimer() {
+        short startAddress = (short) 0xC000;
+        cpu.getMemory().setByte((byte) 0b11110011, startAddress); // DI
+        cpu.getMemory().setByte((byte) 0b01110110, (short) (startAddress + 1)); // HALT
+        cpu.getMemory().setByte((byte) 0b00000000, (short) (startAddress + 2)); // NOP
+        cpu.getMemory().setByte((byte) 0x42, Constants.TMA_ADDRESS);
+        cpu.getMemory().setByte((byte) 0x00, Constants.TIMA_ADDRESS);
+        cpu.getMemory().setByte((byte) 0b00000100, Constants.TAC_ADDRESS); // every 256 M-cycles
+        cpu.getMemory().setByte((byte) 0b00000100, Constants.IE_ADDRESS);
+        cpu.getMemory().setByte((byte) 0, Constants.IF_ADDRESS);
+        cpu.setProgramCounter(startAddress);
+
+        cpu.doInstructionCycle(); // DI
+        cpu.doInstructionCycle(); // HALT
+        assertTrue(cpu.getIsHalted());
+
+        cpu.doInstructionCycle(); // NOP, after 256 TIMA increments
+        assertFalse(cpu.getIsHalted());
+        assertEquals((short) (startAddress + 3), cpu.getProgramCounter());
+        assertEquals(1, cpu.getMemory().getTimerIF());
+        assertEquals((byte) 0x42, cpu.getMemory().getByteNoTick(Constants.TIMA_ADDRESS));
+    }
+
+    /*
+    Tests that HALT with no interrupt that could wake the CPU returns after letting a frame pass,
+    and stays halted.
+     */
+    @Test
+    public void testExecuteHALTNoWakeUp() {
+        short startAddress = (short) 0xC000;
+        cpu.getMemory().setByte((byte) 0b01110110, startAddress); // HALT
+        cpu.getMemory().setByte((byte) 0, Constants.IE_ADDRESS);
+        cpu.setProgramCounter(startAddress);
+
+        cpu.doInstructionCycle(); // HALT
+        byte div = cpu.getMemory().getByteNoTick(Constants.DIV_ADDRESS);
+        cpu.doInstructionCycle();
+
+        assertTrue(cpu.getIsHalted());
+        assertEquals((short) (startAddress + 1), cpu.getProgramCounter());
+        assertNotEquals(div, cpu.getMemory().getByteNoTick(Constants.DIV_ADDRESS));
+    }
 }
@@ -0,0 +1,53 @@
+package model.memory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import util.Constants;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InterruptControllerTest {
+    Memory memory;
+
+    @BeforeEach
+    public void setup() {
+        memory = new Memory();
+    }
+
+    @Test
+    public void testPendingMask() {
+        InterruptController interruptController = memory.getInterruptController();
+        assertFalse(interruptController.hasPending());
+        assertEquals(-1, interruptController.getHighestPriorityPending());
+
+        memory.setByte((byte) 0b11110100, Constants.IF_ADDRESS);
+        assertFalse(interruptController.hasPending()); // nothing enabled
+        memory.setByte((byte) 0b11110110, Constants.IE_ADDRESS);
+        assertTrue(interruptController.hasPending());
+        assertEquals(0b10100, interruptController.getPendingMask()); // bits 5-7 aren't interrupts
+        assertEquals(Constants.TIMER, interruptController.getHighestPriorityPending());
+
+        interruptController.request(Constants.LCD);
+        assertEquals(Constants.LCD, interruptController.getHighestPriorityPending());
+        assertEquals((byte) 0b11110110, memory.getByteNoTick(Constants.IF_ADDRESS));
+
+        memory.setByte((byte) 0, Constants.IE_ADDRESS);
+        assertFalse(interruptController.hasPending());
+        assertEquals((byte) 0b11110110, memory.getByteNoTick(Constants.IF_ADDRESS));
+    }
+
+    /*
+    TIMA overflowing requests the timer interrupt through the interrupt controller.
+     */
+    @Test
+    public void testTimerRequest() {
+        memory.setByte((byte) 0b00000100, Constants.IE_ADDRESS);
+        memory.setByte((byte) 0xFF, Constants.TIMA_ADDRESS);
+        memory.setByte((byte) 0b00000101, Constants.TAC_ADDRESS); // every 4 M-cycles
+        for (int i = 0; i < 5 && !memory.getInterruptController().hasPending(); i++) {
+            memory.doMCycle();
+        }
+        assertEquals(Constants.TIMER, memory.getInterruptController().getHighestPriorityPending());
+        assertEquals(1, memory.getTimerIF());
+    }
+}
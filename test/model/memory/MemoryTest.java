@@ -5,6 +5,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import util.Constants;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -78,4 +80,212 @@ public class MemoryTest {
         assertEquals(Constants.JOYPAD, pendingInterrupts.poll());
         assertEquals(0, pendingInterrupts.size());
     }
+
+    /*
+    Fast forwarding has to end in exactly the same state as calling doMCycle once per M-cycle,
+    for every timer frequency, with the timer disabled, and with the timer interrupt disabled in IE
+    so several overflows are skipped.
+     */
+    @Test
+    public void testFastForward() {
+        for (byte ie : new byte[] {(byte) 0x04, (byte) 0x00}) {
+            for (byte tac : new byte[] {(byte) 0x00, (byte) 0x04, (byte) 0x05, (byte) 0x06, (byte) 0x07}) {
+                Memory fastForwarded = new Memory();
+                Memory ticked = new Memory();
+                for (Memory memory : new Memory[] {fastForwarded, ticked}) {
+                    memory.setByte((byte) 0xE0, Constants.TMA_ADDRESS);
+                    memory.setByte((byte) 0xF0, Constants.TIMA_ADDRESS);
+                    memory.setByte(tac, Constants.TAC_ADDRESS);
+                    memory.setByte(ie, Constants.IE_ADDRESS);
+                }
+
+                long passed = fastForwarded.fastForward(5000);
+                long ticks = 0;
+                while (ticks < 5000 && !ticked.hasPendingInterrupt()) {
+                    ticked.doMCycle();
+                    ticks++;
+                }
+
+                assertEquals(ticks, passed);
+                assertEquals(ticked.hasPendingInterrupt(), fastForwarded.hasPendingInterrupt());
+                for (short address : new short[] {Constants.DIV_ADDRESS, Constants.TIMA_ADDRESS, Constants.IF_ADDRESS}) {
+                    assertEquals(ticked.getByteNoTick(address), fastForwarded.getByteNoTick(address));
+                }
+                // the next M-cycles must match too, e.g. TIMA's next increment
+                for (int i = 0; i < 300; i++) {
+                    ticked.doMCycle();
+                    fastForwarded.doMCycle();
+                    assertEquals(ticked.getByteNoTick(Constants.TIMA_ADDRESS),
+                            fastForwarded.getByteNoTick(Constants.TIMA_ADDRESS));
+                }
+            }
+        }
+    }
+
+    /*
+    DIV is derived from the clock, and writing it resets DIV but not the clock.
+     */
+    @Test
+    public void testDivFromClock() {
+        Memory memory = new Memory();
+        for (int i = 0; i < 130; i++) {
+            memory.doMCycle();
+        }
+        assertEquals(130, memory.getClock().getMCycles());
+        assertEquals(520, memory.getClock().getTCycles());
+        assertEquals((byte) 2, memory.getByteNoTick(Constants.DIV_ADDRESS)); // 520 / 256
+
+        memory.setByte((byte) 0x55, Constants.DIV_ADDRESS); // resets DIV at M-cycle 130, then its own M-cycle passes
+        assertEquals((byte) 0, memory.getByteNoTick(Constants.DIV_ADDRESS));
+        for (int i = 0; i < 64; i++) {
+            memory.doMCycle();
+        }
+        assertEquals(195, memory.getClock().getMCycles()); // the clock wasn't reset: 130 + 1 + 64
+        assertEquals((byte) 1, memory.getByteNoTick(Constants.DIV_ADDRESS)); // 65 M-cycles since the reset, 260 / 256
+    }
+
+    /*
+    Stopping the timer while the bit TAC selects is 1 is a falling edge too, and increments TIMA.
+     */
+    @Test
+    public void testTacDisableIncrementsTima() {
+        Memory memory = new Memory();
+        memory.setByte((byte) 0b00000101, Constants.TAC_ADDRESS); // bit 3, every 4 M-cycles
+        memory.doMCycle(); // the system clock is 8 now, bit 3 is 1
+        assertEquals((byte) 0, memory.getByteNoTick(Constants.TIMA_ADDRESS));
+
+        memory.setByte((byte) 0b00000001, Constants.TAC_ADDRESS);
+        assertEquals((byte) 1, memory.getByteNoTick(Constants.TIMA_ADDRESS));
+        for (int i = 0; i < 100; i++) {
+            memory.doMCycle();
+        }
+        assertEquals((byte) 1, memory.getByteNoTick(Constants.TIMA_ADDRESS));
+    }
+
+    /*
+    With deferred sync, doMCycle only counts M-cycles. The timer events are done late,
+    when TIMA is read, but with the same result as with eager sync.
+     */
+    @Test
+    public void testDeferredSync() {
+        Memory eager = new Memory();
+        Memory deferred = new Memory();
+        deferred.setDeferredSync(true);
+        for (Memory memory : new Memory[] {eager, deferred}) {
+            memory.setByte((byte) 0xF0, Constants.TMA_ADDRESS);
+            memory.setByte((byte) 0xFE, Constants.TIMA_ADDRESS);
+            memory.setByte((byte) 0b00000101, Constants.TAC_ADDRESS);
+            for (int i = 0; i < 10; i++) {
+                memory.doMCycle();
+            }
+        }
+        // the TAC write and the overflow haven't been done yet
+        assertTrue(deferred.getScheduler().getNextEventCycle() < eager.getClock().getMCycles());
+
+        assertEquals(eager.getByteNoTick(Constants.TIMA_ADDRESS), deferred.getByteNoTick(Constants.TIMA_ADDRESS));
+        assertEquals(eager.getScheduler().getNextEventCycle(), deferred.getScheduler().getNextEventCycle());
+        assertEquals(eager.getByteNoTick(Constants.IF_ADDRESS), deferred.getByteNoTick(Constants.IF_ADDRESS));
+        assertEquals(eager.getClock().getMCycles(), deferred.getClock().getMCycles());
+    }
+
+    /*
+    Bank switches remap the switchable ROM and cartridge RAM pages, and echo RAM mirrors console RAM.
+     */
+    @Test
+    public void testPageMapping() {
+        byte[] cartridge = new byte[4 * Constants.kb16];
+        cartridge[0x147] = (byte) 0x03; // MBC1 + RAM + battery
+        cartridge[0x148] = (byte) 0x01; // 4 ROM banks
+        cartridge[0x149] = (byte) 0x03; // 4 RAM banks
+        for (int bank = 0; bank < 4; bank++) {
+            cartridge[bank * Constants.kb16 + 0x1234] = (byte) bank;
+        }
+        Memory memory = new Memory(cartridge);
+
+        assertEquals((byte) 0, memory.getByteNoTick((short) 0x1234));
+        assertEquals((byte) 1, memory.getByteNoTick((short) 0x5234));
+        memory.setByte((byte) 3, (short) 0x2000);
+        assertEquals((byte) 3, memory.getByteNoTick((short) 0x5234));
+        memory.setByte((byte) 0, (short) 0x2000); // bank 0 selects bank 1
+        assertEquals((byte) 1, memory.getByteNoTick((short) 0x5234));
+
+        // disabled RAM reads 0xFF and ignores writes
+        memory.setByte((byte) 0x42, (short) 0xA000);
+        assertEquals((byte) 0xFF, memory.getByteNoTick((short) 0xA000));
+        memory.setByte((byte) 0x0A, (short) 0x0000);
+        assertEquals((byte) 0x00, memory.getByteNoTick((short) 0xA000));
+        memory.setByte((byte) 0x42, (short) 0xA000);
+        memory.setByte((byte) 0x01, (short) 0x6000); // RAM mode
+        memory.setByte((byte) 0x02, (short) 0x4000); // RAM bank 2
+        assertEquals((byte) 0x00, memory.getByteNoTick((short) 0xA000));
+        memory.setByte((byte) 0x00, (short) 0x4000);
+        assertEquals((byte) 0x42, memory.getByteNoTick((short) 0xA000));
+        memory.setByte((byte) 0x00, (short) 0x0000);
+        assertEquals((byte) 0xFF, memory.getByteNoTick((short) 0xA000));
+
+        memory.setByte((byte) 0x37, (short) 0xE123);
+        assertEquals((byte) 0x37, memory.getByteNoTick((short) 0xC123));
+        memory.setByte((byte) 0x38, (short) 0xDDFF);
+        assertEquals((byte) 0x38, memory.getByteNoTick((short) 0xFDFF));
+    }
+
+    /*
+    A PEEK write sets DIV to the written value, and DIV keeps counting from there.
+     */
+    @Test
+    public void testPeekWriteDiv() {
+        Memory memory = new Memory();
+        for (int i = 0; i < 100; i++) {
+            memory.doMCycle();
+        }
+        memory.write((byte) 0x12, Constants.DIV_ADDRESS, AccessKind.PEEK);
+        assertEquals((byte) 0x12, memory.read(Constants.DIV_ADDRESS, AccessKind.PEEK));
+        for (int i = 0; i < 64; i++) {
+            memory.doMCycle();
+        }
+        assertEquals((byte) 0x13, memory.read(Constants.DIV_ADDRESS, AccessKind.PEEK));
+    }
+
+    @Test
+    public void testAccessKinds() {
+        byte[] cartridge = new byte[4 * Constants.kb16];
+        cartridge[0x147] = (byte) 0x01; // MBC1
+        cartridge[0x148] = (byte) 0x01; // 4 ROM banks
+        Memory memory = new Memory(cartridge);
+        List<Short> codeWrites = new ArrayList<>();
+        memory.setCodeWriteListener(codeWrites::add);
+        for (int i = 0; i < 100; i++) {
+            memory.doMCycle();
+        }
+        byte div = memory.read(Constants.DIV_ADDRESS, AccessKind.PEEK);
+        assertNotEquals((byte) 0, div);
+
+        // PEEK takes no time and has no side effects
+        memory.write((byte) 3, (short) 0x2000, AccessKind.PEEK);
+        assertEquals(1, memory.getCurrentRomBank());
+        memory.write((byte) 0x55, Constants.DIV_ADDRESS, AccessKind.PEEK); // written as is, not reset
+        assertEquals((byte) 0x55, memory.read(Constants.DIV_ADDRESS, AccessKind.PEEK));
+        memory.write((byte) 0x81, (short) 0xFF02, AccessKind.PEEK); // doesn't start a serial transfer
+        assertEquals((byte) 0x81, memory.read((short) 0xFF02, AccessKind.PEEK));
+        assertEquals(100, memory.getClock().getMCycles());
+
+        // DMA takes no time, but has side effects
+        memory.write((byte) 3, (short) 0x2000, AccessKind.DMA);
+        assertEquals(3, memory.getCurrentRomBank());
+        memory.write((byte) 0x55, Constants.DIV_ADDRESS, AccessKind.DMA);
+        assertEquals((byte) 0, memory.read(Constants.DIV_ADDRESS, AccessKind.DMA));
+        assertEquals(100, memory.getClock().getMCycles());
+
+        // CPU takes an M-cycle per access
+        memory.write((byte) 2, (short) 0x2000, AccessKind.CPU);
+        assertEquals(2, memory.getCurrentRomBank());
+        memory.read((short) 0xC000, AccessKind.CPU);
+        assertEquals(102, memory.getClock().getMCycles());
+
+        // writes that could modify code are reported whatever the kind
+        memory.write((byte) 1, (short) 0xC000, AccessKind.PEEK);
+        memory.write((byte) 1, (short) 0xC001, AccessKind.DMA);
+        memory.write((byte) 1, (short) 0xFF80, AccessKind.CPU);
+        assertEquals(List.of((short) 0xC000, (short) 0xC001, (short) 0xFF80), codeWrites);
+    }
 }
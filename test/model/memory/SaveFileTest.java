@@ -0,0 +1,158 @@
+package model.memory;
+
+import exception.MemoryException;
+import model.Clock;
+import model.Scheduler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import util.Constants;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SaveFileTest {
+    @TempDir
+    Path directory;
+
+    private static byte[] makeCartridge(byte type) {
+        byte[] cartridge = new byte[4 * Constants.kb16];
+        cartridge[0x147] = type;
+        cartridge[0x148] = (byte) 0x01; // 4 ROM banks
+        cartridge[0x149] = (byte) 0x03; // 4 RAM banks
+        return cartridge;
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        Path path = directory.resolve("game.sav");
+        Memory memory = new Memory(makeCartridge((byte) 0x03)); // MBC1 with RAM and battery
+        memory.openSaveFile(path);
+        assertEquals(4 * Constants.kb8, Files.size(path));
+
+        memory.setByte((byte) 0x0A, (short) 0x0000);
+        memory.setByte((byte) 0x12, (short) 0xA000);
+        memory.setByte((byte) 0x01, (short) 0x6000);
+        memory.setByte((byte) 0x02, (short) 0x4000); // RAM bank 2
+        memory.setByte((byte) 0x34, (short) 0xBFFF);
+        assertEquals((byte) 0x34, memory.getByte((short) 0xBFFF));
+        memory.closeSaveFile();
+
+        byte[] saved = Files.readAllBytes(path);
+        assertEquals((byte) 0x12, saved[0]);
+        assertEquals((byte) 0x34, saved[3 * Constants.kb8 - 1]);
+
+        memory = new Memory(makeCartridge((byte) 0x03));
+        memory.openSaveFile(path);
+        memory.setByte((byte) 0x0A, (short) 0x0000);
+        assertEquals((byte) 0x12, memory.getByte((short) 0xA000));
+        memory.closeSaveFile();
+    }
+
+    /*
+    Written RAM is flushed when the game disables RAM, or a while after the first write.
+     */
+    @Test
+    public void testFlush() throws IOException {
+        Path path = directory.resolve("game.sav");
+        Memory memory = new Memory(makeCartridge((byte) 0x1B)); // MBC5 with RAM and battery
+        memory.openSaveFile(path);
+        memory.setByte((byte) 0x0A, (short) 0x0000);
+        memory.setByte((byte) 0x56, (short) 0xA100);
+        assertTrue(memory.getMapper().isRamDirty());
+        memory.setByte((byte) 0x00, (short) 0x0000);
+        assertFalse(memory.getMapper().isRamDirty());
+
+        memory.setByte((byte) 0x0A, (short) 0x0000);
+        memory.setByte((byte) 0x78, (short) 0xA101);
+        long flush = memory.getScheduler().getEventCycle(Scheduler.Event.SAVE_FLUSH);
+        assertNotEquals(Scheduler.NEVER, flush);
+        while (memory.getClock().getMCycles() < flush) {
+            memory.doMCycle();
+        }
+        assertFalse(memory.getMapper().isRamDirty());
+        memory.closeSaveFile();
+
+        byte[] saved = Files.readAllBytes(path);
+        assertEquals((byte) 0x56, saved[0x100]);
+        assertEquals((byte) 0x78, saved[0x101]);
+    }
+
+    /*
+    Skipping M-cycles in one step must not jump past a scheduled flush.
+     */
+    @Test
+    public void testFastForwardStopsAtFlush() {
+        Path path = directory.resolve("game.sav");
+        Memory memory = new Memory(makeCartridge((byte) 0x1B)); // MBC5 with RAM and battery, timer disabled
+        memory.openSaveFile(path);
+        memory.setByte((byte) 0x0A, (short) 0x0000);
+        memory.setByte((byte) 0x56, (short) 0xA100);
+        long untilFlush = memory.getScheduler().getEventCycle(Scheduler.Event.SAVE_FLUSH) - memory.getClock().getMCycles();
+
+        assertEquals(untilFlush, memory.getMCyclesUntilEvent());
+        assertThrows(MemoryException.class, () -> memory.skipMCycles(untilFlush));
+        assertEquals(untilFlush - 1, memory.fastForward(untilFlush - 1));
+        assertTrue(memory.getMapper().isRamDirty());
+        memory.fastForward(1);
+        assertFalse(memory.getMapper().isRamDirty());
+        memory.closeSaveFile();
+    }
+
+    @Test
+    public void testRealTimeClockSaved() throws IOException {
+        Path path = directory.resolve("game.sav");
+        Memory memory = new Memory(makeCartridge((byte) 0x10)); // MBC3 with timer, RAM and battery
+        memory.openSaveFile(path);
+        memory.getClock().advance(Clock.M_CYCLES_PER_SECOND * 75);
+        memory.closeSaveFile();
+        byte[] saved = Files.readAllBytes(path);
+        assertEquals(4 * Constants.kb8 + 48, saved.length);
+        assertEquals((byte) 15, saved[4 * Constants.kb8]); // seconds
+        assertEquals((byte) 1, saved[4 * Constants.kb8 + 4]); // minutes
+    }
+
+    /*
+    Opening another save file closes the first one, flushing what was written to it.
+     */
+    @Test
+    public void testOpenTwice() throws IOException {
+        Path first = directory.resolve("first.sav");
+        Path second = directory.resolve("second.sav");
+        Memory memory = new Memory(makeCartridge((byte) 0x1B)); // MBC5 with RAM and battery
+        memory.openSaveFile(first);
+        memory.setByte((byte) 0x0A, (short) 0x0000);
+        memory.setByte((byte) 0x56, (short) 0xA000);
+        memory.openSaveFile(second);
+        assertEquals((byte) 0x56, Files.readAllBytes(first)[0]);
+
+        memory.setByte((byte) 0x78, (short) 0xA000);
+        memory.closeSaveFile();
+        assertEquals((byte) 0x56, Files.readAllBytes(first)[0]);
+        assertEquals((byte) 0x78, Files.readAllBytes(second)[0]);
+    }
+
+    @Test
+    public void testCloseTwice() throws IOException {
+        Path path = directory.resolve("game.sav");
+        Memory memory = new Memory(makeCartridge((byte) 0x1B)); // MBC5 with RAM and battery
+        SaveFile saveFile = new SaveFile(path, memory.getMapper());
+        memory.setByte((byte) 0x0A, (short) 0x0000);
+        memory.getMapper().writeRam((short) 0xA000, (byte) 0x56); // Memory doesn't know about this save file
+        saveFile.close();
+        saveFile.flush(); // ignored once closed
+        saveFile.close();
+        assertEquals((byte) 0x56, Files.readAllBytes(path)[0]);
+    }
+
+    @Test
+    public void testNoBattery() {
+        Path path = directory.resolve("game.sav");
+        Memory memory = new Memory(makeCartridge((byte) 0x02)); // MBC1 with RAM, no battery
+        memory.openSaveFile(path);
+        memory.closeSaveFile();
+        assertFalse(Files.exists(path));
+    }
+}
@@ -0,0 +1,139 @@
+package model.memory.mapper;
+
+import model.Clock;
+import model.memory.Memory;
+import org.junit.jupiter.api.Test;
+import util.Constants;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MapperTest {
+
+    /**
+     * @return a cartridge with romBanks banks, where the first byte of every bank is its bank number
+     */
+    private static byte[] makeCartridge(byte type, byte romSize, byte ramSize, int romBanks) {
+        byte[] cartridge = new byte[romBanks * Constants.kb16];
+        for (int bank = 0; bank < romBanks; bank++) {
+            cartridge[bank * Constants.kb16] = (byte) bank;
+        }
+        cartridge[0x147] = type;
+        cartridge[0x148] = romSize;
+        cartridge[0x149] = ramSize;
+        return cartridge;
+    }
+
+    @Test
+    public void testCreate() {
+        assertInstanceOf(NoMapper.class, Mapper.create(makeCartridge((byte) 0x00, (byte) 0x00, (byte) 0x00, 2), new Clock()));
+        assertInstanceOf(MBC1.class, Mapper.create(makeCartridge((byte) 0x03, (byte) 0x01, (byte) 0x02, 4), new Clock()));
+        assertInstanceOf(MBC2.class, Mapper.create(makeCartridge((byte) 0x06, (byte) 0x03, (byte) 0x00, 16), new Clock()));
+        assertInstanceOf(MBC3.class, Mapper.create(makeCartridge((byte) 0x13, (byte) 0x06, (byte) 0x03, 128), new Clock()));
+        assertInstanceOf(MBC5.class, Mapper.create(makeCartridge((byte) 0x1B, (byte) 0x07, (byte) 0x04, 256), new Clock()));
+
+        byte[] multicart = makeCartridge((byte) 0x01, (byte) 0x05, (byte) 0x00, 64);
+        assertInstanceOf(MBC1.class, Mapper.create(multicart, new Clock()));
+        for (int i = 0; i < 0x30; i++) {
+            multicart[0x104 + i] = (byte) (i + 1);
+            multicart[0x10 * Constants.kb16 + 0x104 + i] = (byte) (i + 1);
+        }
+        assertInstanceOf(MBC1M.class, Mapper.create(multicart, new Clock()));
+    }
+
+    @Test
+    public void testMBC1() {
+        Memory memory = new Memory(makeCartridge((byte) 0x03, (byte) 0x05, (byte) 0x03, 64));
+        memory.setByte((byte) 0x00, (short) 0x2000); // bank 0 selects 1
+        assertEquals((byte) 1, memory.getByte((short) 0x4000));
+        memory.setByte((byte) 0x01, (short) 0x4000);
+        assertEquals((byte) 0x21, memory.getByte((short) 0x4000));
+        assertEquals((byte) 0, memory.getByte((short) 0x0000));
+
+        // mode 1 maps BANK2 to 0x0000-0x3FFF and selects the RAM bank
+        memory.setByte((byte) 0x0A, (short) 0x0000);
+        memory.setByte((byte) 0x01, (short) 0x6000);
+        assertEquals((byte) 0x20, memory.getByte((short) 0x0000));
+        assertEquals(0x20, memory.getRomBankAt((short) 0x0000));
+        memory.setByte((byte) 0x11, (short) 0xA000);
+        memory.setByte((byte) 0x00, (short) 0x6000);
+        assertEquals((byte) 0x00, memory.getByte((short) 0xA000)); // RAM bank 0
+        memory.setByte((byte) 0x01, (short) 0x6000);
+        assertEquals((byte) 0x11, memory.getByte((short) 0xA000));
+
+        // bank numbers wrap around the number of banks
+        memory = new Memory(makeCartridge((byte) 0x01, (byte) 0x01, (byte) 0x00, 4));
+        memory.setByte((byte) 0x05, (short) 0x2000);
+        assertEquals((byte) 1, memory.getByte((short) 0x4000));
+    }
+
+    @Test
+    public void testMBC1M() {
+        byte[] cartridge = makeCartridge((byte) 0x01, (byte) 0x05, (byte) 0x00, 64);
+        for (int i = 0; i < 0x30; i++) {
+            cartridge[0x104 + i] = (byte) (i + 1);
+            cartridge[0x10 * Constants.kb16 + 0x104 + i] = (byte) (i + 1);
+        }
+        Memory memory = new Memory(cartridge);
+        memory.setByte((byte) 0x12, (short) 0x2000); // only 4 bits of BANK1 are connected
+        memory.setByte((byte) 0x02, (short) 0x4000);
+        assertEquals((byte) 0x22, memory.getByte((short) 0x4000));
+        memory.setByte((byte) 0x01, (short) 0x6000);
+        assertEquals((byte) 0x20, memory.getByte((short) 0x0000));
+    }
+
+    @Test
+    public void testMBC2() {
+        Memory memory = new Memory(makeCartridge((byte) 0x06, (byte) 0x03, (byte) 0x00, 16));
+        memory.setByte((byte) 0x0A, (short) 0x2100); // bit 8 set, selects a ROM bank
+        assertEquals((byte) 0x0A, memory.getByte((short) 0x4000));
+        memory.setByte((byte) 0x00, (short) 0x2100);
+        assertEquals((byte) 1, memory.getByte((short) 0x4000));
+
+        assertEquals((byte) 0xFF, memory.getByte((short) 0xA000));
+        memory.setByte((byte) 0x0A, (short) 0x0000); // bit 8 clear, enables RAM
+        memory.setByte((byte) 0x5C, (short) 0xA001);
+        assertEquals((byte) 0xFC, memory.getByte((short) 0xA001)); // only the lower half byte is stored
+        assertEquals((byte) 0xFC, memory.getByte((short) 0xA201)); // 512 half bytes repeat
+        memory.setByte((byte) 0x00, (short) 0x0000);
+        assertEquals((byte) 0xFF, memory.getByte((short) 0xA001));
+    }
+
+    @Test
+    public void testMBC3() {
+        Memory memory = new Memory(makeCartridge((byte) 0x13, (byte) 0x06, (byte) 0x03, 128));
+        memory.setByte((byte) 0x7F, (short) 0x2000);
+        assertEquals((byte) 0x7F, memory.getByte((short) 0x4000));
+        memory.setByte((byte) 0x00, (short) 0x2000);
+        assertEquals((byte) 1, memory.getByte((short) 0x4000));
+
+        memory.setByte((byte) 0x0A, (short) 0x0000);
+        memory.setByte((byte) 0x02, (short) 0x4000);
+        memory.setByte((byte) 0x22, (short) 0xA000);
+        memory.setByte((byte) 0x00, (short) 0x4000);
+        assertEquals((byte) 0x00, memory.getByte((short) 0xA000));
+        memory.setByte((byte) 0x02, (short) 0x4000);
+        assertEquals((byte) 0x22, memory.getByte((short) 0xA000));
+    }
+
+    @Test
+    public void testMBC5() {
+        Memory memory = new Memory(makeCartridge((byte) 0x1B, (byte) 0x07, (byte) 0x04, 256)); // 4 MB
+        assertEquals(256, memory.getRomBankCount());
+        memory.setByte((byte) 0xFF, (short) 0x2000);
+        assertEquals((byte) 0xFF, memory.getByte((short) 0x4000));
+        memory.setByte((byte) 0x00, (short) 0x2000); // bank 0 can be mapped to 0x4000-0x7FFF
+        assertEquals((byte) 0, memory.getByte((short) 0x4000));
+        assertEquals(0, memory.getCurrentRomBank());
+        memory.setByte((byte) 0x01, (short) 0x3000); // bit 8, wraps around on a 4 MB cartridge
+        memory.setByte((byte) 0x80, (short) 0x2000);
+        assertEquals((byte) 0x80, memory.getByte((short) 0x4000));
+
+        memory.setByte((byte) 0x0A, (short) 0x0000);
+        memory.setByte((byte) 0x0F, (short) 0x4000);
+        memory.setByte((byte) 0x33, (short) 0xBFFF);
+        memory.setByte((byte) 0x00, (short) 0x4000);
+        assertEquals((byte) 0x00, memory.getByte((short) 0xBFFF));
+        memory.setByte((byte) 0x0F, (short) 0x4000);
+        assertEquals((byte) 0x33, memory.getByte((short) 0xBFFF));
+    }
+}
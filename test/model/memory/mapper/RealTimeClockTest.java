@@ -0,0 +1,149 @@
+package model.memory.mapper;
+
+import model.Clock;
+import model.memory.Memory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import util.Constants;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RealTimeClockTest {
+    Clock clock;
+    RealTimeClock rtc;
+
+    @BeforeEach
+    public void setup() {
+        clock = new Clock();
+        rtc = new RealTimeClock(clock);
+    }
+
+    private void latch() {
+        rtc.writeLatch((byte) 0x00);
+        rtc.writeLatch((byte) 0x01);
+    }
+
+    @Test
+    public void testLatch() {
+        clock.advance(Clock.M_CYCLES_PER_SECOND * (25 * 60 * 60 + 61) + 5);
+        assertEquals((byte) 0, rtc.read(RealTimeClock.SECONDS)); // nothing happens until the registers are latched
+        rtc.writeLatch((byte) 0x01);
+        assertEquals((byte) 0, rtc.read(RealTimeClock.SECONDS)); // only 0x00 followed by 0x01 latches
+
+        latch();
+        assertEquals((byte) 1, rtc.read(RealTimeClock.SECONDS));
+        assertEquals((byte) 1, rtc.read(RealTimeClock.MINUTES));
+        assertEquals((byte) 1, rtc.read(RealTimeClock.HOURS));
+        assertEquals((byte) 1, rtc.read(RealTimeClock.DAYS_LOW));
+        assertEquals((byte) 0, rtc.read(RealTimeClock.DAYS_HIGH));
+    }
+
+    @Test
+    public void testHaltAndWrite() {
+        rtc.write(RealTimeClock.DAYS_HIGH, (byte) 0b01000000);
+        clock.advance(Clock.M_CYCLES_PER_SECOND * 10);
+        latch();
+        assertEquals((byte) 0, rtc.read(RealTimeClock.SECONDS));
+        assertEquals((byte) 0b01000000, rtc.read(RealTimeClock.DAYS_HIGH));
+
+        rtc.write(RealTimeClock.SECONDS, (byte) 30);
+        rtc.write(RealTimeClock.DAYS_HIGH, (byte) 0);
+        clock.advance(Clock.M_CYCLES_PER_SECOND / 2);
+        rtc.write(RealTimeClock.SECONDS, (byte) 30); // restarts the second
+        clock.advance(Clock.M_CYCLES_PER_SECOND / 2);
+        latch();
+        assertEquals((byte) 30, rtc.read(RealTimeClock.SECONDS));
+        clock.advance(Clock.M_CYCLES_PER_SECOND / 2);
+        latch();
+        assertEquals((byte) 31, rtc.read(RealTimeClock.SECONDS));
+    }
+
+    @Test
+    public void testDayCarry() {
+        rtc.write(RealTimeClock.DAYS_LOW, (byte) 0xFF);
+        rtc.write(RealTimeClock.DAYS_HIGH, (byte) 0x01);
+        rtc.write(RealTimeClock.HOURS, (byte) 23);
+        rtc.write(RealTimeClock.MINUTES, (byte) 59);
+        rtc.write(RealTimeClock.SECONDS, (byte) 59);
+        clock.advance(Clock.M_CYCLES_PER_SECOND);
+        latch();
+        assertEquals((byte) 0, rtc.read(RealTimeClock.SECONDS));
+        assertEquals((byte) 0, rtc.read(RealTimeClock.DAYS_LOW));
+        assertEquals((byte) 0b10000000, rtc.read(RealTimeClock.DAYS_HIGH));
+
+        // the carry stays set until it is written
+        clock.advance(Clock.M_CYCLES_PER_SECOND);
+        latch();
+        assertEquals((byte) 0b10000000, rtc.read(RealTimeClock.DAYS_HIGH));
+        rtc.write(RealTimeClock.DAYS_HIGH, (byte) 0);
+        latch();
+        assertEquals((byte) 0, rtc.read(RealTimeClock.DAYS_HIGH));
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        clock.advance(Clock.M_CYCLES_PER_SECOND * 100);
+        latch();
+        clock.advance(Clock.M_CYCLES_PER_SECOND * 5);
+        byte[] state = rtc.save();
+        assertEquals(RealTimeClock.STATE_SIZE, state.length);
+
+        RealTimeClock loaded = new RealTimeClock(new Clock());
+        loaded.load(state);
+        assertEquals((byte) 40, loaded.read(RealTimeClock.SECONDS)); // latched registers are kept
+        assertEquals((byte) 1, loaded.read(RealTimeClock.MINUTES));
+        loaded.writeLatch((byte) 0x00);
+        loaded.writeLatch((byte) 0x01);
+        assertEquals((byte) 45, loaded.read(RealTimeClock.SECONDS));
+    }
+
+    /*
+    The time between saving and loading only passes in real time mode, whether it is chosen before or after loading.
+     */
+    @Test
+    public void testLoadOldTimestamp() {
+        byte[] state = rtc.save();
+        long hourAgo = System.currentTimeMillis() / 1000 - 60 * 60;
+        for (int i = 0; i < 8; i++) {
+            state[40 + i] = (byte) (hourAgo >>> (i * 8));
+        }
+
+        RealTimeClock emulated = new RealTimeClock(new Clock());
+        emulated.load(state);
+        emulated.writeLatch((byte) 0x00);
+        emulated.writeLatch((byte) 0x01);
+        assertEquals((byte) 0, emulated.read(RealTimeClock.HOURS));
+
+        emulated.setRealTime(true);
+        emulated.writeLatch((byte) 0x00);
+        emulated.writeLatch((byte) 0x01);
+        assertEquals((byte) 1, emulated.read(RealTimeClock.HOURS));
+
+        RealTimeClock realTime = new RealTimeClock(new Clock());
+        realTime.setRealTime(true);
+        realTime.load(state);
+        realTime.writeLatch((byte) 0x00);
+        realTime.writeLatch((byte) 0x01);
+        assertEquals((byte) 1, realTime.read(RealTimeClock.HOURS));
+    }
+
+    @Test
+    public void testMBC3Registers() {
+        byte[] cartridge = new byte[2 * Constants.kb16];
+        cartridge[0x147] = (byte) 0x10; // MBC3 with timer, RAM and battery
+        cartridge[0x149] = (byte) 0x02; // 8 KB RAM
+        Memory memory = new Memory(cartridge);
+        memory.setByte((byte) 0x0A, (short) 0x0000);
+        memory.setByte((byte) 0x08, (short) 0x4000); // seconds
+        memory.setByte((byte) 12, (short) 0xA000);
+        memory.setByte((byte) 0x00, (short) 0x6000);
+        memory.setByte((byte) 0x01, (short) 0x6000);
+        assertEquals((byte) 12, memory.getByte((short) 0xA000));
+
+        memory.setByte((byte) 0x00, (short) 0x4000); // back to RAM
+        memory.setByte((byte) 0x34, (short) 0xA000);
+        assertEquals((byte) 0x34, memory.getByte((short) 0xA000));
+        memory.setByte((byte) 0x08, (short) 0x4000);
+        assertEquals((byte) 12, memory.getByte((short) 0xA000));
+    }
+}
@@ -0,0 +1,55 @@
+package util;
+
+import model.memory.Memory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DisassemblerTest {
+    Memory memory;
+
+    @BeforeEach
+    public void setup() {
+        memory = new Memory();
+    }
+
+    @Test
+    public void testDisassemble() {
+        byte[] program = {
+                (byte) 0x3E, (byte) 0x3C,              // LD A, $3C
+                (byte) 0x21, (byte) 0x34, (byte) 0x12, // LD HL, $1234
+                (byte) 0xCB, (byte) 0x7E,              // BIT 7, (HL)
+                (byte) 0x20, (byte) 0xF9,              // JR NZ, -7
+                (byte) 0xF8, (byte) 0x02,              // LD HL, SP+2
+                (byte) 0xE0, (byte) 0x44,              // LD (FF00+$44), A
+                (byte) 0xD3,                           // illegal
+                (byte) 0xC9                            // RET
+        };
+        String[] expected = {"LD A, $3C", "LD HL, $1234", "BIT 7, (HL)", "JR NZ, -7", "LD HL, SP+2",
+                "LD (FF00+$44), A", "ILLEGAL $D3", "RET"};
+
+        short address = (short) 0xC000;
+        for (int i = 0; i < program.length; i++) {
+            memory.setByte(program[i], (short) (address + i));
+        }
+        for (String instruction : expected) {
+            assertEquals(instruction, Disassembler.disassemble(memory, address));
+            address = (short) (address + Disassembler.getInstructionLength(memory, address));
+        }
+        assertEquals((short) (0xC000 + program.length), address);
+    }
+
+    /*
+    Operands past the end of OAM are in the unusable area, which reads 0xFF instead of throwing.
+     */
+    @Test
+    public void testDisassembleBeforeUnusableArea() {
+        memory.setByte((byte) 0x21, (short) 0xFE9F); // LD HL, u16
+        assertEquals("LD HL, $FFFF", Disassembler.disassemble(memory, (short) 0xFE9F));
+        assertEquals(3, Disassembler.getInstructionLength(memory, (short) 0xFE9F));
+
+        memory.setByte((byte) 0xCB, (short) 0xFE9F);
+        assertEquals("SET 7, A", Disassembler.disassemble(memory, (short) 0xFE9F));
+    }
+}